@@ -0,0 +1,908 @@
+package org.chocopy;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.*;
+import java.util.stream.Stream;
+
+/**
+ * Compiles a resolved script ahead of time into JVM classes. The script becomes
+ * one class with a static method per function, and every ChocoPy class becomes a
+ * nested Java class whose methods are dispatched by the JVM. Values keep the Java
+ * type of their inferred ChocoPy type, so ints and bools stay primitive.
+ *
+ * <p>Functions that declare nested functions keep their locals in an
+ * {@code Object[]} frame laid out by the {@link Resolver}, and the nested
+ * functions receive the frames of their enclosing functions as arguments.
+ */
+class AotCompiler implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+
+    private static final AtomicInteger scripts = new AtomicInteger();
+
+    record Code(String text, String type, boolean invocation) {}
+
+    static class Scope {
+        final Scope enclosing;
+        final int level;
+        final String name;
+        final String returnType;
+        final boolean framed;
+        final Map<String, Stmt.Function> functions = new HashMap<>();
+
+        Scope(Scope enclosing, String name, String returnType, boolean framed) {
+            this.enclosing = enclosing;
+            this.level = enclosing == null ? 0 : enclosing.level + 1;
+            this.name = name;
+            this.returnType = returnType;
+            this.framed = framed;
+        }
+    }
+
+    private final Map<String, Stmt.Class> classes = new LinkedHashMap<>();
+    private final Set<String> boxedMethods = new HashSet<>();
+    private final Map<Stmt.Function, String> functionNames = new IdentityHashMap<>();
+    private final List<String> globals = new ArrayList<>();
+    private final List<String> members = new ArrayList<>();
+    final Scope script = new Scope(null, "f", "void", false);
+    Scope scope = script;
+    StringBuilder out;
+    int indent;
+    /** The line of the expression compiled last, reported when a None reaches a primitive. */
+    int currentLine;
+    private int temps = 0;
+
+    /**
+     * Loads compiled classes on demand. The classes verify against each other
+     * when they are linked, so they cannot be defined one by one up front.
+     */
+    private static class ScriptLoader extends ClassLoader {
+        private final Map<String, byte[]> classFiles;
+
+        ScriptLoader(Map<String, byte[]> classFiles) {
+            super(AotCompiler.class.getClassLoader());
+            this.classFiles = classFiles;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classFiles.get(name);
+            if (bytes == null) throw new ClassNotFoundException(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    static Class<?> load(List<Stmt> statements) {
+        String name = "Script_" + scripts.incrementAndGet();
+        Map<String, byte[]> classFiles = new AotCompiler().compile(statements, name);
+        try {
+            return Class.forName("org.chocopy." + name, false, new ScriptLoader(classFiles));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void writeJar(List<Stmt> statements, Path path) throws IOException {
+        String file = path.getFileName().toString();
+        String name = "Script_" + file.substring(0, file.length() - ".py".length()).replaceAll("\\W", "_");
+        Map<String, byte[]> classes = new AotCompiler().compile(statements, name);
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "org.chocopy." + name);
+
+        Path jar = path.resolveSibling(file.substring(0, file.length() - ".py".length()) + ".jar");
+        try (JarOutputStream jarStream = new JarOutputStream(Files.newOutputStream(jar), manifest)) {
+            Path runtime = runtimeLocation();
+            if (Files.isDirectory(runtime)) {
+                try (Stream<Path> files = Files.walk(runtime.resolve("org/chocopy"))) {
+                    for (Path classFile : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".class"))::iterator) {
+                        String entry = runtime.relativize(classFile).toString().replace('\\', '/');
+                        writeEntry(jarStream, entry, Files.readAllBytes(classFile));
+                    }
+                }
+            } else {
+                try (JarFile runtimeJar = new JarFile(runtime.toFile())) {
+                    for (JarEntry entry : Collections.list(runtimeJar.entries())) {
+                        if (entry.getName().startsWith("org/chocopy/") && entry.getName().endsWith(".class")) {
+                            writeEntry(jarStream, entry.getName(), runtimeJar.getInputStream(entry).readAllBytes());
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                writeEntry(jarStream, entry.getKey().replace('.', '/') + ".class", entry.getValue());
+            }
+        }
+    }
+
+    private static void writeEntry(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+
+    private static Path runtimeLocation() {
+        try {
+            return Paths.get(AotCompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Compiles the script into class files keyed by binary class name. */
+    Map<String, byte[]> compile(List<Stmt> statements, String className) {
+        return javac(className, generate(statements, className));
+    }
+
+    /** Compiles Java source of one class in this package to class files. */
+    static Map<String, byte[]> javac(String className, String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new IllegalStateException("compiling to the JVM requires a JDK");
+        }
+
+        Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+        JavaFileManager fileManager = new ForwardingJavaFileManager<>(javac.getStandardFileManager(null, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + name.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream();
+                        outputs.put(name, output);
+                        return output;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///org/chocopy/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        StringWriter diagnostics = new StringWriter();
+        List<String> options = List.of("-classpath", runtimeLocation().toString(), "-proc:none", "-nowarn");
+        if (!javac.getTask(diagnostics, fileManager, null, options, null, List.of(file)).call()) {
+            throw new IllegalStateException("generated code did not compile:\n" + diagnostics + "\n" + source);
+        }
+
+        Map<String, byte[]> classFiles = new HashMap<>();
+        outputs.forEach((name, output) -> classFiles.put(name, output.toByteArray()));
+        return classFiles;
+    }
+
+    String generate(List<Stmt> statements, String className) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Class stmt) {
+                classes.put(stmt.name.lexeme, stmt);
+            } else if (statement instanceof Stmt.Function stmt) {
+                declare(script, stmt);
+            }
+        }
+        for (Stmt.Class stmt : classes.values()) {
+            for (Stmt member : stmt.members) {
+                if (member instanceof Stmt.Function method
+                        && isPrimitive(javaType(method.returnType)) && completes(method.body)) {
+                    boxedMethods.add(method.name.lexeme);
+                }
+            }
+        }
+
+        out = new StringBuilder();
+        indent = 1;
+        line("public static void run$() {");
+        indent++;
+        statements(statements);
+        indent--;
+        line("}");
+        String run = out.toString();
+
+        StringBuilder source = new StringBuilder();
+        source.append("package org.chocopy;\n\n")
+                .append("import java.util.List;\n\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class ").append(className).append(" {\n");
+        for (String global : globals) {
+            source.append("    ").append(global).append('\n');
+        }
+        source.append('\n').append(run);
+        for (String member : members) {
+            source.append('\n').append(member);
+        }
+        source.append('\n')
+                .append("    public static void main(String[] args) {\n")
+                .append("        AotRuntime.main(").append(className).append(".class);\n")
+                .append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    private void declare(Scope scope, Stmt.Function function) {
+        scope.functions.put(function.name.lexeme, function);
+        String name = scope.level == 0 ? "f_" + function.name.lexeme : scope.name + "$" + function.name.lexeme;
+        functionNames.put(function, name);
+    }
+
+    private String function(Stmt.Function stmt, Stmt.Class owner, int baseIndent) {
+        boolean isMethod = owner != null;
+        String name = isMethod ? "f_" + owner.name.lexeme + "$" + stmt.name.lexeme : functionNames.get(stmt);
+        boolean framed = stmt.body.stream().anyMatch(member -> member instanceof Stmt.Function);
+
+        Scope enclosingScope = scope;
+        StringBuilder enclosingOut = out;
+        int enclosingIndent = indent;
+        scope = new Scope(enclosingScope, name, returnType(stmt, isMethod), framed);
+        out = new StringBuilder();
+        indent = baseIndent;
+
+        for (Stmt member : stmt.body) {
+            if (member instanceof Stmt.Function function) declare(scope, function);
+        }
+
+        List<String> params = new ArrayList<>();
+        for (int i = 1; i < scope.level; i++) {
+            params.add("Object[] up" + i);
+        }
+        for (Stmt.Var param : isMethod ? stmt.params.subList(1, stmt.params.size()) : stmt.params) {
+            params.add(javaType(param.type) + " v_" + param.name.lexeme);
+        }
+
+        line((isMethod ? "" : "static ") + scope.returnType + " " + (isMethod ? "m_" + stmt.name.lexeme : name)
+                + "(" + String.join(", ", params) + ") {");
+        indent++;
+        if (framed) {
+            line("Object[] frame = new Object[" + stmt.frameSize + "];");
+            for (int i = 0; i < stmt.params.size(); i++) {
+                Stmt.Var param = stmt.params.get(i);
+                line("frame[" + param.slot + "] = " + (isMethod && i == 0 ? "this" : "v_" + param.name.lexeme) + ";");
+            }
+        } else if (isMethod) {
+            line(className(owner.name.lexeme) + " v_self = this;");
+        }
+        if (statements(stmt.body)) {
+            line("return null;");
+        }
+        indent--;
+        line("}");
+
+        String code = out.toString();
+        scope = enclosingScope;
+        out = enclosingOut;
+        indent = enclosingIndent;
+        return code;
+    }
+
+    private String returnType(Stmt.Function stmt, boolean isMethod) {
+        String type = javaType(stmt.returnType);
+        if (isPrimitive(type) && (isMethod ? boxedMethods.contains(stmt.name.lexeme) : completes(stmt.body))) {
+            return box(type);
+        }
+        return type;
+    }
+
+    private String methodReturnType(String name, ValueType returnType) {
+        String type = javaType(returnType);
+        return isPrimitive(type) && boxedMethods.contains(name) ? box(type) : type;
+    }
+
+    String javaType(ValueType type) {
+        if (type instanceof IntType) return "int";
+        if (type instanceof BoolType) return "boolean";
+        if (type instanceof StrType) return "String";
+        if (type instanceof ListValueType || type instanceof EmptyType) return "List<Object>";
+        if (type instanceof ClassValueType classType && classes.containsKey(classType.getClassName())) {
+            return className(classType.getClassName());
+        }
+        return "Object";
+    }
+
+    String type(Expr expr) {
+        if (expr instanceof Expr.Call call) return callType(call);
+        if (expr instanceof Expr.Grouping grouping) return type(grouping.expression);
+        return javaType(expr.inferredType);
+    }
+
+    /**
+     * The Java type of a call's result. A function that can fall off its end
+     * returns None, so its int or bool result stays boxed.
+     */
+    String callType(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            return methodReturnType(get.name.lexeme, ((FuncType) get.inferredType).getReturnType());
+        }
+        Expr.Variable callee = (Expr.Variable) expr.callee;
+        Stmt.Function function = declaringScope(callee).functions.get(callee.name.lexeme);
+        return function != null ? returnType(function, false) : javaType(expr.inferredType);
+    }
+
+    private static String className(String name) {
+        return "C_" + name;
+    }
+
+    static boolean isPrimitive(String type) {
+        return type.equals("int") || type.equals("boolean");
+    }
+
+    private static boolean isBoxed(String type) {
+        return type.equals("Integer") || type.equals("Boolean");
+    }
+
+    static String box(String type) {
+        return type.equals("int") ? "Integer" : "Boolean";
+    }
+
+    /**
+     * Converts code of one Java type to another. The inferred types guarantee the
+     * conversion is valid, so values only need a cast when they come out of a
+     * list, a frame or a boxed return value. Those may be None, which fails with
+     * a TypeError when the target is primitive.
+     */
+    String coerce(String code, String from, String to) {
+        if (from.equals(to) || to.equals("Object")) return code;
+        if (from.equals("Object") || isBoxed(from)) {
+            if (to.equals("int")) return "AotRuntime.intValue(" + code + ", " + currentLine + ")";
+            if (to.equals("boolean")) return "AotRuntime.booleanValue(" + code + ", " + currentLine + ")";
+            return "((" + to + ") " + code + ")";
+        }
+        return code;
+    }
+
+    private static String defaultValue(String type) {
+        return switch (type) {
+            case "int" -> "0";
+            case "boolean" -> "false";
+            default -> "null";
+        };
+    }
+
+    private static boolean completes(Stmt stmt) {
+        if (stmt instanceof Stmt.Return) return false;
+        if (stmt instanceof Stmt.Block block) return completes(block.statements);
+        if (stmt instanceof Stmt.If ifStmt) {
+            return ifStmt.elseBranch == null || completes(ifStmt.thenBranch) || completes(ifStmt.elseBranch);
+        }
+        return true;
+    }
+
+    private static boolean completes(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (!completes(statement)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isConstant(Expr expr) {
+        if (expr instanceof Expr.Literal) return true;
+        if (expr instanceof Expr.Grouping grouping) return isConstant(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return isConstant(unary.right);
+        if (expr instanceof Expr.Binary binary) return isConstant(binary.left) && isConstant(binary.right);
+        if (expr instanceof Expr.Logical logical) return isConstant(logical.left) && isConstant(logical.right);
+        if (expr instanceof Expr.Ternary ternary) {
+            return isConstant(ternary.condition) && isConstant(ternary.onTrue) && isConstant(ternary.onFalse);
+        }
+        return false;
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    void line(String code) {
+        out.append("    ".repeat(indent)).append(code).append('\n');
+    }
+
+    private String temp() {
+        return "t$" + temps++;
+    }
+
+    String compile(Expr expr) {
+        if (expr.line > 0) currentLine = expr.line;
+        return expr.accept(this);
+    }
+
+    String compile(Expr expr, String type) {
+        return coerce(compile(expr), type(expr), type);
+    }
+
+    private String condition(Expr expr) {
+        String code = compile(expr);
+        return type(expr).equals("boolean") ? code : "AotRuntime.isTruthy(" + code + ")";
+    }
+
+    /** Compiles statements up to the first one that cannot complete normally. */
+    boolean statements(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            statement.accept(this);
+            if (!completes(statement)) return false;
+        }
+        return true;
+    }
+
+    private void body(Stmt stmt) {
+        indent++;
+        if (stmt instanceof Stmt.Block block) {
+            statements(block.statements);
+        } else {
+            stmt.accept(this);
+        }
+        indent--;
+    }
+
+    private Scope scopeAt(int level) {
+        Scope target = scope;
+        while (target.level > level) {
+            target = target.enclosing;
+        }
+        return target;
+    }
+
+    private Scope declaringScope(Expr.Variable variable) {
+        return variable.depth == Environment.GLOBAL ? script : scopeAt(scope.level - variable.depth);
+    }
+
+    private String frame(int depth) {
+        return depth == 0 ? "frame" : "up" + depth;
+    }
+
+    String load(int depth, int slot, String name, ValueType type) {
+        if (depth == Environment.GLOBAL) return "g_" + name;
+        if (depth == 0 && !scope.framed) return "v_" + name;
+        return coerce(frame(depth) + "[" + slot + "]", "Object", javaType(type));
+    }
+
+    void store(Expr.Variable variable, String code, String type) {
+        String value = coerce(code, type, javaType(variable.inferredType));
+        if (variable.depth == Environment.GLOBAL) {
+            line("g_" + variable.name.lexeme + " = " + value + ";");
+        } else if (variable.depth == 0 && !scope.framed) {
+            line("v_" + variable.name.lexeme + " = " + value + ";");
+        } else {
+            line(frame(variable.depth) + "[" + variable.slot + "] = " + value + ";");
+        }
+    }
+
+    private String fieldType(ValueType objectType, String name) {
+        Stmt.Class stmt = classes.get(((ClassValueType) objectType).getClassName());
+        while (stmt != null) {
+            for (Stmt member : stmt.members) {
+                if (member instanceof Stmt.Var attribute && attribute.name.lexeme.equals(name)) {
+                    return javaType(attribute.type);
+                }
+            }
+            stmt = classes.get(stmt.superclass.lexeme);
+        }
+        return "Object";
+    }
+
+    private boolean hasInitializer(Stmt.Class stmt) {
+        while (stmt != null) {
+            for (Stmt member : stmt.members) {
+                if (member instanceof Stmt.Function method && method.name.lexeme.equals("__init__")) return true;
+            }
+            stmt = classes.get(stmt.superclass.lexeme);
+        }
+        return false;
+    }
+
+    private String arguments(List<Expr> arguments, List<ValueType> types) {
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < arguments.size(); i++) {
+            codes.add(compile(arguments.get(i), javaType(types.get(i))));
+        }
+        return String.join(", ", codes);
+    }
+
+    Code call(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            String name = get.name.lexeme;
+            FuncType method = (FuncType) get.inferredType;
+            String receiver = "AotRuntime.attr(" + compile(get.object) + ", " + get.name.line + ", \"" + name + "\")";
+            String arguments = arguments(expr.arguments, method.getParameters().subList(1, method.getParameters().size()));
+            return new Code(receiver + ".m_" + name + "(" + arguments + ")",
+                    methodReturnType(name, method.getReturnType()), true);
+        }
+
+        Expr.Variable callee = (Expr.Variable) expr.callee;
+        String name = callee.name.lexeme;
+        Scope target = declaringScope(callee);
+        Stmt.Function function = target.functions.get(name);
+        if (function != null) {
+            List<String> arguments = new ArrayList<>();
+            int level = target.level + 1;
+            for (int i = 1; i < level; i++) {
+                arguments.add(frame(scope.level - level + i));
+            }
+            List<ValueType> types = new ArrayList<>();
+            for (Stmt.Var param : function.params) {
+                types.add(param.type);
+            }
+            if (!expr.arguments.isEmpty()) arguments.add(arguments(expr.arguments, types));
+            return new Code(functionNames.get(function) + "(" + String.join(", ", arguments) + ")",
+                    returnType(function, false), true);
+        }
+        if (classes.containsKey(name)) {
+            return new Code(className(name) + ".new$()", className(name), true);
+        }
+
+        return switch (name) {
+            case "object" -> new Code("new Object()", "Object", true);
+            case "int" -> new Code("0", "int", false);
+            case "str" -> new Code("\"\"", "String", false);
+            case "bool" -> new Code("false", "boolean", false);
+            default -> throw new RuntimeError(expr.line, "'" + name + "' object is not callable", "TypeError");
+        };
+    }
+
+    private void assign(Expr.MultiAssign multiAssign) {
+        String value = compile(multiAssign.value);
+        String type = type(multiAssign.value);
+
+        if (multiAssign.targets.size() == 1 && multiAssign.targets.get(0) instanceof Expr.Assign expr) {
+            store(expr.target, value, type);
+            return;
+        }
+
+        String temp = temp();
+        line(type + " " + temp + " = " + value + ";");
+        for (Expr target : multiAssign.targets) {
+            if (target instanceof Expr.Assign expr) {
+                store(expr.target, temp, type);
+            } else if (target instanceof Expr.Set expr) {
+                setAttribute(expr, temp, type);
+            } else if (target instanceof Expr.ListSet expr) {
+                String id = temp();
+                line("int " + id + " = " + compile(expr.id, "int") + ";");
+                line("AotRuntime.set(" + compile(expr.listing) + ", " + id + ", " + temp + ", " + expr.line + ");");
+            }
+        }
+    }
+
+    void setAttribute(Expr.Set expr, String code, String type) {
+        String name = expr.name.lexeme;
+        line("AotRuntime.attr(" + compile(expr.object) + ", " + expr.line + ", \"" + name + "\").a_" + name
+                + " = " + coerce(code, type, fieldType(expr.object.inferredType, name)) + ";");
+    }
+
+    private String classSource(Stmt.Class stmt) {
+        String name = className(stmt.name.lexeme);
+        StringBuilder builder = new StringBuilder();
+        builder.append("    static class ").append(name);
+        if (classes.containsKey(stmt.superclass.lexeme)) {
+            builder.append(" extends ").append(className(stmt.superclass.lexeme));
+        }
+        builder.append(" {\n");
+
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Var attribute) {
+                String type = javaType(attribute.type);
+                String value = attribute.initializer == null ? defaultValue(type) : compile(attribute.initializer, type);
+                builder.append("        ").append(type).append(" a_").append(attribute.name.lexeme)
+                        .append(" = ").append(value).append(";\n");
+            }
+        }
+
+        builder.append('\n')
+                .append("        static ").append(name).append(" new$() {\n")
+                .append("            ").append(name).append(" self = new ").append(name).append("();\n");
+        if (hasInitializer(stmt)) {
+            builder.append("            self.m___init__();\n");
+        }
+        builder.append("            return self;\n")
+                .append("        }\n");
+
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Function method) {
+                builder.append('\n').append(function(method, stmt, 2));
+            }
+        }
+        return builder.append("    }\n").toString();
+    }
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        String leftType = type(expr.left);
+        String rightType = type(expr.right);
+        String left = compile(expr.left);
+        String right = compile(expr.right);
+        int line = expr.operator.line;
+
+        if (isBoxed(leftType) || isBoxed(rightType)) {
+            String operands = left + ", " + right + ", " + line + ", " + quote(expr.operator.lexeme) + ", "
+                    + quote(expr.left.inferredType.toString()) + ", " + quote(expr.right.inferredType.toString());
+            switch (expr.operator.type) {
+                case PLUS, MINUS, STAR, DOUBLE_SLASH, PERCENT: return "AotRuntime.arithmetic(" + operands + ")";
+                case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL: return "AotRuntime.compare(" + operands + ")";
+            }
+        }
+
+        switch (expr.operator.type) {
+            case PLUS:
+                if (leftType.equals("List<Object>")) {
+                    return "AotRuntime.concat(" + left + ", " + right + ", " + line + ", "
+                            + quote(expr.left.inferredType.toString()) + ", "
+                            + quote(expr.right.inferredType.toString()) + ")";
+                }
+                return "(" + left + " + " + right + ")";
+            case MINUS: return "(" + left + " - " + right + ")";
+            case STAR: return "(" + left + " * " + right + ")";
+            case DOUBLE_SLASH: return "AotRuntime.divide(" + line + ", " + left + ", " + right + ")";
+            case PERCENT: return "AotRuntime.modulo(" + line + ", " + left + ", " + right + ")";
+            case LESS: return "(" + left + " < " + right + ")";
+            case LESS_EQUAL: return "(" + left + " <= " + right + ")";
+            case GREATER: return "(" + left + " > " + right + ")";
+            case GREATER_EQUAL: return "(" + left + " >= " + right + ")";
+            case IS: return "((Object) " + left + " == (Object) " + right + ")";
+            case EQUAL_EQUAL:
+                if (isPrimitive(leftType) && leftType.equals(rightType)) return "(" + left + " == " + right + ")";
+                return "AotRuntime.isEqual(" + left + ", " + right + ")";
+            case BANG_EQUAL:
+                if (isPrimitive(leftType) && leftType.equals(rightType)) return "(" + left + " != " + right + ")";
+                return "(!AotRuntime.isEqual(" + left + ", " + right + "))";
+        }
+
+        throw Values.unsupportedOperands(expr, leftType, rightType);
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        Code code = call(expr);
+        return coerce(code.text(), code.type(), type(expr));
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        String name = expr.name.lexeme;
+        return "AotRuntime.attr(" + compile(expr.object) + ", " + expr.name.line + ", \"" + name + "\").a_" + name;
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) return "null";
+        if (expr.value instanceof String value) return quote(value);
+        return expr.value.toString();
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        String operator = expr.operator.type == TokenType.OR ? " || " : " && ";
+        return "(" + condition(expr.left) + operator + condition(expr.right) + ")";
+    }
+
+    @Override
+    public String visitTernaryExpr(Expr.Ternary expr) {
+        String type = type(expr);
+        String onTrue = compile(expr.onTrue, type);
+        String condition = condition(expr.condition);
+        String onFalse = compile(expr.onFalse, type);
+        if (!isPrimitive(type)) {
+            onTrue = "(" + type + ") " + onTrue;
+            onFalse = "(" + type + ") " + onFalse;
+        }
+        return "(" + condition + " ? " + onTrue + " : " + onFalse + ")";
+    }
+
+    @Override
+    public String visitListingExpr(Expr.Listing expr) {
+        List<String> elements = new ArrayList<>();
+        for (Expr element : expr.elements) {
+            elements.add(compile(element));
+        }
+        return "AotRuntime.list(" + String.join(", ", elements) + ")";
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        String listing = compile(expr.listing);
+        String id = compile(expr.id, "int");
+        if (expr.listing.inferredType instanceof StrType) {
+            return "AotRuntime.charAt(" + listing + ", " + id + ", " + expr.line + ")";
+        }
+        return coerce("AotRuntime.get(" + listing + ", " + id + ", " + expr.line + ")", "Object", type(expr));
+    }
+
+    @Override
+    public String visitListSetExpr(Expr.ListSet expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public String visitLenExpr(Expr.Len expr) {
+        return "AotRuntime.len(" + expr.line + ", " + compile(expr.expression) + ")";
+    }
+
+    @Override
+    public String visitInputExpr(Expr.Input expr) {
+        return "AotRuntime.input()";
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public String visitSelfExpr(Expr.Self expr) {
+        return load(expr.depth, expr.slot, expr.keyword.lexeme, expr.inferredType);
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.NOT) {
+            return "(!" + condition(expr.right) + ")";
+        }
+        return "(-" + compile(expr.right, "int") + ")";
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return load(expr.depth, expr.slot, expr.name.lexeme, expr.inferredType);
+    }
+
+    @Override
+    public String visitPrintExpr(Expr.Print expr) {
+        return "AotRuntime.print(" + compile(expr.expression) + ")";
+    }
+
+    @Override
+    public String visitMultiAssignExpr(Expr.MultiAssign multiAssign) {
+        throw new RuntimeError(multiAssign.line, "use Stmt.Expression", "NotImplementedError");
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        statements(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        members.add(classSource(stmt));
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression instanceof Expr.MultiAssign multiAssign) {
+            assign(multiAssign);
+        } else if (stmt.expression instanceof Expr.Call expr) {
+            Code code = call(expr);
+            line(code.invocation() ? code.text() + ";" : "AotRuntime.discard(" + code.text() + ");");
+        } else if (stmt.expression instanceof Expr.Print expr) {
+            line(compile(expr) + ";");
+        } else {
+            line("AotRuntime.discard(" + compile(stmt.expression) + ");");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        members.add(function(stmt, null, 1));
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        line("if (" + condition(stmt.condition) + ") {");
+        body(stmt.thenBranch);
+        if (stmt.elseBranch != null) {
+            line("} else {");
+            body(stmt.elseBranch);
+        }
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) {
+            line("return null;");
+        } else {
+            line("return " + compile(stmt.value, scope.returnType) + ";");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        String type = javaType(stmt.type);
+        String value = stmt.initializer == null ? defaultValue(type) : compile(stmt.initializer, type);
+        if (scope.level == 0) {
+            globals.add("static " + type + " g_" + stmt.name.lexeme + " = " + value + ";");
+        } else if (scope.framed) {
+            line("frame[" + stmt.slot + "] = " + value + ";");
+        } else {
+            line(type + " v_" + stmt.name.lexeme + " = " + value + ";");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        String condition = condition(stmt.condition);
+        // A constant condition would make the Java compiler reject the code after the loop.
+        if (isConstant(stmt.condition)) condition = "AotRuntime.condition(" + condition + ")";
+        line("while (" + condition + ") {");
+        body(stmt.body);
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        String iterable = temp();
+        if (stmt.iterable.inferredType instanceof StrType) {
+            String index = temp();
+            line("String " + iterable + " = AotRuntime.iterate(" + compile(stmt.iterable) + ", " + stmt.line + ");");
+            line("for (int " + index + " = 0; " + index + " < " + iterable + ".length(); " + index + "++) {");
+            indent++;
+            store(stmt.id, "AotRuntime.character(" + iterable + ".charAt(" + index + "))", "String");
+            indent--;
+        } else {
+            String element = temp();
+            line("for (Object " + element + " : AotRuntime.iterate(" + compile(stmt.iterable) + ", " + stmt.line + ")) {");
+            indent++;
+            store(stmt.id, element, "Object");
+            indent--;
+        }
+        body(stmt.body);
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitPassStmt(Stmt.Pass stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitGlobalStmt(Stmt.Global stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+package org.chocopy;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runtime support called from the classes generated by the {@link AotCompiler}.
+ * The common cases are handled inline and every error is left to {@link Values},
+ * so compiled scripts report the same messages and exit codes as the other engines.
+ * Compiled scripts are loaded by their own class loader and can only reach the
+ * public members of this class.
+ */
+public final class AotRuntime {
+
+    private static java.util.Scanner scanner;
+
+    private AotRuntime() {}
+
+    public static void main(Class<?> script) {
+        execute(script);
+
+        if (ChocoPy.hadRuntimeError) {
+            ChocoPy.runtimeErrors.forEach(System.err::println);
+            System.exit(ChocoPy.exitCode != null ? ChocoPy.exitCode : 70);
+        }
+    }
+
+    static void execute(Class<?> script) {
+        scanner = null;
+        try {
+            MethodHandles.lookup().findStatic(script, "run$", MethodType.methodType(void.class)).invokeExact();
+        } catch (Throwable e) {
+            Interpreter.reportRuntimeError(e);
+        }
+    }
+
+    public static int divide(int line, int left, int right) {
+        return Values.divide(line, left, right);
+    }
+
+    public static int modulo(int line, int left, int right) {
+        return Values.modulo(line, left, right);
+    }
+
+    /**
+     * An int operator with an operand that may be None, such as the result of a
+     * function that fell off its end. None fails like it does in {@link Values#binary}.
+     */
+    public static int arithmetic(Object left, Object right, int line, String operator,
+                                 String leftType, String rightType) {
+        if (!(left instanceof Integer a) || !(right instanceof Integer b)) {
+            throw Values.unsupportedOperands(operator(operator, line), left, right, leftType, rightType);
+        }
+        return switch (operator) {
+            case "+" -> a + b;
+            case "-" -> a - b;
+            case "*" -> a * b;
+            case "//" -> Values.divide(line, a, b);
+            default -> Values.modulo(line, a, b);
+        };
+    }
+
+    /** An int comparison with an operand that may be None; see {@link #arithmetic}. */
+    public static boolean compare(Object left, Object right, int line, String operator,
+                                  String leftType, String rightType) {
+        if (!(left instanceof Integer a) || !(right instanceof Integer b)) {
+            throw Values.unsupportedOperands(operator(operator, line), left, right, leftType, rightType);
+        }
+        return switch (operator) {
+            case "<" -> a < b;
+            case "<=" -> a <= b;
+            case ">" -> a > b;
+            default -> a >= b;
+        };
+    }
+
+    private static Token operator(String lexeme, int line) {
+        TokenType type = switch (lexeme) {
+            case "+" -> TokenType.PLUS;
+            case "-" -> TokenType.MINUS;
+            case "*" -> TokenType.STAR;
+            case "//" -> TokenType.DOUBLE_SLASH;
+            case "%" -> TokenType.PERCENT;
+            case "<" -> TokenType.LESS;
+            case "<=" -> TokenType.LESS_EQUAL;
+            case ">" -> TokenType.GREATER;
+            default -> TokenType.GREATER_EQUAL;
+        };
+        return new Token(type, lexeme, null, line);
+    }
+
+    /** Unboxes an int that may be None where the compiled code keeps a primitive. */
+    public static int intValue(Object value, int line) {
+        if (value instanceof Integer number) return number;
+        throw noneValue(line, "int");
+    }
+
+    public static boolean booleanValue(Object value, int line) {
+        if (value instanceof Boolean bool) return bool;
+        throw noneValue(line, "bool");
+    }
+
+    private static RuntimeError noneValue(int line, String type) {
+        ChocoPy.exitCode = 4;
+        return new RuntimeError(line, "expected '" + type + "', not '<None>'", "TypeError");
+    }
+
+    public static boolean isEqual(Object left, Object right) {
+        return Values.isEqual(left, right);
+    }
+
+    public static boolean isTruthy(Object value) {
+        return Values.isTruthy(value);
+    }
+
+    public static int len(int line, Object object) {
+        return Values.len(line, object);
+    }
+
+    public static Object print(int value) {
+        System.out.println(value);
+        return null;
+    }
+
+    public static Object print(Object value) {
+        System.out.println(Values.stringify(value));
+        return null;
+    }
+
+    public static String input() {
+        if (scanner == null) scanner = new java.util.Scanner(System.in);
+        if (scanner.hasNextLine()) {
+            return scanner.nextLine() + "\n";
+        } else {
+            return "";
+        }
+    }
+
+    public static void discard(Object value) {}
+
+    public static boolean condition(boolean value) {
+        return value;
+    }
+
+    public static <T> T attr(T object, int line, String name) {
+        if (object == null) throw Values.noneAttribute(line, name);
+        return object;
+    }
+
+    public static <T> T iterate(T iterable, int line) {
+        Values.checkIterable(line, iterable);
+        return iterable;
+    }
+
+    public static List<Object> list(Object... elements) {
+        return new ArrayList<>(Arrays.asList(elements));
+    }
+
+    public static Object get(List<Object> list, int id, int line) {
+        if (list != null && id >= 0 && id < list.size()) return list.get(id);
+        return Values.index(line, list, id);
+    }
+
+    public static String charAt(String str, int id, int line) {
+        if (str != null && id >= 0 && id < str.length()) return Values.character(str.charAt(id));
+        return (String) Values.index(line, str, id);
+    }
+
+    public static String character(char c) {
+        return Values.character(c);
+    }
+
+    public static void set(List<Object> list, int id, Object value, int line) {
+        if (list != null && id >= 0 && id < list.size()) {
+            list.set(id, value);
+        } else {
+            Values.setIndex(line, list, id, value);
+        }
+    }
+
+    public static List<Object> concat(List<Object> left, List<Object> right, int line, String leftType, String rightType) {
+        if (left == null || right == null) {
+            throw Values.unsupportedOperands(new Token(TokenType.PLUS, "+", null, line), left, right, leftType, rightType);
+        }
+        List<Object> result = new ArrayList<>(left.size() + right.size());
+        result.addAll(left);
+        result.addAll(right);
+        return result;
+    }
+}
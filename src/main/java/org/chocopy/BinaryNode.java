@@ -0,0 +1,215 @@
+package org.chocopy;
+
+import java.util.List;
+
+/**
+ * Specialized implementation of a binary operator. An {@link Expr.Binary} starts
+ * out without one and rewrites itself on first execution into the form picked
+ * from the operand types inferred by the {@link Resolver}. Every specialized form
+ * guards on the runtime operands and rewrites the node into {@link #GENERIC} when
+ * the guard fails.
+ */
+abstract class BinaryNode {
+
+    abstract Object execute(Expr.Binary expr, Object left, Object right);
+
+    static final BinaryNode GENERIC = new BinaryNode() {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            return Values.binary(expr, left, right);
+        }
+    };
+
+    static BinaryNode specialize(Expr.Binary expr) {
+        ValueType leftType = expr.left.inferredType;
+        ValueType rightType = expr.right.inferredType;
+
+        if (leftType instanceof IntType && rightType instanceof IntType) {
+            switch (expr.operator.type) {
+                case PLUS: return INT_ADD;
+                case MINUS: return INT_SUBTRACT;
+                case STAR: return INT_MULTIPLY;
+                case DOUBLE_SLASH: return INT_DIVIDE;
+                case PERCENT: return INT_MODULO;
+                case LESS: return INT_LESS;
+                case LESS_EQUAL: return INT_LESS_EQUAL;
+                case GREATER: return INT_GREATER;
+                case GREATER_EQUAL: return INT_GREATER_EQUAL;
+                case EQUAL_EQUAL: return INT_EQUAL;
+                case BANG_EQUAL: return INT_NOT_EQUAL;
+            }
+        } else if (leftType instanceof StrType && rightType instanceof StrType) {
+            switch (expr.operator.type) {
+                case PLUS: return STR_CONCAT;
+                case EQUAL_EQUAL: return STR_EQUAL;
+                case BANG_EQUAL: return STR_NOT_EQUAL;
+            }
+        } else if (leftType instanceof ListValueType && rightType instanceof ListValueType) {
+            if (expr.operator.type == TokenType.PLUS) return LIST_CONCAT;
+        } else if (leftType instanceof BoolType && rightType instanceof BoolType) {
+            switch (expr.operator.type) {
+                case EQUAL_EQUAL: return BOOL_EQUAL;
+                case BANG_EQUAL: return BOOL_NOT_EQUAL;
+            }
+        }
+
+        return GENERIC;
+    }
+
+    /** The number of concatenations in the chain {@code a + b + ...} that ends at {@code expr}. */
+    static int concatenations(Expr.Binary expr) {
+        int count = 1;
+        while (expr.left instanceof Expr.Binary left && specialize(left) == LIST_CONCAT) {
+            expr = left;
+            count++;
+        }
+        return count;
+    }
+
+    Object rewrite(Expr.Binary expr, Object left, Object right) {
+        expr.node = GENERIC;
+        return GENERIC.execute(expr, left, right);
+    }
+
+    abstract static class IntArithmetic extends BinaryNode {
+        abstract int apply(Expr.Binary expr, int left, int right);
+
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Integer a && right instanceof Integer b) {
+                return apply(expr, a, b);
+            }
+            return rewrite(expr, left, right);
+        }
+    }
+
+    abstract static class IntComparison extends BinaryNode {
+        abstract boolean test(int left, int right);
+
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Integer a && right instanceof Integer b) {
+                return test(a, b);
+            }
+            return rewrite(expr, left, right);
+        }
+    }
+
+    abstract static class StrOperation extends BinaryNode {
+        abstract Object apply(CharSequence left, CharSequence right);
+
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof CharSequence a && right instanceof CharSequence b) {
+                return apply(a, b);
+            }
+            return rewrite(expr, left, right);
+        }
+    }
+
+    abstract static class BoolComparison extends BinaryNode {
+        abstract boolean test(boolean left, boolean right);
+
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof Boolean a && right instanceof Boolean b) {
+                return test(a, b);
+            }
+            return rewrite(expr, left, right);
+        }
+    }
+
+    static final BinaryNode INT_ADD = new IntArithmetic() {
+        @Override
+        int apply(Expr.Binary expr, int left, int right) { return left + right; }
+    };
+
+    static final BinaryNode INT_SUBTRACT = new IntArithmetic() {
+        @Override
+        int apply(Expr.Binary expr, int left, int right) { return left - right; }
+    };
+
+    static final BinaryNode INT_MULTIPLY = new IntArithmetic() {
+        @Override
+        int apply(Expr.Binary expr, int left, int right) { return left * right; }
+    };
+
+    static final BinaryNode INT_DIVIDE = new IntArithmetic() {
+        @Override
+        int apply(Expr.Binary expr, int left, int right) { return Values.divide(expr, left, right); }
+    };
+
+    static final BinaryNode INT_MODULO = new IntArithmetic() {
+        @Override
+        int apply(Expr.Binary expr, int left, int right) { return Values.modulo(expr, left, right); }
+    };
+
+    static final BinaryNode INT_LESS = new IntComparison() {
+        @Override
+        boolean test(int left, int right) { return left < right; }
+    };
+
+    static final BinaryNode INT_LESS_EQUAL = new IntComparison() {
+        @Override
+        boolean test(int left, int right) { return left <= right; }
+    };
+
+    static final BinaryNode INT_GREATER = new IntComparison() {
+        @Override
+        boolean test(int left, int right) { return left > right; }
+    };
+
+    static final BinaryNode INT_GREATER_EQUAL = new IntComparison() {
+        @Override
+        boolean test(int left, int right) { return left >= right; }
+    };
+
+    static final BinaryNode INT_EQUAL = new IntComparison() {
+        @Override
+        boolean test(int left, int right) { return left == right; }
+    };
+
+    static final BinaryNode INT_NOT_EQUAL = new IntComparison() {
+        @Override
+        boolean test(int left, int right) { return left != right; }
+    };
+
+    static final BinaryNode STR_CONCAT = new StrOperation() {
+        @Override
+        Object apply(CharSequence left, CharSequence right) { return Rope.concat(left, right); }
+    };
+
+    static final BinaryNode STR_EQUAL = new StrOperation() {
+        @Override
+        Object apply(CharSequence left, CharSequence right) { return Values.isEqual(left, right); }
+    };
+
+    static final BinaryNode STR_NOT_EQUAL = new StrOperation() {
+        @Override
+        Object apply(CharSequence left, CharSequence right) { return !Values.isEqual(left, right); }
+    };
+
+    /**
+     * List concatenation. The interpreters evaluate a whole chain {@code a + b + c}
+     * of these at once, so the result is allocated a single time.
+     */
+    static final BinaryNode LIST_CONCAT = new BinaryNode() {
+        @Override
+        Object execute(Expr.Binary expr, Object left, Object right) {
+            if (left instanceof List<?> a && right instanceof List<?> b) {
+                return Values.concat(expr.inferredType, a, b);
+            }
+            return rewrite(expr, left, right);
+        }
+    };
+
+    static final BinaryNode BOOL_EQUAL = new BoolComparison() {
+        @Override
+        boolean test(boolean left, boolean right) { return left == right; }
+    };
+
+    static final BinaryNode BOOL_NOT_EQUAL = new BoolComparison() {
+        @Override
+        boolean test(boolean left, boolean right) { return left != right; }
+    };
+}
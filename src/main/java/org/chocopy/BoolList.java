@@ -0,0 +1,129 @@
+package org.chocopy;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A ChocoPy {@code [bool]} list packed one bit per element into a growable
+ * {@code long[]}, so a sieve over ten million flags takes about 1.2 MB. Like
+ * an {@link IntList}, storing anything other than a bool moves the list to
+ * boxed storage for the rest of its life.
+ */
+final class BoolList extends AbstractList<Object> implements RandomAccess {
+    private static final long[] EMPTY = new long[0];
+
+    private long[] words;
+    /** The elements once the list holds something other than bools, otherwise null. */
+    private Object[] boxed;
+    private int size;
+
+    BoolList(int capacity) {
+        words = capacity == 0 ? EMPTY : new long[wordCount(capacity)];
+    }
+
+    private static int wordCount(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /** Whether every element is stored as a bit, so {@link #getBoolean} may be used. */
+    boolean isUnboxed() {
+        return boxed == null;
+    }
+
+    boolean getBoolean(int index) {
+        Objects.checkIndex(index, size);
+        return bit(index);
+    }
+
+    private boolean bit(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void setBit(int index, boolean value) {
+        if (value) {
+            words[index >>> 6] |= 1L << index;
+        } else {
+            words[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    @Override
+    public Object get(int index) {
+        Objects.checkIndex(index, size);
+        return boxed != null ? boxed[index] : bit(index);
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        Objects.checkIndex(index, size);
+        if (boxed == null && element instanceof Boolean value) {
+            boolean previous = bit(index);
+            setBit(index, value);
+            return previous;
+        }
+
+        box();
+        Object previous = boxed[index];
+        boxed[index] = element;
+        return previous;
+    }
+
+    /** Appends in place; inserting anywhere else moves the list to boxed storage first. */
+    @Override
+    public void add(int index, Object element) {
+        Objects.checkIndex(index, size + 1);
+        if (boxed == null && (index != size || !(element instanceof Boolean))) box();
+        if (boxed != null) {
+            if (size == boxed.length) boxed = Arrays.copyOf(boxed, size + (size >> 1) + 1);
+            System.arraycopy(boxed, index, boxed, index + 1, size - index);
+            boxed[index] = element;
+        } else {
+            grow(size + 1);
+            setBit(index, (Boolean) element);
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<?> elements) {
+        if (!(elements instanceof BoolList other) || boxed != null || other.boxed != null) {
+            Object[] added = elements.toArray();
+            for (Object element : added) add(size, element);
+            return added.length != 0;
+        }
+
+        int count = other.size;
+        grow(size + count);
+        for (int i = 0; i < count; i++) {
+            setBit(size + i, other.bit(i));
+        }
+        size += count;
+        modCount++;
+        return count != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Makes room for {@code capacity} bits; words past the size are always zero. */
+    private void grow(int capacity) {
+        int needed = wordCount(capacity);
+        if (needed <= words.length) return;
+        words = Arrays.copyOf(words, Math.max(needed, words.length + (words.length >> 1) + 1));
+    }
+
+    private void box() {
+        if (boxed != null) return;
+        boxed = new Object[Math.max(size, 1)];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = bit(i);
+        }
+        words = EMPTY;
+    }
+}
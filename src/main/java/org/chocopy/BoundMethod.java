@@ -0,0 +1,16 @@
+package org.chocopy;
+
+class BoundMethod {
+    final ChocoPyInstance receiver;
+    final Closure method;
+
+    BoundMethod(ChocoPyInstance receiver, Closure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package org.chocopy;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marks list indexing whose range check cannot fail. An index {@code i} into
+ * a list {@code xs} is in range where a dominating branch has established
+ * {@code i < len(xs)} for the same two values and {@code i} cannot be
+ * negative, as with the usual {@code while i < len(xs)} loop. Lists never
+ * shrink, so the check stays true however the list is used in between.
+ * <p>
+ * The {@link IrInterpreter} still reports an index that is out of range after
+ * all, such as a counter that overflowed, with the usual error.
+ */
+class BoundsCheckElimination implements IrPass {
+
+    @Override
+    public boolean run(Ir.Function function) {
+        Map<Ir.Block, Ir.Block> dominators = function.dominators();
+        boolean changed = false;
+        for (Ir.Block block : function.blocks) {
+            if (!dominators.containsKey(block)) continue;
+            for (Ir.Instr instr : block.instructions) {
+                if (instr.op != Ir.Op.INDEX && instr.op != Ir.Op.SET_INDEX || instr.inBounds) continue;
+                if (!(instr.operand(0).type instanceof ListValueType)) continue;
+
+                if (guarded(block, instr.operand(0), instr.operand(1), dominators)
+                        && nonNegative(instr.operand(1), new HashSet<>())) {
+                    instr.inBounds = true;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** Whether the block is only reached through a branch that found the index below the length. */
+    private static boolean guarded(Ir.Block block, Ir.Instr list, Ir.Instr index, Map<Ir.Block, Ir.Block> dominators) {
+        for (Ir.Block dominator = block; ; dominator = dominators.get(dominator)) {
+            if (dominator.predecessors.size() == 1) {
+                Ir.Instr branch = dominator.predecessors.get(0).terminator();
+                if (branch.op == Ir.Op.BRANCH && branch.targets.get(0) == dominator
+                        && branch.targets.get(1) != dominator && below(branch.operand(0), list, index)) {
+                    return true;
+                }
+            }
+            if (dominators.get(dominator) == dominator) return false;
+        }
+    }
+
+    private static boolean below(Ir.Instr condition, Ir.Instr list, Ir.Instr index) {
+        if (condition.op == Ir.Op.LT) {
+            return condition.operand(0) == index && isLength(condition.operand(1), list);
+        } else if (condition.op == Ir.Op.GT) {
+            return condition.operand(1) == index && isLength(condition.operand(0), list);
+        }
+        return false;
+    }
+
+    private static boolean isLength(Ir.Instr value, Ir.Instr list) {
+        return value.op == Ir.Op.LEN && value.operand(0) == list;
+    }
+
+    /**
+     * Whether the value is never negative. A phi is assumed not to be while
+     * its own operands are checked, which proves counters that start at zero
+     * and only go up.
+     */
+    private static boolean nonNegative(Ir.Instr value, Set<Ir.Instr> visiting) {
+        switch (value.op) {
+            case CONST:
+                return value.constant instanceof Integer number && number >= 0;
+            case LEN:
+                return true;
+            case ADD:
+            case MUL:
+                return value.type instanceof IntType
+                        && nonNegative(value.operand(0), visiting) && nonNegative(value.operand(1), visiting);
+            case PHI:
+            case COPY:
+                if (!visiting.add(value)) return true;
+                for (Ir.Instr operand : value.operands) {
+                    if (!nonNegative(operand, visiting)) return false;
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+}
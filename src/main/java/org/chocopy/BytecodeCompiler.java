@@ -0,0 +1,466 @@
+package org.chocopy;
+
+import java.util.*;
+
+/**
+ * Compiles a resolved script into bytecode for the {@link VM}. Variables are
+ * addressed by the frame slots assigned by the {@link Resolver}.
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private static class Builder {
+        final Builder enclosing;
+        int[] code = new int[64];
+        int count = 0;
+        final List<Object> constants = new ArrayList<>();
+        final Map<Object, Integer> constantIndexes = new HashMap<>();
+        int depth = 0;
+        int maxDepth = 0;
+
+        Builder(Builder enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        Chunk chunk() {
+            return new Chunk(Arrays.copyOf(code, count), constants.toArray());
+        }
+    }
+
+    private Builder current;
+    private int globalCount = Interpreter.BUILTINS.size();
+
+    CompiledFunction compile(List<Stmt> statements) {
+        current = new Builder(null);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emit(OpCode.NONE, 1);
+        emit(OpCode.RETURN, -1);
+
+        return new CompiledFunction("<script>", current.chunk(), new int[0], 0, 0, current.maxDepth, false);
+    }
+
+    int globalCount() {
+        return globalCount;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private boolean isTopLevel() {
+        return current.enclosing == null;
+    }
+
+    private void emit(int opCode, int stackEffect) {
+        write(opCode);
+        current.depth += stackEffect;
+        current.maxDepth = Math.max(current.maxDepth, current.depth);
+    }
+
+    private void emit(int opCode, int operand, int stackEffect) {
+        emit(opCode, stackEffect);
+        write(operand);
+    }
+
+    private void emit(int opCode, int first, int second, int stackEffect) {
+        emit(opCode, stackEffect);
+        write(first);
+        write(second);
+    }
+
+    private void write(int value) {
+        if (current.count == current.code.length) {
+            current.code = Arrays.copyOf(current.code, current.count * 2);
+        }
+        current.code[current.count++] = value;
+    }
+
+    private int constant(Object value) {
+        Integer index = current.constantIndexes.get(value);
+        if (index == null) {
+            index = current.constants.size();
+            current.constants.add(value);
+            current.constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int site(Object node) {
+        current.constants.add(node);
+        return current.constants.size() - 1;
+    }
+
+    private int emitJump(int opCode, int stackEffect) {
+        emit(opCode, 0, stackEffect);
+        return current.count - 1;
+    }
+
+    private void patchJump(int operand) {
+        current.code[operand] = current.count - (operand + 1);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.JUMP, 0, 0);
+        current.code[current.count - 1] = loopStart - current.count;
+    }
+
+    private void emitLoad(int depth, int slot) {
+        if (slot == Environment.UNRESOLVED) {
+            emit(OpCode.NONE, 1);
+        } else if (depth == Environment.GLOBAL) {
+            globalCount = Math.max(globalCount, slot + 1);
+            emit(OpCode.LOAD_GLOBAL, slot, 1);
+        } else if (depth == 0) {
+            emit(OpCode.LOAD_LOCAL, slot, 1);
+        } else {
+            emit(OpCode.LOAD_OUTER, depth, slot, 1);
+        }
+    }
+
+    private void emitStore(int depth, int slot) {
+        if (slot == Environment.UNRESOLVED) {
+            emit(OpCode.POP, -1);
+        } else if (depth == Environment.GLOBAL) {
+            globalCount = Math.max(globalCount, slot + 1);
+            emit(OpCode.STORE_GLOBAL, slot, -1);
+        } else if (depth == 0) {
+            emit(OpCode.STORE_LOCAL, slot, -1);
+        } else {
+            emit(OpCode.STORE_OUTER, depth, slot, -1);
+        }
+    }
+
+    private void emitDefine(int slot) {
+        emitStore(isTopLevel() ? Environment.GLOBAL : 0, slot);
+    }
+
+    private CompiledFunction function(Stmt.Function stmt, boolean isInitializer) {
+        current = new Builder(current);
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emit(OpCode.NONE, 1);
+        emit(OpCode.RETURN, -1);
+
+        int[] paramSlots = new int[stmt.params.size()];
+        for (int i = 0; i < paramSlots.length; i++) {
+            paramSlots[i] = stmt.params.get(i).slot;
+        }
+        int arity = stmt.params.size();
+        if (arity > 0 && stmt.params.get(0).name.lexeme.equals("self")) {
+            arity--;
+        }
+
+        CompiledFunction function = new CompiledFunction(stmt.name.lexeme, current.chunk(), paramSlots, arity,
+                stmt.frameSize, current.maxDepth, isInitializer);
+        current = current.enclosing;
+        return function;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        switch (expr.operator.type) {
+            case BANG_EQUAL -> emit(OpCode.NOT_EQUAL, -1);
+            case EQUAL_EQUAL -> emit(OpCode.EQUAL, -1);
+            case IS -> emit(OpCode.IS, -1);
+            case GREATER -> emit(OpCode.GREATER, site(expr), -1);
+            case GREATER_EQUAL -> emit(OpCode.GREATER_EQUAL, site(expr), -1);
+            case LESS -> emit(OpCode.LESS, site(expr), -1);
+            case LESS_EQUAL -> emit(OpCode.LESS_EQUAL, site(expr), -1);
+            case MINUS -> emit(OpCode.SUBTRACT, site(expr), -1);
+            case PLUS -> emit(OpCode.ADD, site(expr), -1);
+            case DOUBLE_SLASH -> emit(OpCode.DIVIDE, site(expr), -1);
+            case PERCENT -> emit(OpCode.MODULO, site(expr), -1);
+            case STAR -> emit(OpCode.MULTIPLY, site(expr), -1);
+            default -> {
+                emit(OpCode.POP, -1);
+                emit(OpCode.POP, -1);
+                emit(OpCode.NONE, 1);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        for (Expr argument : expr.arguments) {
+            compile(argument);
+        }
+        emit(OpCode.CALL, expr.arguments.size(), site(expr), -expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        emit(OpCode.GET_ATTR, site(expr), 0);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NONE, 1);
+        } else if (Boolean.TRUE.equals(expr.value)) {
+            emit(OpCode.TRUE, 1);
+        } else if (Boolean.FALSE.equals(expr.value)) {
+            emit(OpCode.FALSE, 1);
+        } else {
+            emit(OpCode.CONSTANT, constant(expr.value), 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        int opCode = expr.operator.type == TokenType.OR ? OpCode.JUMP_IF_TRUE_OR_POP : OpCode.JUMP_IF_FALSE_OR_POP;
+        int end = emitJump(opCode, -1);
+        compile(expr.right);
+        patchJump(end);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+        compile(expr.onTrue);
+        int endJump = emitJump(OpCode.JUMP, -1);
+        patchJump(elseJump);
+        compile(expr.onFalse);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitListingExpr(Expr.Listing expr) {
+        for (Expr element : expr.elements) {
+            compile(element);
+        }
+        emit(OpCode.LIST, expr.elements.size(), 1 - expr.elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        compile(expr.listing);
+        compile(expr.id);
+        emit(OpCode.INDEX, site(expr), -1);
+        return null;
+    }
+
+    @Override
+    public Void visitListSetExpr(Expr.ListSet expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Void visitLenExpr(Expr.Len expr) {
+        compile(expr.expression);
+        emit(OpCode.LEN, site(expr), 0);
+        return null;
+    }
+
+    @Override
+    public Void visitInputExpr(Expr.Input expr) {
+        emit(OpCode.INPUT, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Void visitSelfExpr(Expr.Self expr) {
+        emitLoad(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        if (expr.operator.type == TokenType.MINUS) {
+            emit(OpCode.NEGATE, site(expr), 0);
+        } else if (expr.operator.type == TokenType.NOT) {
+            emit(OpCode.NOT, site(expr), 0);
+        } else {
+            emit(OpCode.POP, -1);
+            emit(OpCode.NONE, 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        emitLoad(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintExpr(Expr.Print expr) {
+        compile(expr.expression);
+        emit(OpCode.PRINT, 0);
+        return null;
+    }
+
+    @Override
+    public Void visitMultiAssignExpr(Expr.MultiAssign multiAssign) {
+        compile(multiAssign.value);
+
+        for (Expr target : multiAssign.targets) {
+            emit(OpCode.DUP, 1);
+            if (target instanceof Expr.Assign expr) {
+                emitStore(expr.target.depth, expr.target.slot);
+            } else if (target instanceof Expr.Set expr) {
+                compile(expr.object);
+                emit(OpCode.SET_ATTR, site(expr), -2);
+            } else if (target instanceof Expr.ListSet expr) {
+                compile(expr.id);
+                compile(expr.listing);
+                emit(OpCode.SET_INDEX, site(expr), -3);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        Map<String, CompiledFunction> methods = new HashMap<>();
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Function method) {
+                methods.put(method.name.lexeme, function(method, method.name.lexeme.equals("__init__")));
+            } else if (member instanceof Stmt.Var attribute) {
+                attributes.put(attribute.name.lexeme, ((Expr.Literal) attribute.initializer).value);
+            }
+        }
+
+        globalCount = Math.max(globalCount, stmt.slot + 1);
+        emit(OpCode.CLASS, site(new CompiledClass(stmt, methods, attributes)), 0);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(OpCode.POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        CompiledFunction function = function(stmt, false);
+        emit(OpCode.CLOSURE, site(function), 1);
+        emitDefine(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+        compile(stmt.thenBranch);
+        if (stmt.elseBranch != null) {
+            int endJump = emitJump(OpCode.JUMP, 0);
+            patchJump(elseJump);
+            compile(stmt.elseBranch);
+            patchJump(endJump);
+        } else {
+            patchJump(elseJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) {
+            compile(stmt.value);
+        } else {
+            emit(OpCode.NONE, 1);
+        }
+        emit(OpCode.RETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NONE, 1);
+        }
+        emitDefine(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = current.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE, -1);
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        compile(stmt.iterable);
+        emit(OpCode.ITER, site(stmt), 0);
+        int loopStart = current.count;
+        int exitJump = emitJump(OpCode.FOR_NEXT, 1);
+        emitStore(stmt.id.depth, stmt.id.slot);
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        current.depth--;
+        return null;
+    }
+
+    @Override
+    public Void visitPassStmt(Stmt.Pass stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitGlobalStmt(Stmt.Global stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return null;
+    }
+}
@@ -3,12 +3,26 @@ package org.chocopy;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ChocoPy {
+    enum Engine {
+        TREE,
+        CLOSURE,
+        VM,
+        JVM,
+        IR,
+        REGISTER
+    }
+
     private static final Interpreter interpreter = new Interpreter();
+    static Engine engine = Engine.TREE;
+    static int maxDepth = VM.DEFAULT_MAX_DEPTH;
+    static Path compileTo;
+    static boolean disassemble = false;
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
     static Integer exitCode;
@@ -16,20 +30,63 @@ public class ChocoPy {
     static List<String> runtimeErrors = new ArrayList<>();
 
     public static void main(String[] args) throws IOException {
-        if (args.length == 1) {
-            String filename = args[0];
-            if (filename.endsWith(".py")) {
-                runFile(filename);
+        String filename = null;
+        boolean compile = false;
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                String name = arg.substring("--engine=".length());
+                switch (name) {
+                    case "tree" -> engine = Engine.TREE;
+                    case "closure" -> engine = Engine.CLOSURE;
+                    case "vm" -> engine = Engine.VM;
+                    case "jvm" -> engine = Engine.JVM;
+                    case "ir" -> engine = Engine.IR;
+                    case "register" -> engine = Engine.REGISTER;
+                    default -> usage();
+                }
+            } else if (arg.startsWith("--max-depth=")) {
+                try {
+                    maxDepth = Integer.parseInt(arg.substring("--max-depth=".length()));
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (maxDepth < 1) usage();
+            } else if (arg.startsWith("--compile-threshold=")) {
+                try {
+                    interpreter.compileThreshold = Integer.parseInt(arg.substring("--compile-threshold=".length()));
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+                if (interpreter.compileThreshold < 1) usage();
+            } else if (arg.equals("--compile")) {
+                compile = true;
+            } else if (arg.equals("--trace-compile")) {
+                TieredCompiler.trace = true;
+            } else if (arg.equals("--disassemble")) {
+                disassemble = true;
+            } else if (filename == null) {
+                filename = arg;
             } else {
-                System.out.println("Only .py files allowed as arguments");
-                System.exit(64);
+                usage();
             }
+        }
+        
+        if (filename == null) {
+            usage();
+        } else if (filename.endsWith(".py")) {
+            if (compile) compileTo = Paths.get(filename);
+            runFile(filename);
         } else {
-            System.out.println("Usage: java -jar chocopy.jar FILE.py");
+            System.out.println("Only .py files allowed as arguments");
             System.exit(64);
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: java -jar chocopy.jar [--engine=tree|closure|vm|jvm|ir|register] [--max-depth=N] [--compile-threshold=N] [--trace-compile] [--compile] [--disassemble] FILE.py");
+        System.exit(64);
+    }
+
     static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
         run(new String(bytes, Charset.defaultCharset()));
@@ -44,7 +101,7 @@ public class ChocoPy {
         }
     }
 
-    private static void run(String source) {
+    private static void run(String source) throws IOException {
         Scanner scanner = new Scanner(source);
         List<Token> tokens = scanner.scanTokens();
 
@@ -58,7 +115,49 @@ public class ChocoPy {
 
         if (hadError) return;
 
-        interpreter.interpret(statements);
+        execute(optimize(statements));
+    }
+
+    /**
+     * Inlines small functions, keeps objects that do not escape in locals,
+     * then moves invariant work out of loops.
+     */
+    static List<Stmt> optimize(List<Stmt> statements) {
+        statements = new ScalarReplacer().optimize(new Inliner().optimize(statements));
+        return new LoopOptimizer().optimize(statements);
+    }
+
+    private static void execute(List<Stmt> statements) throws IOException {
+        if (compileTo != null) {
+            AotCompiler.writeJar(statements, compileTo);
+            return;
+        }
+        if (disassemble) {
+            System.out.print(new RegisterCompiler().compile(statements).disassemble());
+            return;
+        }
+
+        execute(engine, interpreter, statements);
+    }
+
+    /** Runs a resolved script on an engine; the tree engine uses the given interpreter. */
+    static void execute(Engine engine, Interpreter interpreter, List<Stmt> statements) {
+        switch (engine) {
+            case TREE -> interpreter.interpret(statements);
+            case CLOSURE -> new ClosureCompiler().interpret(statements);
+            case VM -> {
+                BytecodeCompiler compiler = new BytecodeCompiler();
+                CompiledFunction script = compiler.compile(statements);
+                new VM(maxDepth).interpret(script, compiler.globalCount());
+            }
+            case JVM -> AotRuntime.execute(AotCompiler.load(statements));
+            case IR -> new IrInterpreter().interpret(statements);
+            case REGISTER -> {
+                RegisterCompiler compiler = new RegisterCompiler();
+                RegisterFunction script = compiler.compile(statements);
+                new RegisterVM(maxDepth).interpret(script, compiler.globalCount());
+            }
+        }
     }
 
     static void error(int line, String message, String errorType) {
@@ -1,22 +1,67 @@
 package org.chocopy;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 class ChocoPyClass implements ChocoPyCallable {
     final String name;
     final ChocoPyClass superclass;
-    private final Map<String, ChocoPyFunction> methods;
-    private final Map<String, ChocoPyAttribute> attributes;
+    private final Map<String, Integer> methodSlots = new HashMap<>();
+    private final ChocoPyCallable[] vtable;
+    private final Map<String, Integer> fieldSlots;
+    private final Object[] fieldDefaults;
 
+    /**
+     * Creates a class whose instances store their attributes in an array laid
+     * out by the class: inherited attributes keep the superclass's slots and
+     * the class's own attributes are appended in declaration order.
+     * <p>
+     * Methods are flattened into a vtable whose order is given by
+     * {@code methodTable}, the layout computed by the {@link Resolver}, so the
+     * method indices it stamps on call sites are valid at runtime.
+     */
     ChocoPyClass(String name, ChocoPyClass superclass,
-                 Map<String, ChocoPyFunction> methods,
-                 Map<String, ChocoPyAttribute> attributes) {
+                 Map<String, ChocoPyCallable> methods,
+                 Map<String, Object> attributes,
+                 List<String> methodTable) {
         this.superclass = superclass;
         this.name = name;
-        this.methods = methods;
-        this.attributes = attributes;
+
+        List<String> methodNames = new ArrayList<>(methodTable);
+        if (superclass != null) {
+            for (String methodName : superclass.methodSlots.keySet()) {
+                if (!methodNames.contains(methodName)) methodNames.add(methodName);
+            }
+        }
+        for (String methodName : methods.keySet()) {
+            if (!methodNames.contains(methodName)) methodNames.add(methodName);
+        }
+        vtable = new ChocoPyCallable[methodNames.size()];
+        for (int i = 0; i < vtable.length; i++) {
+            String methodName = methodNames.get(i);
+            ChocoPyCallable method = methods.get(methodName);
+            if (method == null && superclass != null) method = superclass.findMethod(methodName);
+            methodSlots.put(methodName, i);
+            vtable[i] = method;
+        }
+
+        fieldSlots = superclass != null ? new HashMap<>(superclass.fieldSlots) : new HashMap<>();
+        List<Object> defaults = superclass != null
+                ? new ArrayList<>(Arrays.asList(superclass.fieldDefaults)) : new ArrayList<>();
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            Integer slot = fieldSlots.get(attribute.getKey());
+            if (slot == null) {
+                fieldSlots.put(attribute.getKey(), defaults.size());
+                defaults.add(attribute.getValue());
+            } else {
+                defaults.set(slot, attribute.getValue());
+            }
+        }
+        fieldDefaults = defaults.toArray();
     }
 
     @Override
@@ -26,51 +71,52 @@ class ChocoPyClass implements ChocoPyCallable {
 
     @Override
     public int arity() {
-        ChocoPyFunction initializer = findMethod("__init__");
+        ChocoPyCallable initializer = findMethod("__init__");
         if (initializer == null) return 0;
         return initializer.arity();
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        Object object = allocate();
+        if (!(object instanceof ChocoPyInstance instance)) return object;
+        interpreter.allocations++;
+
+        ChocoPyCallable initializer = findMethod("__init__");
+        if (initializer instanceof ChocoPyFunction function) {
+            function.call(interpreter, instance, arguments);
+        }
+
+        return instance;
+    }
+
+    Object allocate() {
         switch(this.name) {
             case("int"): return 0;
             case("str"): return "";
             case("bool"): return false;
             case("object"): return new ChocoPyInstance(
-                    new ChocoPyClass("object", null, Collections.emptyMap(), Collections.emptyMap())
+                    new ChocoPyClass("object", null, Collections.emptyMap(), Collections.emptyMap(), List.of())
             );
         }
-        ChocoPyInstance instance = new ChocoPyInstance(this);
-        ChocoPyFunction initializer = findMethod("__init__");
-        if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
-        }
-
-        return instance;
+        return new ChocoPyInstance(this);
     }
 
-    ChocoPyFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
-
-        if (superclass != null) {
-            return superclass.findMethod(name);
-        }
-
-        return null;
+    ChocoPyCallable findMethod(String name) {
+        Integer slot = methodSlots.get(name);
+        return slot != null ? vtable[slot] : null;
     }
 
-    ChocoPyAttribute findAttribute(String name) {
-        if (attributes.containsKey(name)) {
-            return attributes.get(name);
-        }
+    ChocoPyCallable method(int index) {
+        return index < vtable.length ? vtable[index] : null;
+    }
 
-        if (superclass != null) {
-            return superclass.findAttribute(name);
-        }
+    int findField(String name) {
+        Integer slot = fieldSlots.get(name);
+        return slot != null ? slot : -1;
+    }
 
-        return null;
+    Object[] newFields() {
+        return fieldDefaults.length == 0 ? fieldDefaults : fieldDefaults.clone();
     }
-}
\ No newline at end of file
+}
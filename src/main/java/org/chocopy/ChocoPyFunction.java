@@ -1,17 +1,49 @@
 package org.chocopy;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 class ChocoPyFunction implements ChocoPyCallable {
+    static final int DEFAULT_COMPILE_THRESHOLD = 10_000;
+
+    /** A function body compiled to JVM bytecode by the {@link TieredCompiler}. */
+    interface Body {
+        Object execute(Interpreter interpreter, Environment frame);
+    }
+
+    /**
+     * How often the function ran, shared with its bound copies. Once the calls
+     * and loop iterations reach the interpreter's compile threshold the body is
+     * compiled, and the first call after the compiled version is ready runs it.
+     */
+    private static class Profile {
+        int invocations;
+        int backEdges;
+        /** The compilation running in the background, until its result is taken. */
+        Future<Body> compilation;
+        Body compiled;
+        boolean failed;
+    }
+
     private final Stmt.Function declaration;
     private final Environment closure;
     private final boolean isInitializer;
+    private final ChocoPyInstance self;
+    private final Profile profile;
 
     ChocoPyFunction(Stmt.Function declaration, Environment closure,
                     boolean isInitializer) {
+        this(declaration, closure, isInitializer, null, new Profile());
+    }
+
+    private ChocoPyFunction(Stmt.Function declaration, Environment closure,
+                            boolean isInitializer, ChocoPyInstance self, Profile profile) {
         this.isInitializer = isInitializer;
         this.closure = closure;
         this.declaration = declaration;
+        this.self = self;
+        this.profile = profile;
     }
 
     @Override
@@ -25,34 +57,83 @@ class ChocoPyFunction implements ChocoPyCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        
-        if (declaration.params.size() > 0) {
-            if (arguments.size() == declaration.params.size()) {
-                // function
-                for (int i = 0; i < declaration.params.size(); i++) {
-                    environment.define(declaration.params.get(i).name.lexeme, arguments.get(i));
-                }
-            } else {
-                // method
-                environment.define(declaration.params.get(0).name.lexeme, 
-                        closure.values.get("self"));
-                for (int i = 1; i < declaration.params.size(); i++) {
-                    environment.define(declaration.params.get(i).name.lexeme, arguments.get(i-1));
-                }
+        return call(interpreter, self, arguments);
+    }
+
+    /**
+     * Calls the function as a method of {@code self} without binding it first.
+     * A null {@code self} calls it as a plain function.
+     */
+    Object call(Interpreter interpreter, ChocoPyInstance self, List<Object> arguments) {
+        Environment environment = newFrame(self);
+        for (int i = 0; i < arguments.size(); i++) {
+            environment.values[argumentSlot(self, i)] = arguments.get(i);
+        }
+
+        return execute(interpreter, environment, self);
+    }
+
+    Environment newFrame(ChocoPyInstance self) {
+        Environment environment = new Environment(closure, declaration.frameSize);
+        if (self != null && !declaration.params.isEmpty()) {
+            environment.values[declaration.params.get(0).slot] = self;
+        }
+        return environment;
+    }
+
+    int argumentSlot(ChocoPyInstance self, int argument) {
+        return declaration.params.get(self == null ? argument : argument + 1).slot;
+    }
+
+    Object execute(Interpreter interpreter, Environment environment, ChocoPyInstance self) {
+        if (profile.compiled == null && !profile.failed) {
+            if (profile.compilation != null) {
+                if (profile.compilation.isDone()) install(profile.compilation);
+            } else if (++profile.invocations + profile.backEdges >= interpreter.compileThreshold) {
+                compile(interpreter);
             }
         }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer) return closure.values.get("self");
+        Object value = profile.compiled != null
+                ? profile.compiled.execute(interpreter, environment)
+                : interpreter.executeBlock(declaration.body, environment, this);
+
+        if (isInitializer) return self;
+        return value;
+    }
 
-            return returnValue.value;
+    void backEdge() {
+        profile.backEdges++;
+    }
+
+    /**
+     * Only functions declared at the top level or in a class are compiled: their
+     * frame is the only one they read, apart from the globals.
+     */
+    private void compile(Interpreter interpreter) {
+        if (closure != interpreter.globals) {
+            profile.failed = true;
+        } else if (interpreter.compileInBackground) {
+            profile.compilation = TieredCompiler.compileInBackground(declaration);
+        } else {
+            profile.compiled = TieredCompiler.compile(declaration);
+            profile.failed = profile.compiled == null;
         }
+    }
 
-        if (isInitializer) return closure.values.get("self");
-        return null;
+    /** Takes the result of a finished compilation; anything it threw is rethrown here. */
+    private void install(Future<Body> compilation) {
+        profile.compilation = null;
+        try {
+            profile.compiled = compilation.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) throw error;
+            if (e.getCause() instanceof RuntimeException exception) throw exception;
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        profile.failed = profile.compiled == null;
     }
 
     @Override
@@ -61,8 +142,6 @@ class ChocoPyFunction implements ChocoPyCallable {
     }
 
     ChocoPyFunction bind(ChocoPyInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("self", instance);
-        return new ChocoPyFunction(declaration, environment, isInitializer);
+        return new ChocoPyFunction(declaration, closure, isInitializer, instance, profile);
     }
-}
\ No newline at end of file
+}
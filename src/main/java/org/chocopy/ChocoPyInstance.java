@@ -1,10 +1,12 @@
 package org.chocopy;
 
 class ChocoPyInstance {
-    private final ChocoPyClass klass;
+    final ChocoPyClass klass;
+    final Object[] fields;
 
     ChocoPyInstance(ChocoPyClass klass) {
         this.klass = klass;
+        this.fields = klass.newFields();
     }
 
     @Override
@@ -12,18 +14,15 @@ class ChocoPyInstance {
         return klass.name + " instance";
     }
 
-    Object get(Token name) {
-        ChocoPyAttribute attr = klass.findAttribute(name.lexeme);
-        if (attr != null) return attr.getValue();
-
-        ChocoPyFunction method = klass.findMethod(name.lexeme);
-        if (method != null) return method.bind(this);
+    Object get(Token name, InlineCache cache) {
+        Object member = cache.lookup(klass, name.lexeme);
+        if (member instanceof Integer slot) return fields[slot];
+        if (member instanceof ChocoPyFunction function) return function.bind(this);
 
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
     }
 
-    void set(Token name, Object value) {
-        ChocoPyAttribute attr = klass.findAttribute(name.lexeme);
-        if (attr != null) attr.setValue(value);
+    void set(Token name, Object value, InlineCache cache) {
+        if (cache.lookup(klass, name.lexeme) instanceof Integer slot) fields[slot] = value;
     }
 }
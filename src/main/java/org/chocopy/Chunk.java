@@ -0,0 +1,40 @@
+package org.chocopy;
+
+/**
+ * Compiled body of a function or script: the instruction stream and its
+ * constant pool. Constants hold literal values, nested functions, class
+ * templates and the AST nodes used to report runtime errors.
+ */
+class Chunk {
+    final int[] code;
+    final Object[] constants;
+
+    Chunk(int[] code, Object[] constants) {
+        this.code = code;
+        this.constants = constants;
+    }
+
+    String disassemble(String name) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("== ").append(name).append(" ==\n");
+
+        int offset = 0;
+        while (offset < code.length) {
+            int opCode = code[offset];
+            builder.append(String.format("%04d %-20s", offset, OpCode.name(opCode)));
+            int operands = OpCode.operands(opCode);
+            for (int i = 1; i <= operands; i++) {
+                builder.append(' ').append(code[offset + i]);
+            }
+            if (OpCode.isJump(opCode)) {
+                builder.append(" -> ").append(offset + operands + 1 + code[offset + 1]);
+            } else if (opCode == OpCode.CONSTANT) {
+                builder.append(" '").append(Values.stringify(constants[code[offset + 1]])).append('\'');
+            }
+            builder.append('\n');
+            offset += operands + 1;
+        }
+
+        return builder.toString();
+    }
+}
@@ -1,13 +1,17 @@
 package org.chocopy;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ClassInfo {
     protected String name;
     protected String superclass;
     protected Map<String, ValueType> attrs = new HashMap<>();
-    protected Map<String, FuncType> methods = new HashMap<>();
+    protected Map<String, FuncType> methods = new LinkedHashMap<>();
+    /** Method names in vtable order, set once every method of the class is declared. */
+    protected List<String> methodTable;
 
     public ClassInfo(String name) {
         this.name = name;
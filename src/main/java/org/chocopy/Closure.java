@@ -0,0 +1,30 @@
+package org.chocopy;
+
+import java.util.List;
+
+class Closure implements ChocoPyCallable {
+    final CompiledFunction function;
+    final Environment enclosing;
+    private final VM vm;
+
+    Closure(CompiledFunction function, Environment enclosing, VM vm) {
+        this.function = function;
+        this.enclosing = enclosing;
+        this.vm = vm;
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return vm.invoke(this, null, arguments.toArray(), 0, arguments.size());
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,814 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution engine that walks the resolved AST once and turns every node into
+ * a Java lambda bound to its operands. Running the script then only calls the
+ * lambdas: there is no visitor dispatch, operators are picked from the types
+ * inferred by the {@link Resolver} before the script starts, and ints and
+ * conditions are passed around unboxed where the types allow it.
+ *
+ * <p>Values, classes, instances and builtins are shared with the tree-walking
+ * {@link Interpreter}, so the results and errors are the same.
+ */
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Node>, Stmt.Visitor<ClosureCompiler.Action> {
+
+    /** Returned by a statement that completed without a {@code return}. */
+    static final Object NORMAL = new Object();
+
+    interface Node {
+        Object evaluate(Environment environment);
+    }
+
+    interface IntNode {
+        int evaluate(Environment environment);
+    }
+
+    interface BoolNode {
+        boolean test(Environment environment);
+    }
+
+    /**
+     * A compiled statement. Returns {@link #NORMAL}, or the value of the
+     * {@code return} statement that ended it.
+     */
+    interface Action {
+        Object execute(Environment environment);
+    }
+
+    interface Store {
+        void store(Environment environment, Object value);
+    }
+
+    private static final Action PASS = environment -> NORMAL;
+
+    private final Interpreter interpreter = new Interpreter();
+    private final Environment globals = interpreter.globals;
+
+    void interpret(List<Stmt> statements) {
+        try {
+            compileBlock(statements).execute(globals);
+        } catch (Throwable e) {
+            Interpreter.reportRuntimeError(e);
+        }
+    }
+
+    private Node compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Action compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Action compileBlock(List<Stmt> statements) {
+        List<Action> actions = new ArrayList<>();
+        for (Stmt statement : statements) {
+            Action action = compile(statement);
+            if (action != PASS) actions.add(action);
+        }
+
+        switch (actions.size()) {
+            case 0: return PASS;
+            case 1: return actions.get(0);
+            case 2: {
+                Action first = actions.get(0);
+                Action second = actions.get(1);
+                return environment -> {
+                    Object completion = first.execute(environment);
+                    if (completion != NORMAL) return completion;
+                    return second.execute(environment);
+                };
+            }
+            default: {
+                Action[] block = actions.toArray(new Action[0]);
+                return environment -> {
+                    for (Action action : block) {
+                        Object completion = action.execute(environment);
+                        if (completion != NORMAL) return completion;
+                    }
+                    return NORMAL;
+                };
+            }
+        }
+    }
+
+    private Node load(int depth, int slot) {
+        Environment globals = this.globals;
+        if (depth == Environment.GLOBAL) return environment -> globals.get(slot);
+        if (depth == 0) return environment -> environment.values[slot];
+        if (depth == 1) return environment -> environment.enclosing.values[slot];
+        return environment -> environment.getAt(depth, slot);
+    }
+
+    private Store store(int depth, int slot) {
+        Environment globals = this.globals;
+        if (depth == Environment.GLOBAL) return (environment, value) -> globals.define(slot, value);
+        if (depth == 0) return (environment, value) -> environment.values[slot] = value;
+        if (depth == 1) return (environment, value) -> environment.enclosing.values[slot] = value;
+        return (environment, value) -> environment.assignAt(depth, slot, value);
+    }
+
+    // Unboxed ints and conditions, following the same rules as the interpreter.
+
+    private static boolean isUnboxedInt(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return BinaryNode.specialize(binary) instanceof BinaryNode.IntArithmetic;
+        } else if (expr instanceof Expr.Unary unary) {
+            return unary.operator.type == TokenType.MINUS && unary.inferredType instanceof IntType;
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return isUnboxedInt(grouping.expression);
+        }
+        return expr instanceof Expr.Len
+                || expr instanceof Expr.Literal literal && literal.value instanceof Integer;
+    }
+
+    /** Compiles an expression accepted by {@link #isUnboxedInt}. */
+    private IntNode compileInt(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return intArithmetic(binary);
+        } else if (expr instanceof Expr.Unary unary) {
+            if (isUnboxedInt(unary.right)) {
+                IntNode right = compileInt(unary.right);
+                return environment -> -right.evaluate(environment);
+            }
+            Node right = compile(unary.right);
+            return environment -> (int) Values.unary(unary, right.evaluate(environment));
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return compileInt(grouping.expression);
+        } else if (expr instanceof Expr.Len len) {
+            Node object = compile(len.expression);
+            return environment -> Values.len(len, object.evaluate(environment));
+        }
+        int value = (int) ((Expr.Literal) expr).value;
+        return environment -> value;
+    }
+
+    private IntNode intArithmetic(Expr.Binary expr) {
+        IntNode left = leftInt(expr);
+        if (constant(expr.right) instanceof Integer value) {
+            int right = value;
+            switch (expr.operator.type) {
+                case PLUS: return environment -> left.evaluate(environment) + right;
+                case MINUS: return environment -> left.evaluate(environment) - right;
+                case STAR: return environment -> left.evaluate(environment) * right;
+            }
+        }
+        IntNode right = rightInt(expr);
+
+        switch (expr.operator.type) {
+            case PLUS: return environment -> left.evaluate(environment) + right.evaluate(environment);
+            case MINUS: return environment -> left.evaluate(environment) - right.evaluate(environment);
+            case STAR: return environment -> left.evaluate(environment) * right.evaluate(environment);
+            case DOUBLE_SLASH:
+                return environment -> Values.divide(expr, left.evaluate(environment), right.evaluate(environment));
+            default:
+                return environment -> Values.modulo(expr, left.evaluate(environment), right.evaluate(environment));
+        }
+    }
+
+    private BoolNode intComparison(Expr.Binary expr) {
+        TokenType operator = expr.operator.type;
+        if ((operator == TokenType.EQUAL_EQUAL || operator == TokenType.BANG_EQUAL)
+                && !(isUnboxedInt(expr.left) && isUnboxedInt(expr.right))) {
+            return intEquality(expr);
+        }
+
+        IntNode left = leftInt(expr);
+        if (constant(expr.right) instanceof Integer value) {
+            int right = value;
+            switch (expr.operator.type) {
+                case LESS: return environment -> left.evaluate(environment) < right;
+                case LESS_EQUAL: return environment -> left.evaluate(environment) <= right;
+                case GREATER: return environment -> left.evaluate(environment) > right;
+                case GREATER_EQUAL: return environment -> left.evaluate(environment) >= right;
+                case EQUAL_EQUAL: return environment -> left.evaluate(environment) == right;
+                default: return environment -> left.evaluate(environment) != right;
+            }
+        }
+        IntNode right = rightInt(expr);
+
+        switch (expr.operator.type) {
+            case LESS: return environment -> left.evaluate(environment) < right.evaluate(environment);
+            case LESS_EQUAL: return environment -> left.evaluate(environment) <= right.evaluate(environment);
+            case GREATER: return environment -> left.evaluate(environment) > right.evaluate(environment);
+            case GREATER_EQUAL: return environment -> left.evaluate(environment) >= right.evaluate(environment);
+            case EQUAL_EQUAL: return environment -> left.evaluate(environment) == right.evaluate(environment);
+            default: return environment -> left.evaluate(environment) != right.evaluate(environment);
+        }
+    }
+
+    /**
+     * {@code ==} or {@code !=} on int operands that may be None. Unlike the
+     * ordering operators these do not fail on None, which only equals None.
+     */
+    private BoolNode intEquality(Expr.Binary expr) {
+        Node left = compile(expr.left);
+        Node right = compile(expr.right);
+        boolean equal = expr.operator.type == TokenType.EQUAL_EQUAL;
+        return environment -> {
+            Object a = left.evaluate(environment);
+            Object b = right.evaluate(environment);
+            if (a instanceof Integer x && b instanceof Integer y) return (x.intValue() == y.intValue()) == equal;
+            return Values.isEqual(a, b) == equal;
+        };
+    }
+
+    /**
+     * The left operand of an int operator. An operand typed int can still be
+     * None, returned by a function that fell off its end; the error then names
+     * both operands, so the right one is evaluated too.
+     */
+    private IntNode leftInt(Expr.Binary expr) {
+        if (isUnboxedInt(expr.left)) return compileInt(expr.left);
+
+        Node right = compile(expr.right);
+        if (expr.left instanceof Expr.Variable variable && variable.depth == 0) {
+            int slot = variable.slot;
+            return environment -> {
+                Object value = environment.values[slot];
+                if (value instanceof Integer number) return number;
+                throw Values.unsupportedOperands(expr, value, right.evaluate(environment));
+            };
+        }
+
+        Node left = compile(expr.left);
+        return environment -> {
+            Object value = left.evaluate(environment);
+            if (value instanceof Integer number) return number;
+            throw Values.unsupportedOperands(expr, value, right.evaluate(environment));
+        };
+    }
+
+    private IntNode rightInt(Expr.Binary expr) {
+        if (isUnboxedInt(expr.right)) return compileInt(expr.right);
+
+        if (expr.right instanceof Expr.Variable variable && variable.depth == 0) {
+            int slot = variable.slot;
+            return environment -> {
+                Object value = environment.values[slot];
+                if (value instanceof Integer number) return number;
+                throw Values.unsupportedOperands(expr, 0, value);
+            };
+        }
+
+        Node right = compile(expr.right);
+        return environment -> {
+            Object value = right.evaluate(environment);
+            if (value instanceof Integer number) return number;
+            throw Values.unsupportedOperands(expr, 0, value);
+        };
+    }
+
+    /** The value of a literal, looking through parentheses, or null. */
+    private static Object constant(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) return constant(grouping.expression);
+        if (expr instanceof Expr.Literal literal) return literal.value;
+        return null;
+    }
+
+    /** Compiles an expression for its truth value. */
+    private BoolNode condition(Expr expr) {
+        if (expr instanceof Expr.Binary binary
+                && BinaryNode.specialize(binary) instanceof BinaryNode.IntComparison) {
+            return intComparison(binary);
+        } else if (expr instanceof Expr.Logical logical) {
+            BoolNode left = condition(logical.left);
+            BoolNode right = condition(logical.right);
+            if (logical.operator.type == TokenType.OR) {
+                return environment -> left.test(environment) || right.test(environment);
+            }
+            return environment -> left.test(environment) && right.test(environment);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.NOT) {
+            if (isUnboxedBool(unary.right)) {
+                BoolNode right = condition(unary.right);
+                return environment -> !right.test(environment);
+            }
+            Node right = compile(unary.right);
+            return environment -> (boolean) Values.unary(unary, right.evaluate(environment));
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return condition(grouping.expression);
+        } else if (expr instanceof Expr.Literal literal && literal.value instanceof Boolean value) {
+            return environment -> value;
+        }
+
+        Node node = compile(expr);
+        return environment -> Values.isTruthy(node.evaluate(environment));
+    }
+
+    private static boolean isUnboxedBool(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return BinaryNode.specialize(binary) instanceof BinaryNode.IntComparison;
+        } else if (expr instanceof Expr.Unary unary) {
+            return unary.operator.type == TokenType.NOT && unary.inferredType instanceof BoolType;
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return isUnboxedBool(grouping.expression);
+        }
+        return expr instanceof Expr.Literal literal && literal.value instanceof Boolean;
+    }
+
+    /** Compiles a chain {@code a + b + c} of list concatenations into one node that allocates the result once. */
+    private Node concatenation(Expr.Binary expr) {
+        int count = BinaryNode.concatenations(expr);
+        Expr.Binary[] sites = new Expr.Binary[count];
+        Node[] operands = new Node[count + 1];
+        Expr.Binary site = expr;
+        for (int i = count - 1; i >= 0; i--) {
+            sites[i] = site;
+            operands[i + 1] = compile(site.right);
+            if (i > 0) site = (Expr.Binary) site.left;
+        }
+        operands[0] = compile(site.left);
+
+        return environment -> {
+            List<?>[] lists = new List<?>[count + 1];
+            lists[0] = operands[0].evaluate(environment) instanceof List<?> list ? list : null;
+            for (int i = 0; i < count; i++) {
+                Object right = operands[i + 1].evaluate(environment);
+                if (lists[0] == null || !(right instanceof List<?> list)) {
+                    throw Values.unsupportedOperands(sites[i], lists[0], right);
+                }
+                lists[i + 1] = list;
+            }
+            return Values.concat(expr.inferredType, lists);
+        };
+    }
+
+    @Override
+    public Node visitAssignExpr(Expr.Assign expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Node visitBinaryExpr(Expr.Binary expr) {
+        BinaryNode node = BinaryNode.specialize(expr);
+        if (node instanceof BinaryNode.IntArithmetic) {
+            IntNode value = intArithmetic(expr);
+            return environment -> value.evaluate(environment);
+        }
+        if (node instanceof BinaryNode.IntComparison) {
+            BoolNode value = intComparison(expr);
+            return environment -> value.test(environment);
+        }
+
+        if (node == BinaryNode.LIST_CONCAT) return concatenation(expr);
+
+        Node left = compile(expr.left);
+        Node right = compile(expr.right);
+
+        if (node == BinaryNode.STR_CONCAT) {
+            return environment -> {
+                Object a = left.evaluate(environment);
+                Object b = right.evaluate(environment);
+                if (a instanceof String x && b instanceof String y) return x + y;
+                return Values.binary(expr, a, b);
+            };
+        }
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL:
+                return environment -> Values.isEqual(left.evaluate(environment), right.evaluate(environment));
+            case BANG_EQUAL:
+                return environment -> !Values.isEqual(left.evaluate(environment), right.evaluate(environment));
+            case IS:
+                return environment -> left.evaluate(environment) == right.evaluate(environment);
+            case PLUS:
+                return environment -> Values.add(expr, left.evaluate(environment), right.evaluate(environment));
+            default:
+                return environment -> Values.binary(expr, left.evaluate(environment), right.evaluate(environment));
+        }
+    }
+
+    @Override
+    public Node visitCallExpr(Expr.Call expr) {
+        Node[] arguments = new Node[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+
+        if (expr.callee instanceof Expr.Get get) {
+            Node object = compile(get.object);
+            return environment -> {
+                ChocoPyInstance receiver = Values.receiver(get, object.evaluate(environment));
+                Object member = get.methodIndex >= 0
+                        ? receiver.klass.method(get.methodIndex)
+                        : get.cache.lookup(receiver.klass, get.name.lexeme);
+                if (member instanceof ClosureFunction method) {
+                    checkArity(expr, method.arity(), arguments.length);
+                    Environment frame = method.newFrame();
+                    List<Stmt.Var> params = method.declaration.params;
+                    frame.values[params.get(0).slot] = receiver;
+                    for (int i = 0; i < arguments.length; i++) {
+                        frame.values[params.get(i + 1).slot] = arguments[i].evaluate(environment);
+                    }
+                    Object value = method.invoke(frame);
+                    return method.isInitializer ? receiver : value;
+                }
+                return call(expr, receiver.get(get.name, get.cache), arguments, environment);
+            };
+        }
+
+        Node callee = compile(expr.callee);
+        return environment -> call(expr, callee.evaluate(environment), arguments, environment);
+    }
+
+    private Object call(Expr.Call expr, Object callee, Node[] arguments, Environment environment) {
+        if (callee instanceof ClosureFunction function) {
+            checkArity(expr, function.arity(), arguments.length);
+            return function.invoke(frame(function, arguments, environment));
+        }
+
+        if (callee instanceof ChocoPyClass klass
+                && klass.findMethod("__init__") instanceof ClosureFunction initializer) {
+            checkArity(expr, initializer.arity(), arguments.length);
+            Object instance = klass.allocate();
+            Environment frame = initializer.newFrame();
+            List<Stmt.Var> params = initializer.declaration.params;
+            frame.values[params.get(0).slot] = instance;
+            for (int i = 0; i < arguments.length; i++) {
+                frame.values[params.get(i + 1).slot] = arguments[i].evaluate(environment);
+            }
+            initializer.invoke(frame);
+            return instance;
+        }
+
+        List<Object> values = new ArrayList<>(arguments.length);
+        for (Node argument : arguments) {
+            values.add(argument.evaluate(environment));
+        }
+        return interpreter.call(expr, callee, values);
+    }
+
+    private static Environment frame(ClosureFunction function, Node[] arguments, Environment environment) {
+        Environment frame = function.newFrame();
+        List<Stmt.Var> params = function.declaration.params;
+        for (int i = 0; i < arguments.length; i++) {
+            frame.values[params.get(i).slot] = arguments[i].evaluate(environment);
+        }
+        return frame;
+    }
+
+    private static void checkArity(Expr.Call expr, int arity, int arguments) {
+        if (arguments != arity) {
+            throw new RuntimeError(expr.paren,
+                    String.format("expected %d arguments, but got %d", arity, arguments),
+                    "TypeError");
+        }
+    }
+
+    @Override
+    public Node visitGetExpr(Expr.Get expr) {
+        Node object = compile(expr.object);
+        return environment -> Values.receiver(expr, object.evaluate(environment)).get(expr.name, expr.cache);
+    }
+
+    @Override
+    public Node visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Node visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return environment -> value;
+    }
+
+    @Override
+    public Node visitLogicalExpr(Expr.Logical expr) {
+        Node left = compile(expr.left);
+        Node right = compile(expr.right);
+
+        if (expr.operator.type == TokenType.OR) {
+            return environment -> {
+                Object value = left.evaluate(environment);
+                return Values.isTruthy(value) ? value : right.evaluate(environment);
+            };
+        }
+        return environment -> {
+            Object value = left.evaluate(environment);
+            return !Values.isTruthy(value) ? value : right.evaluate(environment);
+        };
+    }
+
+    @Override
+    public Node visitTernaryExpr(Expr.Ternary expr) {
+        BoolNode condition = condition(expr.condition);
+        Node onTrue = compile(expr.onTrue);
+        Node onFalse = compile(expr.onFalse);
+        return environment -> condition.test(environment)
+                ? onTrue.evaluate(environment) : onFalse.evaluate(environment);
+    }
+
+    @Override
+    public Node visitListingExpr(Expr.Listing expr) {
+        if (expr.elements == null) {
+            return environment -> {
+                ChocoPy.exitCode = 4;
+                throw new RuntimeError(expr.line, "operation on '<None>'", "RuntimeError");
+            };
+        }
+
+        Node[] elements = new Node[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = compile(expr.elements.get(i));
+        }
+        return environment -> {
+            List<Object> list = Values.list(expr.inferredType, elements.length);
+            for (Node element : elements) {
+                list.add(element.evaluate(environment));
+            }
+            return list;
+        };
+    }
+
+    @Override
+    public Node visitIndexExpr(Expr.Index expr) {
+        Node listing = compile(expr.listing);
+
+        if (expr.listing.inferredType instanceof ListValueType && isUnboxedInt(expr.id)) {
+            IntNode id = compileInt(expr.id);
+            return environment -> {
+                Object listObject = listing.evaluate(environment);
+                int index = id.evaluate(environment);
+                if (listObject instanceof List<?> list && index >= 0 && index < list.size()) {
+                    return list.get(index);
+                }
+                return Values.index(expr, listObject, index);
+            };
+        }
+
+        Node id = compile(expr.id);
+        IndexNode node = IndexNode.specialize(expr);
+        if (node == IndexNode.LIST) {
+            return environment -> {
+                Object listObject = listing.evaluate(environment);
+                Object idObject = id.evaluate(environment);
+                if (listObject instanceof List<?> list && idObject instanceof Integer index
+                        && index >= 0 && index < list.size()) {
+                    return list.get(index);
+                }
+                return Values.index(expr, listObject, idObject);
+            };
+        } else if (node == IndexNode.STR) {
+            return environment -> {
+                Object listObject = listing.evaluate(environment);
+                Object idObject = id.evaluate(environment);
+                if (listObject instanceof String str && idObject instanceof Integer index
+                        && index >= 0 && index < str.length()) {
+                    return Values.character(str.charAt(index));
+                }
+                return Values.index(expr, listObject, idObject);
+            };
+        }
+        return environment -> Values.index(expr, listing.evaluate(environment), id.evaluate(environment));
+    }
+
+    @Override
+    public Node visitListSetExpr(Expr.ListSet expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Node visitLenExpr(Expr.Len expr) {
+        IntNode len = compileInt(expr);
+        return environment -> len.evaluate(environment);
+    }
+
+    @Override
+    public Node visitInputExpr(Expr.Input expr) {
+        return environment -> interpreter.input();
+    }
+
+    @Override
+    public Node visitSetExpr(Expr.Set expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Node visitSelfExpr(Expr.Self expr) {
+        return load(expr.depth, expr.slot);
+    }
+
+    @Override
+    public Node visitUnaryExpr(Expr.Unary expr) {
+        if (isUnboxedInt(expr)) {
+            IntNode value = compileInt(expr);
+            return environment -> value.evaluate(environment);
+        }
+        if (isUnboxedBool(expr)) {
+            BoolNode value = condition(expr);
+            return environment -> value.test(environment);
+        }
+
+        Node right = compile(expr.right);
+        return environment -> Values.unary(expr, right.evaluate(environment));
+    }
+
+    @Override
+    public Node visitVariableExpr(Expr.Variable expr) {
+        return load(expr.depth, expr.slot);
+    }
+
+    @Override
+    public Node visitPrintExpr(Expr.Print expr) {
+        Node value = compile(expr.expression);
+        return environment -> {
+            System.out.println(Values.stringify(value.evaluate(environment)));
+            return null;
+        };
+    }
+
+    @Override
+    public Node visitMultiAssignExpr(Expr.MultiAssign multiAssign) {
+        Node value = compile(multiAssign.value);
+
+        List<Store> stores = new ArrayList<>();
+        for (Expr target : multiAssign.targets) {
+            if (target instanceof Expr.Assign expr) {
+                stores.add(store(expr.target.depth, expr.target.slot));
+            } else if (target instanceof Expr.Set expr) {
+                Node object = compile(expr.object);
+                stores.add((environment, v) ->
+                        Values.receiver(expr, object.evaluate(environment)).set(expr.name, v, expr.cache));
+            } else if (target instanceof Expr.ListSet expr) {
+                Node id = compile(expr.id);
+                Node listing = compile(expr.listing);
+                stores.add((environment, v) -> {
+                    Object idObject = id.evaluate(environment);
+                    Object listObject = listing.evaluate(environment);
+                    if (listObject instanceof List<?> && idObject instanceof Integer index
+                            && index >= 0 && index < ((List<?>) listObject).size()) {
+                        @SuppressWarnings("unchecked")
+                        List<Object> list = (List<Object>) listObject;
+                        list.set(index, v);
+                    } else {
+                        Values.setIndex(expr, listObject, idObject, v);
+                    }
+                });
+            }
+        }
+
+        if (stores.size() == 1) {
+            Store store = stores.get(0);
+            return environment -> {
+                Object v = value.evaluate(environment);
+                store.store(environment, v);
+                return v;
+            };
+        }
+        Store[] targets = stores.toArray(new Store[0]);
+        return environment -> {
+            Object v = value.evaluate(environment);
+            for (Store store : targets) {
+                store.store(environment, v);
+            }
+            return v;
+        };
+    }
+
+    @Override
+    public Action visitBlockStmt(Stmt.Block stmt) {
+        return compileBlock(stmt.statements);
+    }
+
+    @Override
+    public Action visitClassStmt(Stmt.Class stmt) {
+        Environment globals = this.globals;
+        Map<String, Stmt.Function> methods = new LinkedHashMap<>();
+        Map<String, Action> bodies = new LinkedHashMap<>();
+        Map<String, Node> attributes = new LinkedHashMap<>();
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Function function) {
+                methods.put(function.name.lexeme, function);
+                bodies.put(function.name.lexeme, compileBlock(function.body));
+            } else if (member instanceof Stmt.Var var) {
+                attributes.put(var.name.lexeme, compile(var.initializer));
+            }
+        }
+
+        return environment -> {
+            Object superclass = null;
+            if (stmt.superclass != null) {
+                superclass = globals.get(stmt.superclassSlot);
+                if (!(superclass instanceof ChocoPyClass)) {
+                    throw new RuntimeError(stmt.superclass,
+                            "superclass must be a class", "TypeError");
+                }
+            }
+
+            Map<String, ChocoPyCallable> functions = new LinkedHashMap<>();
+            for (Map.Entry<String, Stmt.Function> method : methods.entrySet()) {
+                functions.put(method.getKey(), new ClosureFunction(method.getValue(), environment,
+                        bodies.get(method.getKey()), method.getKey().equals("__init__")));
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (Map.Entry<String, Node> attribute : attributes.entrySet()) {
+                values.put(attribute.getKey(), attribute.getValue().evaluate(environment));
+            }
+
+            environment.define(stmt.slot, new ChocoPyClass(stmt.name.lexeme, (ChocoPyClass) superclass,
+                    functions, values, stmt.methodTable));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitExpressionStmt(Stmt.Expression stmt) {
+        Node expression = compile(stmt.expression);
+        return environment -> {
+            expression.evaluate(environment);
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitFunctionStmt(Stmt.Function stmt) {
+        Action body = compileBlock(stmt.body);
+        return environment -> {
+            environment.define(stmt.slot, new ClosureFunction(stmt, environment, body, false));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitIfStmt(Stmt.If stmt) {
+        BoolNode condition = condition(stmt.condition);
+        Action thenBranch = compile(stmt.thenBranch);
+        Action elseBranch = stmt.elseBranch != null ? compile(stmt.elseBranch) : PASS;
+        return environment -> condition.test(environment)
+                ? thenBranch.execute(environment) : elseBranch.execute(environment);
+    }
+
+    @Override
+    public Action visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return environment -> null;
+        return compile(stmt.value)::evaluate;
+    }
+
+    @Override
+    public Action visitVarStmt(Stmt.Var stmt) {
+        Node initializer = stmt.initializer != null ? compile(stmt.initializer) : environment -> null;
+        return environment -> {
+            environment.define(stmt.slot, initializer.evaluate(environment));
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitWhileStmt(Stmt.While stmt) {
+        BoolNode condition = condition(stmt.condition);
+        Action body = compile(stmt.body);
+        return environment -> {
+            while (condition.test(environment)) {
+                Object completion = body.execute(environment);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitForStmt(Stmt.For stmt) {
+        Node iterable = compile(stmt.iterable);
+        Store id = store(stmt.id.depth, stmt.id.slot);
+        Action body = compile(stmt.body);
+        return environment -> {
+            Object iterableObject = iterable.evaluate(environment);
+
+            Values.checkIterable(stmt, iterableObject);
+
+            if (iterableObject instanceof List<?> list) {
+                for (Object value : list) {
+                    id.store(environment, value);
+                    Object completion = body.execute(environment);
+                    if (completion != NORMAL) return completion;
+                }
+            } else if (iterableObject instanceof String str) {
+                for (int i = 0; i < str.length(); i++) {
+                    id.store(environment, Values.character(str.charAt(i)));
+                    Object completion = body.execute(environment);
+                    if (completion != NORMAL) return completion;
+                }
+            }
+            return NORMAL;
+        };
+    }
+
+    @Override
+    public Action visitPassStmt(Stmt.Pass stmt) {
+        return PASS;
+    }
+
+    @Override
+    public Action visitGlobalStmt(Stmt.Global stmt) {
+        return PASS;
+    }
+
+    @Override
+    public Action visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return PASS;
+    }
+}
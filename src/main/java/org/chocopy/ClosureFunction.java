@@ -0,0 +1,56 @@
+package org.chocopy;
+
+import java.util.List;
+
+/**
+ * A function or method at runtime in the closure engine: a declaration whose
+ * body the {@link ClosureCompiler} already turned into a tree of lambdas, and
+ * the environment it was declared in.
+ */
+class ClosureFunction implements ChocoPyCallable {
+    final Stmt.Function declaration;
+    final boolean isInitializer;
+    private final Environment closure;
+    private final ClosureCompiler.Action body;
+
+    ClosureFunction(Stmt.Function declaration, Environment closure,
+                    ClosureCompiler.Action body, boolean isInitializer) {
+        this.declaration = declaration;
+        this.closure = closure;
+        this.body = body;
+        this.isInitializer = isInitializer;
+    }
+
+    @Override
+    public int arity() {
+        if (declaration.params.size() > 0 && declaration.params.get(0).name.lexeme.equals("self")) {
+            return declaration.params.size() - 1;
+        } else {
+            return declaration.params.size();
+        }
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Environment frame = newFrame();
+        for (int i = 0; i < arguments.size(); i++) {
+            frame.values[declaration.params.get(i).slot] = arguments.get(i);
+        }
+        return invoke(frame);
+    }
+
+    Environment newFrame() {
+        return new Environment(closure, declaration.frameSize);
+    }
+
+    /** Runs the body in a frame that already holds the arguments. */
+    Object invoke(Environment frame) {
+        Object value = body.execute(frame);
+        return value == ClosureCompiler.NORMAL ? null : value;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name.lexeme + ">";
+    }
+}
@@ -0,0 +1,21 @@
+package org.chocopy;
+
+import java.util.Map;
+
+class CompiledClass {
+    final Stmt.Class declaration;
+    final Map<String, CompiledFunction> methods;
+    final Map<String, Object> attributes;
+
+    CompiledClass(Stmt.Class declaration, Map<String, CompiledFunction> methods,
+                  Map<String, Object> attributes) {
+        this.declaration = declaration;
+        this.methods = methods;
+        this.attributes = attributes;
+    }
+
+    @Override
+    public String toString() {
+        return "<class " + declaration.name.lexeme + ">";
+    }
+}
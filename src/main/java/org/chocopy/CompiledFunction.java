@@ -0,0 +1,27 @@
+package org.chocopy;
+
+class CompiledFunction {
+    final String name;
+    final Chunk chunk;
+    final int[] paramSlots;
+    final int arity;
+    final int frameSize;
+    final int maxStack;
+    final boolean isInitializer;
+
+    CompiledFunction(String name, Chunk chunk, int[] paramSlots, int arity, int frameSize, int maxStack,
+                     boolean isInitializer) {
+        this.name = name;
+        this.chunk = chunk;
+        this.paramSlots = paramSlots;
+        this.arity = arity;
+        this.frameSize = frameSize;
+        this.maxStack = maxStack;
+        this.isInitializer = isInitializer;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
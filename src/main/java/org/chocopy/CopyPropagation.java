@@ -0,0 +1,45 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+
+/**
+ * Replaces copies, and phis that merge a single value with themselves, by the
+ * value they copy. The builder emits a copy for every assignment to a local
+ * and leaves the phis it placed at loop headers for variables the loop never
+ * assigns, so this is what lets the other passes see that two uses read the
+ * same value.
+ */
+class CopyPropagation implements IrPass {
+
+    @Override
+    public boolean run(Ir.Function function) {
+        boolean changed = false;
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Ir.Block block : function.blocks) {
+                for (Ir.Instr instr : new ArrayList<>(block.instructions)) {
+                    Ir.Instr source = instr.op == Ir.Op.COPY ? instr.operand(0)
+                            : instr.op == Ir.Op.PHI ? trivialPhi(instr) : null;
+                    if (source == null) continue;
+
+                    function.replaceUses(instr, source);
+                    block.instructions.remove(instr);
+                    progress = changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** The only value a phi merges besides itself, or null if it merges several. */
+    private static Ir.Instr trivialPhi(Ir.Instr phi) {
+        Ir.Instr value = null;
+        for (Ir.Instr operand : phi.operands) {
+            if (operand == phi || operand == value) continue;
+            if (value != null) return null;
+            value = operand;
+        }
+        return value;
+    }
+}
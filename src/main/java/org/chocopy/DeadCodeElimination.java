@@ -0,0 +1,149 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes code whose effect cannot be observed: branches on a constant become
+ * jumps, blocks that can no longer be reached are dropped, a block that is the
+ * only successor of its only predecessor is merged into it, and instructions
+ * whose values are unused go if running them has no side effect and cannot
+ * fail. Arithmetic is only removed when its operands are known to be ints,
+ * since an int-typed None makes it raise an error.
+ */
+class DeadCodeElimination implements IrPass {
+
+    @Override
+    public boolean run(Ir.Function function) {
+        boolean changed = foldBranches(function);
+        changed |= removeUnreachable(function);
+        changed |= mergeBlocks(function);
+        changed |= removeUnused(function);
+        return changed;
+    }
+
+    private static boolean foldBranches(Ir.Function function) {
+        boolean changed = false;
+        for (Ir.Block block : function.blocks) {
+            Ir.Instr branch = block.terminator();
+            if (branch == null || branch.op != Ir.Op.BRANCH || branch.operand(0).op != Ir.Op.CONST) continue;
+
+            boolean taken = Values.isTruthy(branch.operand(0).constant);
+            Ir.Block target = branch.targets.get(taken ? 0 : 1);
+            branch.targets.get(taken ? 1 : 0).removePredecessor(block);
+
+            Ir.Instr jump = function.newInstr(Ir.Op.JUMP, null);
+            jump.block = block;
+            jump.targets.add(target);
+            block.instructions.set(block.instructions.size() - 1, jump);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean removeUnreachable(Ir.Function function) {
+        Set<Ir.Block> reachable = new HashSet<>(function.reversePostorder());
+        List<Ir.Block> unreachable = new ArrayList<>();
+        for (Ir.Block block : function.blocks) {
+            if (reachable.contains(block)) continue;
+            unreachable.add(block);
+            for (Ir.Block successor : block.successors()) successor.removePredecessor(block);
+        }
+        function.blocks.removeAll(unreachable);
+        return !unreachable.isEmpty();
+    }
+
+    private static boolean mergeBlocks(Ir.Function function) {
+        boolean changed = false;
+        for (int i = 0; i < function.blocks.size(); i++) {
+            Ir.Block block = function.blocks.get(i);
+            Ir.Instr jump = block.terminator();
+            while (jump != null && jump.op == Ir.Op.JUMP) {
+                Ir.Block next = jump.targets.get(0);
+                if (next == block || next.predecessors.size() != 1) break;
+
+                block.instructions.remove(block.instructions.size() - 1);
+                for (Ir.Instr instr : next.instructions) {
+                    if (instr.op == Ir.Op.PHI) {
+                        function.replaceUses(instr, instr.operand(0));
+                        continue;
+                    }
+                    instr.block = block;
+                    block.instructions.add(instr);
+                }
+                for (Ir.Block successor : next.successors()) {
+                    successor.predecessors.replaceAll(predecessor -> predecessor == next ? block : predecessor);
+                }
+                function.blocks.remove(next);
+                jump = block.terminator();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removeUnused(Ir.Function function) {
+        Map<Ir.Instr, Integer> uses = function.useCounts();
+        boolean changed = false;
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Ir.Block block : function.blocks) {
+                for (int i = block.instructions.size() - 1; i >= 0; i--) {
+                    Ir.Instr instr = block.instructions.get(i);
+                    if (uses.getOrDefault(instr, 0) > 0 || !removable(instr)) continue;
+
+                    block.instructions.remove(i);
+                    for (Ir.Instr operand : instr.operands) uses.merge(operand, -1, Integer::sum);
+                    progress = changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean removable(Ir.Instr instr) {
+        return switch (instr.op) {
+            case CONST, PARAM, PHI, COPY, LOAD, EQ, NE, IS, LIST, FUNCTION, HAS_NEXT -> true;
+            case ADD, SUB, MUL, LT, LE, GT, GE -> isInt(instr.operand(0)) && isInt(instr.operand(1));
+            case DIV, MOD -> isInt(instr.operand(0)) && instr.operand(1).constant instanceof Integer divisor
+                    && divisor != 0;
+            case NEG -> isInt(instr.operand(0));
+            case NOT -> isBool(instr.operand(0));
+            default -> false;
+        };
+    }
+
+    /** Whether the value is always an int, never None. */
+    static boolean isInt(Ir.Instr value) {
+        return isInt(value, new HashSet<>());
+    }
+
+    private static boolean isInt(Ir.Instr value, Set<Ir.Instr> visiting) {
+        return switch (value.op) {
+            case CONST -> value.constant instanceof Integer;
+            case SUB, MUL, DIV, MOD, NEG, LEN -> true;
+            case ADD -> value.type instanceof IntType;
+            case PHI, COPY -> {
+                if (!visiting.add(value)) yield true;
+                for (Ir.Instr operand : value.operands) {
+                    if (!isInt(operand, visiting)) yield false;
+                }
+                yield true;
+            }
+            default -> false;
+        };
+    }
+
+    /** Whether the value is always a bool, never None. */
+    static boolean isBool(Ir.Instr value) {
+        return switch (value.op) {
+            case CONST -> value.constant instanceof Boolean;
+            case LT, LE, GT, GE, EQ, NE, IS, NOT, HAS_NEXT -> true;
+            default -> false;
+        };
+    }
+}
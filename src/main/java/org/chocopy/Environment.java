@@ -1,41 +1,57 @@
 package org.chocopy;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class Environment {
+    /** The depth of a variable that lives in the global frame. */
+    static final int GLOBAL = -1;
+    /** The slot of a name the resolver could not find in any frame. */
+    static final int UNRESOLVED = -2;
+
     final Environment enclosing;
-    final Map<String, Object> values = new HashMap<>();
-    
-    enum Scope {
-        GLOBAL,
-        NONLOCAL
-    }
+    Object[] values;
 
     Environment() {
-        enclosing = null;
+        this(null, 16);
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.values = new Object[size];
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+    Object get(int slot) {
+        if (slot < 0 || slot >= values.length) return null;
+        return values[slot];
+    }
+
+    Object getAt(int depth, int slot) {
+        return ancestor(depth).values[slot];
+    }
 
-        throw new RuntimeError(name,
-                "Undefined variable '" + name.lexeme + "'.");
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).values[slot] = value;
     }
 
-    void define(String name, Object value) {
-        values.put(name, value);
+    void define(int slot, Object value) {
+        if (slot < 0) return;
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+        }
+        values[slot] = value;
+    }
+
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
+        }
+        return environment;
     }
 
     @Override
     public String toString() {
-        String result = values.toString();
+        String result = Arrays.toString(values);
         if (enclosing != null) {
             result += " -> " + enclosing;
         }
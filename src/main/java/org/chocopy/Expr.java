@@ -60,6 +60,7 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        BinaryNode node;
     }
 
     static class Call extends Expr {
@@ -92,6 +93,8 @@ abstract class Expr {
 
         final Expr object;
         final Token name;
+        final InlineCache cache = new InlineCache();
+        int methodIndex = -1;
     }
 
     static class Grouping extends Expr {
@@ -180,6 +183,8 @@ abstract class Expr {
 
         final Expr listing;
         final Expr id;
+        IndexNode node;
+        Fusion fusion;
     }
 
     static class ListSet extends Expr {
@@ -240,6 +245,7 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        final InlineCache cache = new InlineCache();
     }
 
     static class Self extends Expr {
@@ -253,6 +259,8 @@ abstract class Expr {
         }
 
         final Token keyword;
+        int depth = Environment.GLOBAL;
+        int slot = Environment.UNRESOLVED;
     }
 
     static class Unary extends Expr {
@@ -281,6 +289,8 @@ abstract class Expr {
         }
 
         final Token name;
+        int depth = Environment.GLOBAL;
+        int slot = Environment.UNRESOLVED;
     }
 
     static class Print extends Expr {
@@ -309,6 +319,7 @@ abstract class Expr {
 
         List<Expr> targets;
         final Expr value;
+        Fusion fusion;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,137 @@
+package org.chocopy;
+
+/**
+ * Superinstructions for the idioms that dominate ChocoPy loops. The
+ * {@link Interpreter} matches a statement against them on its first execution
+ * and caches the result on the node, like a {@link BinaryNode}; from then on
+ * the whole shape runs in one step instead of visiting each of its nodes.
+ * Fused forms guard on the runtime values and turn the node back to
+ * {@link #NONE} when the guard fails, so it takes the generic path for good.
+ */
+enum Fusion {
+    /** The generic path. */
+    NONE,
+    /** {@code v = v + k} or {@code v = v - k} on an int variable. */
+    INCREMENT,
+    /** {@code while v < bound:} on ints. */
+    WHILE_LESS,
+    /** {@code if a % b == 0:} on ints. */
+    IF_DIVISIBLE,
+    /** {@code xs[i]} inside {@code while i < len(xs):}, read straight from the two variables. */
+    LOOP_INDEX;
+
+    static Fusion match(Expr.MultiAssign expr) {
+        if (expr.targets.size() == 1
+                && expr.targets.get(0) instanceof Expr.Assign assign
+                && assign.target.slot != Environment.UNRESOLVED
+                && expr.value instanceof Expr.Binary binary
+                && (binary.operator.type == TokenType.PLUS || binary.operator.type == TokenType.MINUS)
+                && sameVariable(binary.left, assign.target)
+                && binary.right instanceof Expr.Literal literal && literal.value instanceof Integer
+                && BinaryNode.specialize(binary) instanceof BinaryNode.IntArithmetic) {
+            return INCREMENT;
+        }
+        return NONE;
+    }
+
+    /**
+     * Matches {@code while v < bound:}. When the bound is {@code len(xs)}, the
+     * reads of {@code xs[v]} in the body are fused as well.
+     */
+    static Fusion match(Stmt.While stmt) {
+        if (!(stmt.condition instanceof Expr.Binary condition)
+                || condition.operator.type != TokenType.LESS
+                || !(condition.left instanceof Expr.Variable variable)
+                || !(BinaryNode.specialize(condition) instanceof BinaryNode.IntComparison)) {
+            return NONE;
+        }
+
+        if (condition.right instanceof Expr.Len len && len.expression instanceof Expr.Variable list) {
+            markIndexes(stmt.body, list, variable);
+        }
+        return WHILE_LESS;
+    }
+
+    static Fusion match(Stmt.If stmt) {
+        if (stmt.condition instanceof Expr.Binary condition
+                && condition.operator.type == TokenType.EQUAL_EQUAL
+                && condition.left instanceof Expr.Binary modulo
+                && modulo.operator.type == TokenType.PERCENT
+                && condition.right instanceof Expr.Literal literal && Integer.valueOf(0).equals(literal.value)
+                && BinaryNode.specialize(condition) instanceof BinaryNode.IntComparison
+                && BinaryNode.specialize(modulo) instanceof BinaryNode.IntArithmetic) {
+            return IF_DIVISIBLE;
+        }
+        return NONE;
+    }
+
+    private static boolean sameVariable(Expr expr, Expr.Variable variable) {
+        return expr instanceof Expr.Variable other && other.depth == variable.depth && other.slot == variable.slot;
+    }
+
+    private static void markIndexes(Stmt stmt, Expr.Variable list, Expr.Variable id) {
+        if (stmt instanceof Stmt.Block block) {
+            for (Stmt statement : block.statements) markIndexes(statement, list, id);
+        } else if (stmt instanceof Stmt.Expression expression) {
+            markIndexes(expression.expression, list, id);
+        } else if (stmt instanceof Stmt.If branch) {
+            markIndexes(branch.condition, list, id);
+            markIndexes(branch.thenBranch, list, id);
+            if (branch.elseBranch != null) markIndexes(branch.elseBranch, list, id);
+        } else if (stmt instanceof Stmt.While loop) {
+            markIndexes(loop.condition, list, id);
+            markIndexes(loop.body, list, id);
+        } else if (stmt instanceof Stmt.For loop) {
+            markIndexes(loop.iterable, list, id);
+            markIndexes(loop.body, list, id);
+        } else if (stmt instanceof Stmt.Return result && result.value != null) {
+            markIndexes(result.value, list, id);
+        }
+    }
+
+    private static void markIndexes(Expr expr, Expr.Variable list, Expr.Variable id) {
+        if (expr instanceof Expr.Index index) {
+            if (sameVariable(index.listing, list) && sameVariable(index.id, id)) {
+                index.fusion = LOOP_INDEX;
+            } else {
+                markIndexes(index.listing, list, id);
+                markIndexes(index.id, list, id);
+            }
+        } else if (expr instanceof Expr.Binary binary) {
+            markIndexes(binary.left, list, id);
+            markIndexes(binary.right, list, id);
+        } else if (expr instanceof Expr.Logical logical) {
+            markIndexes(logical.left, list, id);
+            markIndexes(logical.right, list, id);
+        } else if (expr instanceof Expr.Unary unary) {
+            markIndexes(unary.right, list, id);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            markIndexes(grouping.expression, list, id);
+        } else if (expr instanceof Expr.Ternary ternary) {
+            markIndexes(ternary.condition, list, id);
+            markIndexes(ternary.onTrue, list, id);
+            markIndexes(ternary.onFalse, list, id);
+        } else if (expr instanceof Expr.Call call) {
+            markIndexes(call.callee, list, id);
+            for (Expr argument : call.arguments) markIndexes(argument, list, id);
+        } else if (expr instanceof Expr.Get get) {
+            markIndexes(get.object, list, id);
+        } else if (expr instanceof Expr.Listing listing && listing.elements != null) {
+            for (Expr element : listing.elements) markIndexes(element, list, id);
+        } else if (expr instanceof Expr.Len len) {
+            markIndexes(len.expression, list, id);
+        } else if (expr instanceof Expr.Print print) {
+            markIndexes(print.expression, list, id);
+        } else if (expr instanceof Expr.MultiAssign assign) {
+            markIndexes(assign.value, list, id);
+            for (Expr target : assign.targets) {
+                if (target instanceof Expr.Set set) {
+                    markIndexes(set.object, list, id);
+                } else if (target instanceof Expr.ListSet listSet) {
+                    markIndexes(listSet.listing, list, id);
+                    markIndexes(listSet.id, list, id);
+                }
+            }
+        }
+    }
+}
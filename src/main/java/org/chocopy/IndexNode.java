@@ -0,0 +1,51 @@
+package org.chocopy;
+
+import java.util.List;
+
+/**
+ * Specialized implementation of an index expression, installed on an
+ * {@link Expr.Index} on first execution like {@link BinaryNode}. The list and
+ * string forms handle in-range accesses directly and leave every other case,
+ * including the errors, to {@link Values#index}.
+ */
+abstract class IndexNode {
+
+    abstract Object execute(Expr.Index expr, Object listObject, Object idObject);
+
+    static final IndexNode GENERIC = new IndexNode() {
+        @Override
+        Object execute(Expr.Index expr, Object listObject, Object idObject) {
+            return Values.index(expr, listObject, idObject);
+        }
+    };
+
+    static final IndexNode LIST = new IndexNode() {
+        @Override
+        Object execute(Expr.Index expr, Object listObject, Object idObject) {
+            if (listObject instanceof List<?> list && idObject instanceof Integer id) {
+                if (id >= 0 && id < list.size()) return list.get(id);
+                return Values.index(expr, listObject, idObject);
+            }
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, listObject, idObject);
+        }
+    };
+
+    static final IndexNode STR = new IndexNode() {
+        @Override
+        Object execute(Expr.Index expr, Object listObject, Object idObject) {
+            if (listObject instanceof CharSequence str && idObject instanceof Integer id) {
+                if (id >= 0 && id < str.length()) return Values.character(str.charAt(id));
+                return Values.index(expr, listObject, idObject);
+            }
+            expr.node = GENERIC;
+            return GENERIC.execute(expr, listObject, idObject);
+        }
+    };
+
+    static IndexNode specialize(Expr.Index expr) {
+        if (expr.listing.inferredType instanceof ListValueType) return LIST;
+        if (expr.listing.inferredType instanceof StrType) return STR;
+        return GENERIC;
+    }
+}
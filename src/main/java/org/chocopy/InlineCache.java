@@ -0,0 +1,35 @@
+package org.chocopy;
+
+/**
+ * Polymorphic inline cache of one attribute access site. Remembers, for up to
+ * {@link #MAX_ENTRIES} receiver classes, which field slot or method the name
+ * resolved to, so repeated accesses skip the walk up the class hierarchy.
+ * Sites that see more classes than that keep falling back to a full lookup.
+ */
+class InlineCache {
+    static final int MAX_ENTRIES = 4;
+
+    private final ChocoPyClass[] classes = new ChocoPyClass[MAX_ENTRIES];
+    private final Object[] members = new Object[MAX_ENTRIES];
+    private int size = 0;
+
+    /**
+     * Returns what {@code name} denotes on instances of {@code klass}: the
+     * field's slot as an Integer, the method, or null if it denotes neither.
+     */
+    Object lookup(ChocoPyClass klass, String name) {
+        for (int i = 0; i < size; i++) {
+            if (classes[i] == klass) return members[i];
+        }
+
+        int slot = klass.findField(name);
+        Object member = slot >= 0 ? (Object) slot : klass.findMethod(name);
+
+        if (member != null && size < MAX_ENTRIES) {
+            classes[size] = klass;
+            members[size] = member;
+            size++;
+        }
+        return member;
+    }
+}
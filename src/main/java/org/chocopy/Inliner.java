@@ -0,0 +1,292 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Replaces calls to small functions with their bodies, so that tiny helpers
+ * no longer pay for a frame, an argument list and a return on every call.
+ * <p>
+ * A function whose body is a single {@code return} is inlined wherever it is
+ * called. One that returns nothing and evaluates a single expression, such as
+ * a setter, is inlined where it is called as a statement. Candidates are
+ * functions declared at the top level, whose names can never be reassigned,
+ * and methods called on {@code self} that no subclass overrides. Calls on
+ * other receivers stay, because they report a None receiver at the call.
+ * <p>
+ * The body may only use its parameters and globals, and may have at most
+ * {@link #MAX_SIZE} nodes. Functions that can reach themselves through calls
+ * are never inlined, so recursion runs into the same limits as before.
+ * Arguments are substituted for the parameters only when that evaluates them
+ * exactly once and in the same order as the call would.
+ */
+class Inliner extends Optimizer {
+    static final int MAX_SIZE = 16;
+
+    private final Map<Integer, Stmt.Function> functions = new HashMap<>();
+    private final Map<String, Stmt.Class> classes = new HashMap<>();
+    private final Map<Stmt.Function, Boolean> recursive = new HashMap<>();
+    private final Set<Stmt.Function> inlining = new HashSet<>();
+
+    @Override
+    List<Stmt> optimize(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function function) functions.put(function.slot, function);
+            if (statement instanceof Stmt.Class klass) classes.put(klass.name.lexeme, klass);
+        }
+        return super.optimize(statements);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr.Call call = (Expr.Call) super.visitCallExpr(expr);
+        Stmt.Function function = target(call);
+        if (function == null || !(body(function) instanceof Stmt.Return body) || body.value == null) return call;
+        if (!body.value.inferredType.equals(call.inferredType)) return call;
+
+        Expr inlined = inline(call, function, body.value);
+        return inlined != null ? inlined : call;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Stmt result = super.visitExpressionStmt(stmt);
+        if (!(result instanceof Stmt.Expression statement && statement.expression instanceof Expr.Call call)) {
+            return result;
+        }
+        Stmt.Function function = target(call);
+        if (function == null || !(function.returnType instanceof NoneType)
+                || !(body(function) instanceof Stmt.Expression body)) return result;
+
+        Expr inlined = inline(call, function, body.expression);
+        if (inlined == null) return result;
+        if (inlined instanceof Expr.Literal) return null;
+        return copy(stmt, new Stmt.Expression(inlined));
+    }
+
+    /** The function or method a call always runs, if it may be inlined. */
+    private Stmt.Function target(Expr.Call call) {
+        Stmt.Function function = null;
+        if (call.callee instanceof Expr.Variable variable && variable.depth == Environment.GLOBAL) {
+            function = functions.get(variable.slot);
+        } else if (call.callee instanceof Expr.Get get && get.object instanceof Expr.Self
+                && get.object.inferredType instanceof ClassValueType type) {
+            String className = type.getClassName();
+            if (!overridden(className, get.name.lexeme)) function = method(className, get.name.lexeme);
+        }
+
+        if (function == null || inlining.contains(function)) return null;
+        return recursive.computeIfAbsent(function, this::reachesItself) ? null : function;
+    }
+
+    /** The only statement of a function body, not counting global declarations. */
+    private static Stmt body(Stmt.Function function) {
+        Stmt only = null;
+        for (Stmt statement : function.body) {
+            if (statement instanceof Stmt.Global) continue;
+            if (only != null) return null;
+            only = statement;
+        }
+        return only;
+    }
+
+    private Expr inline(Expr.Call call, Stmt.Function function, Expr body) {
+        boolean isMethod = call.callee instanceof Expr.Get;
+        List<Stmt.Var> params = isMethod ? function.params.subList(1, function.params.size()) : function.params;
+        if (params.size() != call.arguments.size()) return null;
+
+        Map<Integer, Expr> arguments = new HashMap<>();
+        for (int i = 0; i < params.size(); i++) {
+            Expr argument = call.arguments.get(i);
+            if (!params.get(i).type.equals(argument.inferredType)) return null;
+            arguments.put(params.get(i).slot, argument);
+        }
+        if (!fits(body, arguments.keySet())) return null;
+        if (!readsOnly(call.arguments, body) && !inOrder(body, params)) return null;
+
+        Expr receiver = isMethod ? ((Expr.Get) call.callee).object : null;
+        Expr inlined = new Optimizer() {
+            @Override
+            public Expr visitVariableExpr(Expr.Variable expr) {
+                return expr.depth == 0 ? arguments.get(expr.slot) : expr;
+            }
+
+            @Override
+            public Expr visitSelfExpr(Expr.Self expr) {
+                return receiver;
+            }
+        }.optimize(body);
+
+        inlining.add(function);
+        try {
+            return optimize(inlined);
+        } finally {
+            inlining.remove(function);
+        }
+    }
+
+    /** Whether the body is small and uses no variables but its parameters and globals. */
+    private static boolean fits(Expr body, Set<Integer> params) {
+        int[] size = {0};
+        boolean[] fits = {true};
+        walkExpr(body, expr -> {
+            size[0]++;
+            if (expr instanceof Expr.Variable variable && variable.depth != Environment.GLOBAL) {
+                fits[0] &= variable.depth == 0 && params.contains(variable.slot);
+            } else if (expr instanceof Expr.Assign assign) {
+                fits[0] &= assign.target.depth == Environment.GLOBAL;
+            }
+        });
+        return fits[0] && size[0] <= MAX_SIZE;
+    }
+
+    /**
+     * Whether every argument is a literal or a variable that the body cannot
+     * change, so it reads the same value however often and late it is used.
+     */
+    private static boolean readsOnly(List<Expr> arguments, Expr body) {
+        boolean[] writes = {false};
+        walkExpr(body, expr -> writes[0] |= expr instanceof Expr.Call || expr instanceof Expr.Assign);
+
+        for (Expr argument : arguments) {
+            if (argument instanceof Expr.Literal || argument instanceof Expr.Self) continue;
+            if (argument instanceof Expr.Variable && !writes[0]) continue;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether the body uses each parameter once, unconditionally and in order,
+     * and evaluates nothing but constants before the last of them.
+     */
+    private boolean inOrder(Expr body, List<Stmt.Var> params) {
+        int[] uses = {0};
+        walkExpr(body, expr -> {
+            if (expr instanceof Expr.Variable variable && variable.depth == 0) uses[0]++;
+        });
+        if (uses[0] != params.size()) return false;
+
+        List<Expr> order = new ArrayList<>();
+        if (!evaluationOrder(body, order)) return false;
+
+        int next = 0;
+        for (Expr expr : order) {
+            if (next == params.size()) break;
+            if (expr instanceof Expr.Variable variable && variable.depth == 0) {
+                if (variable.slot != params.get(next++).slot) return false;
+            } else if (!inert(expr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether evaluating the expression can neither fail nor depend on the arguments. */
+    private boolean inert(Expr expr) {
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Self) return true;
+        return expr instanceof Expr.Variable variable && variable.depth == Environment.GLOBAL
+                && (variable.slot < Interpreter.BUILTINS.size() || functions.containsKey(variable.slot)
+                        || classes.containsKey(variable.name.lexeme));
+    }
+
+    /**
+     * Lists the nodes of an expression in the order their evaluation
+     * finishes. Fails if a parameter is used where it might not be evaluated.
+     */
+    private static boolean evaluationOrder(Expr expr, List<Expr> order) {
+        List<Expr> children = children(expr);
+        boolean branches = expr instanceof Expr.Logical || expr instanceof Expr.Ternary;
+        for (int i = 0; i < children.size(); i++) {
+            if (branches && i > 0 && usesParameters(children.get(i))) return false;
+            if (!evaluationOrder(children.get(i), order)) return false;
+        }
+        order.add(expr);
+        return true;
+    }
+
+    private static boolean usesParameters(Expr expr) {
+        boolean[] uses = {false};
+        walkExpr(expr, e -> uses[0] |= e instanceof Expr.Variable variable && variable.depth == 0);
+        return uses[0];
+    }
+
+    private Stmt.Function method(String className, String name) {
+        for (Stmt.Class klass = classes.get(className); klass != null; klass = superclass(klass)) {
+            for (Stmt member : klass.members) {
+                if (member instanceof Stmt.Function method && method.name.lexeme.equals(name)) return method;
+            }
+        }
+        return null;
+    }
+
+    /** Whether a subclass of the class declares its own version of the method. */
+    private boolean overridden(String className, String name) {
+        for (Stmt.Class klass : classes.values()) {
+            for (Stmt.Class parent = superclass(klass); parent != null; parent = superclass(parent)) {
+                if (!parent.name.lexeme.equals(className)) continue;
+                for (Stmt member : klass.members) {
+                    if (member instanceof Stmt.Function method && method.name.lexeme.equals(name)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Stmt.Class superclass(Stmt.Class klass) {
+        return klass.superclass != null ? classes.get(klass.superclass.lexeme) : null;
+    }
+
+    private boolean reachesItself(Stmt.Function function) {
+        Set<Stmt.Function> visited = new HashSet<>();
+        List<Stmt.Function> pending = new ArrayList<>(callees(function));
+        while (!pending.isEmpty()) {
+            Stmt.Function next = pending.remove(pending.size() - 1);
+            if (next == function) return true;
+            if (visited.add(next)) pending.addAll(callees(next));
+        }
+        return false;
+    }
+
+    /**
+     * The functions and methods a function may call, including calls made by
+     * the functions nested in it. A method call may reach any method with that
+     * name, and creating an object runs its {@code __init__}.
+     */
+    private Set<Stmt.Function> callees(Stmt.Function function) {
+        Set<Stmt.Function> callees = new HashSet<>();
+        Consumer<Expr> scan = expr -> walkExpr(expr, e -> {
+            if (!(e instanceof Expr.Call call)) return;
+            if (call.callee instanceof Expr.Variable variable && variable.depth == Environment.GLOBAL) {
+                if (functions.containsKey(variable.slot)) callees.add(functions.get(variable.slot));
+                Stmt.Function initializer = method(variable.name.lexeme, "__init__");
+                if (initializer != null) callees.add(initializer);
+            } else if (call.callee instanceof Expr.Get get) {
+                for (Stmt.Class klass : classes.values()) {
+                    for (Stmt member : klass.members) {
+                        if (member instanceof Stmt.Function method && method.name.lexeme.equals(get.name.lexeme)) {
+                            callees.add(method);
+                        }
+                    }
+                }
+            }
+        });
+        scanFunction(function, scan);
+        return callees;
+    }
+
+    private static void scanFunction(Stmt.Function function, Consumer<Expr> scan) {
+        for (Stmt statement : function.body) {
+            if (statement instanceof Stmt.Function nested) {
+                scanFunction(nested, scan);
+            } else {
+                walkStatement(statement, scan);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.chocopy;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A ChocoPy {@code [int]} list stored in a growable {@code int[]}: four bytes
+ * per element instead of a reference to a boxed {@link Integer}. Storing
+ * anything else, such as the None returned by an int function that fell off
+ * its end, moves the list to boxed storage for the rest of its life.
+ */
+final class IntList extends AbstractList<Object> implements RandomAccess {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values;
+    /** The elements once the list holds something other than ints, otherwise null. */
+    private Object[] boxed;
+    private int size;
+
+    IntList(int capacity) {
+        values = capacity == 0 ? EMPTY : new int[capacity];
+    }
+
+    /** Whether every element is stored unboxed, so {@link #getInt} may be used. */
+    boolean isUnboxed() {
+        return boxed == null;
+    }
+
+    int getInt(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    @Override
+    public Object get(int index) {
+        Objects.checkIndex(index, size);
+        return boxed != null ? boxed[index] : values[index];
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        Objects.checkIndex(index, size);
+        if (boxed == null && element instanceof Integer value) {
+            int previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        box();
+        Object previous = boxed[index];
+        boxed[index] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        Objects.checkIndex(index, size + 1);
+        if (boxed == null && !(element instanceof Integer)) box();
+        grow(size + 1);
+        if (boxed != null) {
+            System.arraycopy(boxed, index, boxed, index + 1, size - index);
+            boxed[index] = element;
+        } else {
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = (Integer) element;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<?> elements) {
+        if (!(elements instanceof IntList other) || boxed != null || other.boxed != null) {
+            Object[] added = elements.toArray();
+            for (Object element : added) add(size, element);
+            return added.length != 0;
+        }
+
+        int count = other.size;
+        grow(size + count);
+        System.arraycopy(other.values, 0, values, size, count);
+        size += count;
+        modCount++;
+        return count != 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void grow(int capacity) {
+        int length = boxed != null ? boxed.length : values.length;
+        if (capacity <= length) return;
+
+        int newLength = Math.max(capacity, length + (length >> 1) + 1);
+        if (boxed != null) {
+            boxed = Arrays.copyOf(boxed, newLength);
+        } else {
+            values = Arrays.copyOf(values, newLength);
+        }
+    }
+
+    private void box() {
+        if (boxed != null) return;
+        boxed = new Object[Math.max(values.length, 1)];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = values[i];
+        }
+        values = EMPTY;
+    }
+}
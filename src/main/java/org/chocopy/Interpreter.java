@@ -2,26 +2,48 @@ package org.chocopy;
 
 import java.util.*;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion> {
+    static final List<String> BUILTINS = List.of("print", "input", "len", "object", "int", "bool", "str");
+
+    /**
+     * How a statement finished. A {@code return} completes with RETURN and leaves
+     * its value in {@link #returnValue}; enclosing statements stop and pass the
+     * signal up to the function call.
+     */
+    enum Completion { NORMAL, RETURN }
+    
     final Environment globals = new Environment();
     private Environment environment = globals;
+    private ChocoPyFunction function;
+    int compileThreshold = ChocoPyFunction.DEFAULT_COMPILE_THRESHOLD;
+    /** Whether hot functions are compiled on a background thread instead of on the calling one. */
+    boolean compileInBackground = true;
+    /** Whether common idioms run as {@link Fusion fused} superinstructions. */
+    boolean fuse = true;
+    /** Objects and list displays created so far by interpreted code. */
+    long allocations;
+    private Object returnValue;
+    private final ChocoPyCallable print;
+    private final ChocoPyCallable input;
+    private final ChocoPyCallable len;
 
     Interpreter() {
-        globals.define("print", new ChocoPyCallable() {
+        print = new ChocoPyCallable() {
             @Override
             public int arity() { return 1; }
 
             @Override
             public Object call(Interpreter interpreter,
                                List<Object> arguments) {
-                System.out.println(stringify(arguments.get(0)));
+                System.out.println(Values.stringify(arguments.get(0)));
                 return null;
             }
 
             @Override
             public String toString() { return "native print"; }
-        });
-        globals.define("input", new ChocoPyCallable() {
+        };
+        defineBuiltin("print", print);
+        input = new ChocoPyCallable() {
             
             private java.util.Scanner scanner = new java.util.Scanner(System.in);
             
@@ -40,27 +62,22 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
             @Override
             public String toString() { return "native input"; }
-        });
-        globals.define("len", new ChocoPyCallable() {
+        };
+        defineBuiltin("input", input);
+        len = new ChocoPyCallable() {
             @Override
             public int arity() { return 1; }
 
             @Override
             public Object call(Interpreter interpreter,
                                List<Object> arguments) {
-                Object arg = arguments.get(0);
-                if (arg instanceof String) {
-                    return arg.toString().length();
-                } else if (arg instanceof List) {
-                    return ((List<?>) arg).size();
-                } else  {
-                    throw new RuntimeException();
-                }
+                return Values.len(arguments.get(0));
             }
 
             @Override
             public String toString() { return "native len"; }
-        });
+        };
+        defineBuiltin("len", len);
 
         Stmt.Function objectInitFunction = new Stmt.Function(
                 new Token(TokenType.IDSTRING, "__init__", null, -1),
@@ -69,8 +86,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 Collections.singletonList(new Stmt.Pass(new Token(TokenType.PASS, "pass", null, -1)))
         );
         ChocoPyFunction objectConstructor = new ChocoPyFunction(objectInitFunction, environment, true);
-        ChocoPyClass objectClass = new ChocoPyClass("object", null, Collections.singletonMap("__init__", objectConstructor), Collections.emptyMap());
-        globals.define("object", objectClass);
+        ChocoPyClass objectClass = new ChocoPyClass("object", null, Collections.singletonMap("__init__", objectConstructor), Collections.emptyMap(), List.of());
+        defineBuiltin("object", objectClass);
 
         Stmt.Function intInitFunction = new Stmt.Function(
                 new Token(TokenType.IDSTRING, "__init__", null, -1),
@@ -79,8 +96,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 Collections.singletonList(new Stmt.Return(new Token(TokenType.RETURN, "return", null, -1), new Expr.Literal(0)))
         );
         ChocoPyFunction intConstructor = new ChocoPyFunction(intInitFunction, environment, true);
-        ChocoPyClass intClass = new ChocoPyClass("int", objectClass, Collections.singletonMap("__init__", intConstructor), Collections.emptyMap());
-        globals.define("int", intClass);
+        ChocoPyClass intClass = new ChocoPyClass("int", objectClass, Collections.singletonMap("__init__", intConstructor), Collections.emptyMap(), List.of());
+        defineBuiltin("int", intClass);
 
         Stmt.Function boolInitFunction = new Stmt.Function(
                 new Token(TokenType.IDSTRING, "__init__", null, -1),
@@ -89,8 +106,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 Collections.singletonList(new Stmt.Return(new Token(TokenType.RETURN, "return", null, -1), new Expr.Literal(false)))
         );
         ChocoPyFunction boolConstructor = new ChocoPyFunction(boolInitFunction, environment, true);
-        ChocoPyClass boolClass = new ChocoPyClass("bool", objectClass, Collections.singletonMap("__init__", boolConstructor), Collections.emptyMap());
-        globals.define("bool", boolClass);
+        ChocoPyClass boolClass = new ChocoPyClass("bool", objectClass, Collections.singletonMap("__init__", boolConstructor), Collections.emptyMap(), List.of());
+        defineBuiltin("bool", boolClass);
 
         Stmt.Function strInitFunction = new Stmt.Function(
                 new Token(TokenType.IDSTRING, "__init__", null, -1),
@@ -99,8 +116,12 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 Collections.singletonList(new Stmt.Return(new Token(TokenType.RETURN, "return", null, -1), new Expr.Literal("")))
         );
         ChocoPyFunction strConstructor = new ChocoPyFunction(strInitFunction, environment, true);
-        ChocoPyClass strClass = new ChocoPyClass("str", objectClass, Collections.singletonMap("__init__", strConstructor), Collections.emptyMap());
-        globals.define("str", strClass);
+        ChocoPyClass strClass = new ChocoPyClass("str", objectClass, Collections.singletonMap("__init__", strConstructor), Collections.emptyMap(), List.of());
+        defineBuiltin("str", strClass);
+    }
+
+    private void defineBuiltin(String name, Object value) {
+        globals.define(BUILTINS.indexOf(name), value);
     }
 
     @Override
@@ -110,88 +131,46 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        BinaryNode node = specialize(expr);
+        if (node instanceof BinaryNode.IntArithmetic) return evaluateInt(expr);
+        if (node instanceof BinaryNode.IntComparison) return evaluateCondition(expr);
+        if (node == BinaryNode.LIST_CONCAT) {
+            List<?>[] lists = new List<?>[BinaryNode.concatenations(expr) + 1];
+            concatenate(expr, lists);
+            return Values.concat(expr.inferredType, lists);
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
-            case BANG_EQUAL: return !isEqual(left, right);
-            case EQUAL_EQUAL: return isEqual(left, right);
-            case IS: return left == right;
-            case GREATER:
-                checkNumberOperands(expr, left, right);
-                return (int)left > (int)right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr, left, right);
-                return (int)left >= (int)right;
-            case LESS:
-                checkNumberOperands(expr, left, right);
-                return (int)left < (int)right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr, left, right);
-                return (int)left <= (int)right;
-            case MINUS:
-                checkNumberOperands(expr, left, right);
-                return (int)left - (int)right;
-            case PLUS:
-                if (left == null || right == null) {
-                    ChocoPy.exitCode = 4;
-                    throw new RuntimeError(expr.operator, 
-                            String.format("unsupported operand type(s) for +: '%s' and '%s'", 
-                                    left == null ? "<None>" : expr.left.inferredType, 
-                                    right == null ? "<None>" : expr.right.inferredType), 
-                            "TypeError");
-                }
-                
-                if (left instanceof Integer && right instanceof Integer) {
-                    return (int)left + (int)right;
-                }
-
-                if (left instanceof String && right instanceof String) {
-                    return (String)left + (String)right;
-                }
-
-                if (left instanceof List && right instanceof List) {
-                    ((List)left).addAll((List)right);
-                    return left;
-                }
-
-                throw new RuntimeError(expr.operator,
-                        String.format("unsupported operand type(s) for %s: '%s' and '%s'", expr.operator.lexeme, expr.left.inferredType, expr.right.inferredType),
-                        "TypeError");
-                
-            case DOUBLE_SLASH:
-                checkNumberOperands(expr, left, right);
-                try {
-                    return (int)left / (int)right;
-                } catch (ArithmeticException e) {
-                    ChocoPy.exitCode = 2;
-                    throw new RuntimeError(expr.operator, "division by zero", "ZeroDivisionError");
-                }
-            case PERCENT:
-                checkNumberOperands(expr, left, right);
-                try {
-                    return (int)left % (int)right;
-                } catch (ArithmeticException e) {
-                    ChocoPy.exitCode = 2;
-                    throw new RuntimeError(expr.operator, "integer modulo by zero", "ZeroDivisionError");
-                }
-            case STAR:
-                checkNumberOperands(expr, left, right);
-                return (int)left * (int)right;
-        }
-
-        return null;
+        return node.execute(expr, left, right);
     }
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+        Object callee;
+        if (expr.callee instanceof Expr.Get get) {
+            ChocoPyInstance receiver = Values.receiver(get, evaluate(get.object));
+            Object member = get.methodIndex >= 0
+                    ? receiver.klass.method(get.methodIndex)
+                    : get.cache.lookup(receiver.klass, get.name.lexeme);
+            if (member instanceof ChocoPyFunction method) {
+                return callMethod(expr, method, receiver);
+            }
+            callee = receiver.get(get.name, get.cache);
+        } else {
+            callee = evaluate(expr.callee);
+        }
 
         List<Object> arguments = new ArrayList<>();
         for (Expr argument : expr.arguments) {
             arguments.add(evaluate(argument));
         }
 
+        return call(expr, callee, arguments);
+    }
+
+    Object call(Expr.Call expr, Object callee, List<Object> arguments) {
         if (!(callee instanceof ChocoPyCallable)) {
             throw new RuntimeError(expr.paren,
                     String.format("'%s' object is not callable", callee.toString()), "TypeError");
@@ -207,20 +186,57 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return function.call(this, arguments);
     }
 
+    /**
+     * Calls {@code receiver.method(...)} without binding the method: arguments
+     * are evaluated straight into the callee's frame, next to the receiver.
+     */
+    private Object callMethod(Expr.Call expr, ChocoPyFunction method, ChocoPyInstance receiver) {
+        if (expr.arguments.size() != method.arity()) {
+            throw new RuntimeError(expr.paren,
+                    String.format("expected %d arguments, but got %d", method.arity(), expr.arguments.size()),
+                    "TypeError");
+        }
+
+        Environment frame = method.newFrame(receiver);
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            frame.values[method.argumentSlot(receiver, i)] = evaluate(expr.arguments.get(i));
+        }
+
+        return method.execute(this, frame, receiver);
+    }
+
+    /**
+     * Calls a method with arguments that were already evaluated, for code
+     * compiled by the {@link TieredCompiler}.
+     */
+    Object invoke(Expr.Call expr, ChocoPyInstance receiver, List<Object> arguments) {
+        Expr.Get get = (Expr.Get) expr.callee;
+        Object member = get.methodIndex >= 0
+                ? receiver.klass.method(get.methodIndex)
+                : get.cache.lookup(receiver.klass, get.name.lexeme);
+        if (!(member instanceof ChocoPyFunction method)) {
+            return call(expr, receiver.get(get.name, get.cache), arguments);
+        }
+
+        if (arguments.size() != method.arity()) {
+            throw new RuntimeError(expr.paren,
+                    String.format("expected %d arguments, but got %d", method.arity(), arguments.size()),
+                    "TypeError");
+        }
+
+        Environment frame = method.newFrame(receiver);
+        for (int i = 0; i < arguments.size(); i++) {
+            frame.values[method.argumentSlot(receiver, i)] = arguments.get(i);
+        }
+
+        return method.execute(this, frame, receiver);
+    }
+
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         
-        if (object == null) {
-            ChocoPy.exitCode = 4;
-            throw new RuntimeError(expr.name, String.format("'<None>' object has no attribute '%s'", expr.name.lexeme),
-                    "AttributeError");
-        } else if (object instanceof ChocoPyInstance) {
-            return ((ChocoPyInstance) object).get(expr.name);
-        } else {
-            throw new RuntimeError(expr.name, String.format("'%s' object has no attribute '%s'", object, expr.name.lexeme), 
-                    "AttributeError");
-        }
+        return Values.receiver(expr, object).get(expr.name, expr.cache);
     }
 
     @Override
@@ -238,9 +254,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left);
 
         if (expr.operator.type == TokenType.OR) {
-            if (isTruthy(left)) return left;
+            if (Values.isTruthy(left)) return left;
         } else {
-            if (!isTruthy(left)) return left;
+            if (!Values.isTruthy(left)) return left;
         }
 
         return evaluate(expr.right);
@@ -248,7 +264,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitTernaryExpr(Expr.Ternary expr) {
-        if (isTruthy(evaluate(expr.condition))) {
+        if (evaluateCondition(expr.condition)) {
             return evaluate(expr.onTrue);
         } else {
             return evaluate(expr.onFalse);
@@ -262,7 +278,8 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             throw new RuntimeError(expr.line, "operation on '<None>'", "RuntimeError"); 
         }
         
-        List list = new ArrayList();
+        allocations++;
+        List<Object> list = Values.list(expr.inferredType, expr.elements.size());
         for (Expr element : expr.elements) {
             list.add(evaluate(element));
         }
@@ -272,37 +289,26 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitIndexExpr(Expr.Index expr) {
+        if (expr.fusion == Fusion.LOOP_INDEX) {
+            Expr.Variable listing = (Expr.Variable) expr.listing;
+            Expr.Variable id = (Expr.Variable) expr.id;
+            if (lookUpVariable(listing.depth, listing.slot) instanceof List<?> list
+                    && lookUpVariable(id.depth, id.slot) instanceof Integer index) {
+                try {
+                    return list.get(index);
+                } catch (IndexOutOfBoundsException e) {
+                    return Values.index(expr, list, index);
+                }
+            }
+            expr.fusion = Fusion.NONE;
+        }
+
         Object listObject = evaluate(expr.listing);
         Object idObject = evaluate(expr.id);
-        
-        if (listObject == null || idObject == null) {
-            ChocoPy.exitCode = 4;
-            throw new RuntimeError(expr.line, "'<None>' object is not subscriptable", "TypeError");
-        } else if (!(idObject instanceof Integer)) {
-            ChocoPy.exitCode = 4;
-            throw new RuntimeError(expr.line, "list indices must be 'int', not '<None>'", "TypeError");
-        }
 
-        Integer id = (Integer) idObject;
-        if (listObject instanceof List) {
-            List list = (List) listObject;
-            if (list.isEmpty() || id < 0 || id >= list.size()) {
-                ChocoPy.exitCode = 3;
-                throw new RuntimeError(expr.line, "list index out of range", "IndexError");
-            } else {
-                return list.get(id);
-            }
-        } else if (listObject instanceof String) {
-            String str = (String) listObject;
-            if (str.isEmpty() || id < 0 || id >= str.length()) {
-                ChocoPy.exitCode = 3;
-                throw new RuntimeError(expr.line, "string index out of range", "IndexError");
-            } else {
-                return Character.toString(str.charAt(id));
-            }
-        } else {
-            throw new RuntimeError(expr.line, "expected type 'str' or 'list'", "TypeError");
-        }
+        IndexNode node = expr.node;
+        if (node == null) node = expr.node = IndexNode.specialize(expr);
+        return node.execute(expr, listObject, idObject);
     }
 
     @Override
@@ -313,28 +319,17 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitLenExpr(Expr.Len expr) {
         Object object = evaluate(expr.expression);
-        
-        if (object == null) {
-            ChocoPy.exitCode = 1;
-            throw new RuntimeError(expr.line, "'<None>' object has no len()", "TypeError");
-        }
 
-        Expr.Call lenCall = new Expr.Call(
-                new Expr.Variable(new Token(TokenType.LEN_NATIVE_FUN, "len", null, expr.line)),
-                new Token(TokenType.RIGHT_PAREN, ")", null, expr.line),
-                Collections.singletonList(expr.expression)
-        );
-        return visitCallExpr(lenCall);
+        return Values.len(expr, object);
     }
 
     @Override
     public Object visitInputExpr(Expr.Input expr) {
-        Expr.Call inputCall = new Expr.Call(
-                new Expr.Variable(new Token(TokenType.INPUT_NATIVE_FUN, "input", null, expr.line)),
-                new Token(TokenType.RIGHT_PAREN, ")", null, expr.line),
-                Collections.emptyList()
-        );
-        return visitCallExpr(inputCall);
+        return input();
+    }
+
+    Object input() {
+        return input.call(this, Collections.emptyList());
     }
 
     @Override
@@ -344,78 +339,167 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSelfExpr(Expr.Self expr) {
-        return lookUpVariable(expr.keyword);
+        return lookUpVariable(expr.depth, expr.slot);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
+        if (isUnboxedInt(expr)) return evaluateInt(expr);
+        if (isUnboxedBool(expr)) return evaluateCondition(expr);
 
-        if (expr.operator.type == TokenType.MINUS) {
-            checkNumberOperand(expr.operator, right);
-            return -(int)right;
-        } else if (expr.operator.type == TokenType.NOT) {
-            checkBooleanOperand(expr.operator, right);
-            return !(boolean) right;
-        }
+        Object right = evaluate(expr.right);
 
-        return null;
+        return Values.unary(expr, right);
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name);
+        return lookUpVariable(expr.depth, expr.slot);
     }
 
     private Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    private boolean isTruthy(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (boolean)object;
-        return true;
+    /**
+     * Evaluates an int-typed expression without boxing intermediate results.
+     * Only called on expressions accepted by {@link #isUnboxedInt}.
+     */
+    private int evaluateInt(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            int left = evaluateLeftInt(binary);
+            int right = evaluateRightInt(binary, left);
+            return ((BinaryNode.IntArithmetic) binary.node).apply(binary, left, right);
+        } else if (expr instanceof Expr.Unary unary) {
+            if (isUnboxedInt(unary.right)) return -evaluateInt(unary.right);
+            return (int) Values.unary(unary, evaluate(unary.right));
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return evaluateInt(grouping.expression);
+        }
+        return (int) ((Expr.Literal) expr).value;
+    }
+
+    /**
+     * Evaluates an expression for its truth value. Comparisons of ints and
+     * boolean operators are computed without boxing; anything else falls back
+     * to {@link Values#isTruthy}.
+     */
+    private boolean evaluateCondition(Expr expr) {
+        if (expr instanceof Expr.Binary binary
+                && specialize(binary) instanceof BinaryNode.IntComparison comparison) {
+            if ((comparison == BinaryNode.INT_EQUAL || comparison == BinaryNode.INT_NOT_EQUAL)
+                    && !(isUnboxedInt(binary.left) && isUnboxedInt(binary.right))) {
+                return evaluateEquality(binary) == (comparison == BinaryNode.INT_EQUAL);
+            }
+            int left = evaluateLeftInt(binary);
+            int right = evaluateRightInt(binary, left);
+            return comparison.test(left, right);
+        } else if (expr instanceof Expr.Logical logical) {
+            if (logical.operator.type == TokenType.OR) {
+                return evaluateCondition(logical.left) || evaluateCondition(logical.right);
+            }
+            return evaluateCondition(logical.left) && evaluateCondition(logical.right);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.NOT) {
+            if (isUnboxedBool(unary.right)) return !evaluateCondition(unary.right);
+            return (boolean) Values.unary(unary, evaluate(unary.right));
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return evaluateCondition(grouping.expression);
+        }
+        return Values.isTruthy(evaluate(expr));
     }
 
-    private boolean isEqual(Object a, Object b) {
-        if (a == null && b == null) return true;
-        if (a == null) return false;
+    /**
+     * Whether int operands that may be None are equal. Unlike the ordering
+     * operators, {@code ==} and {@code !=} do not fail on None, which only
+     * equals None.
+     */
+    private boolean evaluateEquality(Expr.Binary expr) {
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
+        if (left instanceof Integer a && right instanceof Integer b) return a.intValue() == b.intValue();
+        return Values.isEqual(left, right);
+    }
+
+    private int evaluateLeftInt(Expr.Binary expr) {
+        if (isUnboxedInt(expr.left)) return evaluateInt(expr.left);
 
-        return a.equals(b);
+        Object left = evaluate(expr.left);
+        if (left instanceof Integer value) return value;
+        throw Values.unsupportedOperands(expr, left, evaluate(expr.right));
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Integer) return;
-        throw new RuntimeError(operator, 
-                String.format("unsupported operand type for %s: '%s'", operator.lexeme, operand.toString()), 
-                "TypeError");
+    private int evaluateRightInt(Expr.Binary expr, int left) {
+        if (isUnboxedInt(expr.right)) return evaluateInt(expr.right);
+
+        Object right = evaluate(expr.right);
+        if (right instanceof Integer value) return value;
+        throw Values.unsupportedOperands(expr, left, right);
     }
 
-    private void checkBooleanOperand(Token operator, Object operand) {
-        if (operand instanceof Boolean) return;
-        throw new RuntimeError(operator,
-                String.format("unsupported operand type for %s: '%s'", operator.lexeme, operand.toString()),
-                "TypeError");
+    private boolean isUnboxedInt(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return specialize(binary) instanceof BinaryNode.IntArithmetic;
+        } else if (expr instanceof Expr.Unary unary) {
+            return unary.operator.type == TokenType.MINUS && unary.inferredType instanceof IntType;
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return isUnboxedInt(grouping.expression);
+        }
+        return expr instanceof Expr.Literal literal && literal.value instanceof Integer;
     }
 
-    private void checkNumberOperands(Expr.Binary expr,
-                                     Object left, Object right) {
-        if (left instanceof Integer && right instanceof Integer) return;
+    private boolean isUnboxedBool(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return specialize(binary) instanceof BinaryNode.IntComparison;
+        } else if (expr instanceof Expr.Unary unary) {
+            return unary.operator.type == TokenType.NOT && unary.inferredType instanceof BoolType;
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return isUnboxedBool(grouping.expression);
+        }
+        return expr instanceof Expr.Literal literal && literal.value instanceof Boolean;
+    }
+
+    /**
+     * Evaluates the operands of a chain of list concatenations left to right into
+     * {@code lists}, raising the error of the first {@code +} with a None operand.
+     * Returns how many lists were filled.
+     */
+    private int concatenate(Expr.Binary expr, List<?>[] lists) {
+        int count = 1;
+        if (expr.left instanceof Expr.Binary binary && BinaryNode.specialize(binary) == BinaryNode.LIST_CONCAT) {
+            count = concatenate(binary, lists);
+        } else {
+            lists[0] = evaluate(expr.left) instanceof List<?> list ? list : null;
+        }
 
-        throw new RuntimeError(expr.operator,
-                String.format("unsupported operand type(s) for %s: '%s' and '%s'", expr.operator.lexeme, expr.left.inferredType, expr.right.inferredType),
-                "TypeError");
+        Object right = evaluate(expr.right);
+        if (lists[0] == null || !(right instanceof List<?> list)) {
+            throw Values.unsupportedOperands(expr, lists[0], right);
+        }
+        lists[count] = list;
+        return count + 1;
+    }
+
+    private static BinaryNode specialize(Expr.Binary expr) {
+        BinaryNode node = expr.node;
+        if (node == null) node = expr.node = BinaryNode.specialize(expr);
+        return node;
     }
 
     void interpret(List<Stmt> statements) {
         try {
             for (Stmt statement : statements) {
-                execute(statement);
+                if (execute(statement) == Completion.RETURN) break;
             }
-        } catch (RuntimeError error) {
+        } catch (Throwable e) {
+            reportRuntimeError(e);
+        }
+    }
+
+    static void reportRuntimeError(Throwable e) {
+        if (e instanceof RuntimeError error) {
             ChocoPy.runtimeError(error);
             ChocoPy.runtimeErrors.add(String.format("Exited with error code %d", ChocoPy.exitCode));
-        } catch (Throwable e) {
+        } else {
             try {
                 String msg = (e.getMessage() != null) ? e.getMessage() : e.toString();
                 throw new RuntimeError(0, msg, "RuntimeError");
@@ -427,41 +511,24 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    private String stringify(Object object) {
-        if (object == null) return "None";
-
-        if (object instanceof Boolean) {
-            String text = object.toString();
-            return text.substring(0, 1).toUpperCase() + text.substring(1);
-        }
-
-        return object.toString();
-    }
-
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        for (Stmt statement : stmt.statements) {
-            execute(statement);
-        }
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        return executeStatements(stmt.statements);
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
-            superclass = evaluate(new Expr.Variable(stmt.superclass));
+            superclass = globals.get(stmt.superclassSlot);
             if (!(superclass instanceof ChocoPyClass)) {
                 throw new RuntimeError(stmt.superclass,
                         "superclass must be a class", "TypeError"); 
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
-        environment = new Environment(environment);
-
-        Map<String, ChocoPyFunction> methods = new HashMap<>();
-        Map<String, ChocoPyAttribute> attributes = new HashMap<>();
+        Map<String, ChocoPyCallable> methods = new LinkedHashMap<>();
+        Map<String, Object> attributes = new LinkedHashMap<>();
         for (Stmt member : stmt.members) {
             if (member instanceof Stmt.Function) {
                 Stmt.Function stmtFun = (Stmt.Function) member;
@@ -470,100 +537,90 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 methods.put(stmtFun.name.lexeme, function);
             } else if (member instanceof Stmt.Var) {
                 Stmt.Var stmtVar = (Stmt.Var) member;
-                Object value = evaluate(stmtVar.initializer);
-                ChocoPyAttribute attr = new ChocoPyAttribute(value);
-                attributes.put(stmtVar.name.lexeme, attr);
+                attributes.put(stmtVar.name.lexeme, evaluate(stmtVar.initializer));
             }
         }
 
-        ChocoPyClass klass = new ChocoPyClass(stmt.name.lexeme, (ChocoPyClass)superclass, methods, attributes);
-        environment.define("self", klass);
-        environment = environment.enclosing;
-
-        environment.define(stmt.name.lexeme, klass);
-        return null;
+        ChocoPyClass klass = new ChocoPyClass(stmt.name.lexeme, (ChocoPyClass)superclass, methods, attributes,
+                stmt.methodTable);
+        environment.define(stmt.slot, klass);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
         ChocoPyFunction function = new ChocoPyFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+        environment.define(stmt.slot, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
+    public Completion visitIfStmt(Stmt.If stmt) {
+        Fusion fusion = stmt.fusion;
+        if (fusion == null) fusion = stmt.fusion = fuse ? Fusion.match(stmt) : Fusion.NONE;
+
+        boolean condition;
+        if (fusion == Fusion.IF_DIVISIBLE) {
+            // Operands that are not ints fail here exactly as on the generic path.
+            Expr.Binary modulo = (Expr.Binary) ((Expr.Binary) stmt.condition).left;
+            int left = evaluateLeftInt(modulo);
+            condition = Values.modulo(modulo, left, evaluateRightInt(modulo, left)) == 0;
+        } else {
+            condition = evaluateCondition(stmt.condition);
+        }
+
+        if (condition) {
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
     public Void visitPrintExpr(Expr.Print expr) {
-        Expr.Call printCall = new Expr.Call(
-                new Expr.Variable(new Token(TokenType.PRINT_NATIVE_FUN, "print", null, expr.line)),
-                new Token(TokenType.RIGHT_PAREN, ")", null, expr.line),
-                Collections.singletonList(expr.expression)
-        );
-        visitCallExpr(printCall);
+        print.call(this, Collections.singletonList(evaluate(expr.expression)));
         return null;
     }
 
     @Override
     public Object visitMultiAssignExpr(Expr.MultiAssign multiAssign) {
+        Fusion fusion = multiAssign.fusion;
+        if (fusion == null) fusion = multiAssign.fusion = fuse ? Fusion.match(multiAssign) : Fusion.NONE;
+        if (fusion == Fusion.INCREMENT) {
+            Expr.Variable variable = ((Expr.Assign) multiAssign.targets.get(0)).target;
+            if (lookUpVariable(variable.depth, variable.slot) instanceof Integer current) {
+                Expr.Binary binary = (Expr.Binary) multiAssign.value;
+                int step = (Integer) ((Expr.Literal) binary.right).value;
+                Object value = binary.operator.type == TokenType.PLUS ? current + step : current - step;
+                updateVariable(variable.depth, variable.slot, value);
+                return value;
+            }
+            multiAssign.fusion = Fusion.NONE;
+        }
+
         Object value = evaluate(multiAssign.value);
 
         for (Expr target : multiAssign.targets) {
             if (target instanceof Expr.Assign expr) {
-                Token name = expr.target.name;
-                updateVariable(name, value);
+                updateVariable(expr.target.depth, expr.target.slot, value);
             } 
             else if (target instanceof Expr.Set expr) {
                 Object object = evaluate(expr.object);
 
-                if (object == null) {
-                    ChocoPy.exitCode = 4;
-                    throw new RuntimeError(expr.line,
-                            String.format("'<None>' object has no attribute '%s'", expr.name.lexeme),
-                            "AttributeError");
-                } else if (!(object instanceof ChocoPyInstance)) {
-                    throw new RuntimeError(expr.name,
-                            String.format("'%s' object has no attribute '%s'", expr.object.inferredType.toString(), expr.name.lexeme),
-                            "AttributeError");
-                }
-
-                ((ChocoPyInstance)object).set(expr.name, value);
+                Values.receiver(expr, object).set(expr.name, value, expr.cache);
             } 
             else if (target instanceof Expr.ListSet expr) {
                 Object idObject = evaluate(expr.id);
                 Object listObject = evaluate(expr.listing);
 
-                if (listObject == null || idObject == null) {
-                    ChocoPy.exitCode = 4;
-                    throw new RuntimeError(expr.line, "'<None>' object is not subscriptable", "TypeError");
-                } else if (!(idObject instanceof Integer)) {
-                    ChocoPy.exitCode = 4;
-                    throw new RuntimeError(expr.line, "list indices must be 'int', not '<None>'", "TypeError");
-                }
-
-                List list = (List) listObject;
-                Integer id = (Integer) idObject;
-
-                if (list.isEmpty() || id < 0 || id >= list.size()) {
-                    ChocoPy.exitCode = 3;
-                    throw new RuntimeError(expr.line, "list index out of range", "IndexError");
-                } else {
-                    return list.set(id, value);
-                }
+                Values.setIndex(expr, listObject, idObject, value);
             }
         }
         
@@ -571,137 +628,141 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
         if (stmt.value != null) value = evaluate(stmt.value);
 
-        throw new Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        environment.define(stmt.slot, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        Fusion fusion = stmt.fusion;
+        if (fusion == null) fusion = stmt.fusion = fuse ? Fusion.match(stmt) : Fusion.NONE;
+        if (fusion == Fusion.WHILE_LESS) return whileLess(stmt);
+
+        while (evaluateCondition(stmt.condition)) {
+            if (execute(stmt.body) == Completion.RETURN) return Completion.RETURN;
+            if (function != null) function.backEdge();
         }
-        return null;
+        return Completion.NORMAL;
+    }
+
+    /**
+     * Runs {@code while v < bound:} reading {@code v} straight from its slot.
+     * Once {@code v} is not an int, the rest of the loop takes the generic path.
+     */
+    private Completion whileLess(Stmt.While stmt) {
+        Expr.Binary condition = (Expr.Binary) stmt.condition;
+        Expr.Variable variable = (Expr.Variable) condition.left;
+        while (lookUpVariable(variable.depth, variable.slot) instanceof Integer value) {
+            if (value >= evaluateRightInt(condition, value)) return Completion.NORMAL;
+            if (execute(stmt.body) == Completion.RETURN) return Completion.RETURN;
+            if (function != null) function.backEdge();
+        }
+
+        stmt.fusion = Fusion.NONE;
+        return visitWhileStmt(stmt);
     }
 
     @Override
-    public Void visitForStmt(Stmt.For stmt) {
+    public Completion visitForStmt(Stmt.For stmt) {
         Object iterableObject = evaluate(stmt.iterable);
         
-        if (iterableObject == null) {
-            ChocoPy.exitCode = 4;
-            throw new RuntimeError(stmt.line, "'<None>' object is not iterable", "TypeError");
-        }
-        
+        Values.checkIterable(stmt, iterableObject);
+
         if (iterableObject instanceof List) {
-            List list = (List) iterableObject;
+            List<?> list = (List<?>) iterableObject;
             for (Object value : list) {
-                updateVariable(stmt.id.name, value);
-                stmt.body.accept(this);
+                updateVariable(stmt.id.depth, stmt.id.slot, value);
+                if (execute(stmt.body) == Completion.RETURN) return Completion.RETURN;
+                if (function != null) function.backEdge();
             }
-        } else if (iterableObject instanceof String) {
-            String str = (String) iterableObject;
+        } else if (iterableObject instanceof CharSequence) {
+            CharSequence str = (CharSequence) iterableObject;
             for (int i = 0; i < str.length(); i++) {
-                updateVariable(stmt.id.name, String.valueOf(str.charAt(i)));
-                stmt.body.accept(this);
+                updateVariable(stmt.id.depth, stmt.id.slot, Values.character(str.charAt(i)));
+                if (execute(stmt.body) == Completion.RETURN) return Completion.RETURN;
+                if (function != null) function.backEdge();
             }
         }
         
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPassStmt(Stmt.Pass stmt) {
-        return null;
+    public Completion visitPassStmt(Stmt.Pass stmt) {
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitGlobalStmt(Stmt.Global stmt) {
-        this.environment.define(stmt.name.lexeme, Environment.Scope.GLOBAL);
-        return null;
+    public Completion visitGlobalStmt(Stmt.Global stmt) {
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitNonlocalStmt(Stmt.Nonlocal stmt) {
-        this.environment.define(stmt.name.lexeme, Environment.Scope.NONLOCAL);
-        return null;
+    public Completion visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return Completion.NORMAL;
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Completion executeStatements(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (execute(statement) == Completion.RETURN) return Completion.RETURN;
+        }
+        return Completion.NORMAL;
     }
 
-    void executeBlock(List<Stmt> statements,
-                      Environment environment) {
+    /**
+     * Runs a function body in the given environment and returns the value of the
+     * {@code return} statement that ended it, or None if it ran to completion.
+     */
+    Object executeBlock(List<Stmt> statements,
+                        Environment environment, ChocoPyFunction function) {
         Environment previous = this.environment;
+        ChocoPyFunction previousFunction = this.function;
         try {
             this.environment = environment;
+            this.function = function;
 
-            for (Stmt statement : statements) {
-                execute(statement);
-            }
+            if (executeStatements(statements) == Completion.NORMAL) return null;
+
+            Object value = returnValue;
+            returnValue = null;
+            return value;
         } finally {
             this.environment = previous;
+            this.function = previousFunction;
         }
     }
 
-    private Object lookUpVariable(Token name) {
-        Environment environment = this.environment;
-        
-        while (environment != null) {
-            if (environment.values.containsKey(name.lexeme)) {
-                Object obj = environment.values.get(name.lexeme);
-                if (obj instanceof Environment.Scope) {
-                    Environment.Scope scope = (Environment.Scope) obj;
-                    if (scope == Environment.Scope.GLOBAL) {
-                        return globals.get(name);
-                    } else if (scope == Environment.Scope.NONLOCAL) {
-                        environment = environment.enclosing;
-                    }
-                } else {
-                    return obj;
-                }
-            } else {
-                environment = environment.enclosing;
-            }
+    private Object lookUpVariable(int depth, int slot) {
+        if (depth == Environment.GLOBAL) {
+            return globals.get(slot);
         }
-        
-        return null;
+        return environment.getAt(depth, slot);
     }
     
-    private void updateVariable(Token name, Object value) {
-        Environment environment = this.environment;
-        while (environment != null) {
-            if (environment.values.containsKey(name.lexeme)) {
-                Object obj = environment.values.get(name.lexeme);
-                if (obj instanceof Environment.Scope) {
-                    Environment.Scope scope = (Environment.Scope) obj;
-                    if (scope == Environment.Scope.GLOBAL) {
-                        globals.values.put(name.lexeme, value);
-                        return;
-                    } else if (scope == Environment.Scope.NONLOCAL) {
-                        environment = environment.enclosing;
-                    }
-                } else {
-                    environment.values.put(name.lexeme, value);
-                    return;
-                }
-            } else {
-                environment = environment.enclosing;
-            }
+    private void updateVariable(int depth, int slot, Object value) {
+        if (depth == Environment.GLOBAL) {
+            globals.define(slot, value);
+        } else {
+            environment.assignAt(depth, slot, value);
         }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,269 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Intermediate representation of a resolved script in static single
+ * assignment form. Every function is a graph of basic blocks; every
+ * instruction defines at most one value, typed by the {@link Resolver}, and
+ * names the instructions whose values it uses as its operands.
+ * <p>
+ * Locals of functions that declare no nested functions are SSA values, merged
+ * by phi instructions where control flow joins. Globals and variables shared
+ * with nested functions stay in environments and are read and written by
+ * {@code LOAD} and {@code STORE}. Instructions keep the AST node they were
+ * lowered from, so errors are reported exactly as the other engines do.
+ */
+final class Ir {
+
+    private Ir() {}
+
+    enum Op {
+        CONST, PARAM, PHI, COPY, LOAD, STORE,
+        ADD, SUB, MUL, DIV, MOD, LT, LE, GT, GE, EQ, NE, IS, NEG, NOT,
+        LIST, NONE_LIST, INDEX, SET_INDEX, LEN, GET, SET, RECEIVER, CALL, INVOKE,
+        PRINT, INPUT, FUNCTION, CLASS, ITERATE, HAS_NEXT, NEXT,
+        JUMP, BRANCH, RETURN;
+
+        boolean isTerminator() {
+            return this == JUMP || this == BRANCH || this == RETURN;
+        }
+    }
+
+    static class Instr {
+        final int id;
+        final Op op;
+        final List<Instr> operands = new ArrayList<>();
+        final ValueType type;
+        Block block;
+
+        /** The AST node the instruction was lowered from, if it can fail or needs one. */
+        Object site;
+        /** The value of a {@code CONST}. */
+        Object constant;
+        /** The variable of a {@code LOAD} or {@code STORE}, or the index of a {@code PARAM}. */
+        int depth;
+        int slot;
+        /** The successors of a {@code JUMP} or {@code BRANCH}, the true one first. */
+        final List<Block> targets = new ArrayList<>();
+        /** The functions a {@code FUNCTION} or {@code CLASS} creates. */
+        final List<Function> functions = new ArrayList<>();
+        /** Set on an index whose range check is known to pass. */
+        boolean inBounds;
+
+        Instr(int id, Op op, ValueType type) {
+            this.id = id;
+            this.op = op;
+            this.type = type;
+        }
+
+        Instr operand(int index) {
+            return operands.get(index);
+        }
+
+        @Override
+        public String toString() {
+            return "v" + id;
+        }
+    }
+
+    static class Block {
+        final int id;
+        final List<Instr> instructions = new ArrayList<>();
+        final List<Block> predecessors = new ArrayList<>();
+
+        Block(int id) {
+            this.id = id;
+        }
+
+        Instr terminator() {
+            if (instructions.isEmpty()) return null;
+            Instr last = instructions.get(instructions.size() - 1);
+            return last.op.isTerminator() ? last : null;
+        }
+
+        List<Block> successors() {
+            Instr terminator = terminator();
+            return terminator != null ? terminator.targets : List.of();
+        }
+
+        /** Removes the edge from a predecessor, with its operand of every phi. */
+        void removePredecessor(Block predecessor) {
+            int index = predecessors.indexOf(predecessor);
+            predecessors.remove(index);
+            for (Instr instr : instructions) {
+                if (instr.op != Op.PHI) break;
+                instr.operands.remove(index);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "b" + id;
+        }
+    }
+
+    static class Function {
+        final String name;
+        /** The declaration, or null for the top level of the script. */
+        final Stmt.Function declaration;
+        /** Whether the locals live in an environment rather than in SSA values. */
+        final boolean hasFrame;
+        final List<Block> blocks = new ArrayList<>();
+        int valueCount;
+        private int blockCount;
+
+        Function(String name, Stmt.Function declaration, boolean hasFrame) {
+            this.name = name;
+            this.declaration = declaration;
+            this.hasFrame = hasFrame;
+        }
+
+        Block entry() {
+            return blocks.get(0);
+        }
+
+        Block newBlock() {
+            Block block = new Block(blockCount++);
+            blocks.add(block);
+            return block;
+        }
+
+        Instr newInstr(Op op, ValueType type) {
+            return new Instr(valueCount++, op, type);
+        }
+
+        /** Makes every user of {@code value} use {@code replacement} instead. */
+        void replaceUses(Instr value, Instr replacement) {
+            for (Block block : blocks) {
+                for (Instr instr : block.instructions) {
+                    instr.operands.replaceAll(operand -> operand == value ? replacement : operand);
+                }
+            }
+        }
+
+        Map<Instr, Integer> useCounts() {
+            Map<Instr, Integer> uses = new HashMap<>();
+            for (Block block : blocks) {
+                for (Instr instr : block.instructions) {
+                    for (Instr operand : instr.operands) uses.merge(operand, 1, Integer::sum);
+                }
+            }
+            return uses;
+        }
+
+        /** The blocks reachable from the entry, each after all its dominators. */
+        List<Block> reversePostorder() {
+            List<Block> order = new ArrayList<>();
+            postorder(entry(), new HashSet<>(), order);
+            Collections.reverse(order);
+            return order;
+        }
+
+        private static void postorder(Block block, Set<Block> visited, List<Block> order) {
+            if (!visited.add(block)) return;
+            for (Block successor : block.successors()) postorder(successor, visited, order);
+            order.add(block);
+        }
+
+        /**
+         * The immediate dominator of every reachable block, computed with the
+         * iterative algorithm of Cooper, Harvey and Kennedy. The entry maps to
+         * itself.
+         */
+        Map<Block, Block> dominators() {
+            List<Block> order = reversePostorder();
+            Map<Block, Integer> index = new HashMap<>();
+            for (int i = 0; i < order.size(); i++) index.put(order.get(i), i);
+
+            Map<Block, Block> idom = new HashMap<>();
+            idom.put(entry(), entry());
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Block block : order.subList(1, order.size())) {
+                    Block dominator = null;
+                    for (Block predecessor : block.predecessors) {
+                        if (!idom.containsKey(predecessor)) continue;
+                        dominator = dominator == null ? predecessor : intersect(predecessor, dominator, idom, index);
+                    }
+                    if (dominator != idom.get(block)) {
+                        idom.put(block, dominator);
+                        changed = true;
+                    }
+                }
+            }
+            return idom;
+        }
+
+        private static Block intersect(Block a, Block b, Map<Block, Block> idom, Map<Block, Integer> index) {
+            while (a != b) {
+                while (index.get(a) > index.get(b)) a = idom.get(a);
+                while (index.get(b) > index.get(a)) b = idom.get(b);
+            }
+            return a;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            print(builder);
+            return builder.toString();
+        }
+
+        private void print(StringBuilder builder) {
+            List<Function> nested = new ArrayList<>();
+            builder.append("function ").append(name).append(":\n");
+            for (Block block : blocks) {
+                builder.append(block);
+                if (!block.predecessors.isEmpty()) builder.append(" <- ").append(block.predecessors);
+                builder.append(":\n");
+                for (Instr instr : block.instructions) {
+                    builder.append("    ").append(format(instr)).append('\n');
+                    nested.addAll(instr.functions);
+                }
+            }
+            for (Function function : nested) {
+                builder.append('\n');
+                function.print(builder);
+            }
+        }
+
+        private static String format(Instr instr) {
+            StringBuilder text = new StringBuilder();
+            if (!instr.op.isTerminator() && instr.op != Op.STORE && instr.op != Op.SET
+                    && instr.op != Op.SET_INDEX) {
+                text.append(instr).append(" = ");
+            }
+            text.append(instr.op.name().toLowerCase());
+            if (instr.inBounds) text.append(" unchecked");
+
+            List<String> arguments = new ArrayList<>();
+            switch (instr.op) {
+                case CONST -> arguments.add(instr.constant instanceof String s
+                        ? '"' + s + '"' : Values.stringify(instr.constant));
+                case PARAM -> arguments.add(Integer.toString(instr.slot));
+                case LOAD, STORE -> arguments.add((instr.depth == Environment.GLOBAL ? "global" : "@" + instr.depth)
+                        + "[" + instr.slot + "]");
+                case GET -> arguments.add(((Expr.Get) instr.site).name.lexeme);
+                case SET -> arguments.add(((Expr.Set) instr.site).name.lexeme);
+                case INVOKE -> arguments.add(((Expr.Get) ((Expr.Call) instr.site).callee).name.lexeme);
+                case FUNCTION, CLASS -> {
+                    for (Function function : instr.functions) arguments.add(function.name);
+                }
+                default -> {}
+            }
+            for (Instr operand : instr.operands) arguments.add(operand.toString());
+            for (Block target : instr.targets) arguments.add(target.toString());
+            if (!arguments.isEmpty()) text.append(' ').append(String.join(", ", arguments));
+            if (instr.type != null) text.append(" : ").append(instr.type);
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lowers a resolved script into {@link Ir}. SSA form is built on the fly with
+ * the algorithm of Braun et al.: a block records the value each local was
+ * last given in it, and a read that misses looks through the predecessors,
+ * placing a phi where they may disagree. Loop headers are sealed once their
+ * back edge is known; until then their phis collect no operands. Phis that
+ * turn out to merge a single value are left for {@link CopyPropagation}.
+ * <p>
+ * Functions without a frame run in the environment they were declared in, so
+ * their {@code LOAD} and {@code STORE} depths are one less than the
+ * resolver's.
+ */
+class IrBuilder implements Expr.Visitor<Ir.Instr>, Stmt.Visitor<Void> {
+    private final Ir.Function function;
+    /** Where a variable declared by the function itself lives. */
+    private final int home;
+
+    private Ir.Block current;
+    private final Map<Ir.Block, Map<Integer, Ir.Instr>> definitions = new HashMap<>();
+    private final Map<Ir.Block, Map<Integer, Ir.Instr>> incompletePhis = new HashMap<>();
+    private final Set<Ir.Block> sealed = new HashSet<>();
+    private final Map<Integer, ValueType> localTypes = new HashMap<>();
+
+    private IrBuilder(Ir.Function function, int home) {
+        this.function = function;
+        this.home = home;
+    }
+
+    static Ir.Function build(List<Stmt> statements) {
+        IrBuilder builder = new IrBuilder(new Ir.Function("<script>", null, true), Environment.GLOBAL);
+        builder.start(builder.function.newBlock());
+        builder.lowerBlock(statements);
+        builder.finish();
+        return builder.function;
+    }
+
+    static Ir.Function build(Stmt.Function declaration, String name) {
+        boolean hasFrame = false;
+        for (Stmt statement : declaration.body) hasFrame |= statement instanceof Stmt.Function;
+
+        IrBuilder builder = new IrBuilder(new Ir.Function(name, declaration, hasFrame), 0);
+        builder.start(builder.function.newBlock());
+        for (int i = 0; i < declaration.params.size(); i++) {
+            Stmt.Var param = declaration.params.get(i);
+            Ir.Instr value = builder.emit(Ir.Op.PARAM, param.type, null);
+            value.slot = i;
+            builder.localTypes.put(param.slot, param.type);
+            builder.store(0, param.slot, value);
+        }
+        builder.lowerBlock(declaration.body);
+        builder.finish();
+        return builder.function;
+    }
+
+    private void finish() {
+        if (current.terminator() == null) emit(Ir.Op.RETURN, null, null);
+    }
+
+    // Blocks and edges.
+
+    /**
+     * Continues in a block whose predecessors are all known, or in a loop
+     * header that {@link #seal} completes later.
+     */
+    private void start(Ir.Block block) {
+        current = block;
+        if (!incompletePhis.containsKey(block)) sealed.add(block);
+    }
+
+    private Ir.Block loopHeader() {
+        Ir.Block header = function.newBlock();
+        incompletePhis.put(header, new HashMap<>());
+        return header;
+    }
+
+    private void seal(Ir.Block block) {
+        for (Map.Entry<Integer, Ir.Instr> phi : incompletePhis.remove(block).entrySet()) {
+            addPhiOperands(phi.getKey(), phi.getValue());
+        }
+        sealed.add(block);
+    }
+
+    private void jump(Ir.Block target) {
+        Ir.Instr jump = emit(Ir.Op.JUMP, null, null);
+        jump.targets.add(target);
+        target.predecessors.add(current);
+    }
+
+    private void branch(Ir.Instr condition, Ir.Block onTrue, Ir.Block onFalse) {
+        Ir.Instr branch = emit(Ir.Op.BRANCH, null, null, condition);
+        branch.targets.add(onTrue);
+        branch.targets.add(onFalse);
+        onTrue.predecessors.add(current);
+        onFalse.predecessors.add(current);
+    }
+
+    private Ir.Instr emit(Ir.Op op, ValueType type, Object site, Ir.Instr... operands) {
+        Ir.Instr instr = function.newInstr(op, type);
+        instr.site = site;
+        instr.operands.addAll(List.of(operands));
+        instr.block = current;
+        current.instructions.add(instr);
+        return instr;
+    }
+
+    private Ir.Instr constant(Object value, ValueType type) {
+        Ir.Instr instr = emit(Ir.Op.CONST, type, null);
+        instr.constant = value;
+        return instr;
+    }
+
+    // Variables.
+
+    private Ir.Instr load(int depth, int slot, ValueType type) {
+        if (depth == 0 && !function.hasFrame) return readVariable(slot, current);
+
+        Ir.Instr load = emit(Ir.Op.LOAD, type, null);
+        load.depth = relative(depth);
+        load.slot = slot;
+        return load;
+    }
+
+    private void store(int depth, int slot, Ir.Instr value) {
+        if (depth == 0 && !function.hasFrame) {
+            definitions.computeIfAbsent(current, block -> new HashMap<>()).put(slot, value);
+            return;
+        }
+
+        Ir.Instr store = emit(Ir.Op.STORE, null, null, value);
+        store.depth = relative(depth);
+        store.slot = slot;
+    }
+
+    private int relative(int depth) {
+        return depth == Environment.GLOBAL || function.hasFrame ? depth : depth - 1;
+    }
+
+    private Ir.Instr readVariable(int slot, Ir.Block block) {
+        Map<Integer, Ir.Instr> values = definitions.get(block);
+        if (values != null && values.containsKey(slot)) return values.get(slot);
+
+        Ir.Instr value;
+        if (!sealed.contains(block)) {
+            value = phi(block, slot);
+            incompletePhis.get(block).put(slot, value);
+        } else if (block.predecessors.size() == 1) {
+            value = readVariable(slot, block.predecessors.get(0));
+        } else {
+            value = phi(block, slot);
+            definitions.computeIfAbsent(block, b -> new HashMap<>()).put(slot, value);
+            addPhiOperands(slot, value);
+        }
+        definitions.computeIfAbsent(block, b -> new HashMap<>()).put(slot, value);
+        return value;
+    }
+
+    private Ir.Instr phi(Ir.Block block, int slot) {
+        Ir.Instr phi = function.newInstr(Ir.Op.PHI, localTypes.get(slot));
+        phi.block = block;
+        block.instructions.add(0, phi);
+        return phi;
+    }
+
+    private void addPhiOperands(int slot, Ir.Instr phi) {
+        for (Ir.Block predecessor : phi.block.predecessors) {
+            phi.operands.add(readVariable(slot, predecessor));
+        }
+    }
+
+    /** Merges the value each predecessor of {@code join} computed into a phi. */
+    private Ir.Instr merge(Ir.Block join, ValueType type, Map<Ir.Block, Ir.Instr> incoming) {
+        Ir.Instr phi = function.newInstr(Ir.Op.PHI, type);
+        phi.block = join;
+        for (Ir.Block predecessor : join.predecessors) phi.operands.add(incoming.get(predecessor));
+        join.instructions.add(0, phi);
+        return phi;
+    }
+
+    // Statements.
+
+    private void lowerBlock(List<Stmt> statements) {
+        for (Stmt statement : statements) statement.accept(this);
+    }
+
+    private Ir.Instr lower(Expr expr) {
+        return expr.accept(this);
+    }
+
+    /** Lowers a condition as jumps, so {@code and}, {@code or} and {@code not} need no values. */
+    private void condition(Expr expr, Ir.Block onTrue, Ir.Block onFalse) {
+        if (expr instanceof Expr.Grouping grouping) {
+            condition(grouping.expression, onTrue, onFalse);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.NOT
+                && neverNone(unary.right)) {
+            condition(unary.right, onFalse, onTrue);
+        } else if (expr instanceof Expr.Logical logical) {
+            Ir.Block right = function.newBlock();
+            if (logical.operator.type == TokenType.AND) {
+                condition(logical.left, right, onFalse);
+            } else {
+                condition(logical.left, onTrue, right);
+            }
+            start(right);
+            condition(logical.right, onTrue, onFalse);
+        } else {
+            branch(lower(expr), onTrue, onFalse);
+        }
+    }
+
+    /** Whether a bool expression has a value, so {@code not} cannot fail on it. */
+    private static boolean neverNone(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) return neverNone(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return unary.operator.type == TokenType.NOT && neverNone(unary.right);
+        return expr instanceof Expr.Binary || expr instanceof Expr.Literal literal && literal.value instanceof Boolean;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        lowerBlock(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        List<Ir.Instr> attributes = new ArrayList<>();
+        List<Ir.Function> methods = new ArrayList<>();
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Function method) {
+                methods.add(build(method, stmt.name.lexeme + "." + method.name.lexeme));
+            } else if (member instanceof Stmt.Var var) {
+                attributes.add(lower(var.initializer));
+            }
+        }
+
+        Ir.Instr klass = emit(Ir.Op.CLASS, null, stmt, attributes.toArray(new Ir.Instr[0]));
+        klass.functions.addAll(methods);
+        store(home, stmt.slot, klass);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        lower(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        Ir.Instr closure = emit(Ir.Op.FUNCTION, null, stmt);
+        closure.functions.add(build(stmt, stmt.name.lexeme));
+        store(home, stmt.slot, closure);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        Ir.Block thenBlock = function.newBlock();
+        Ir.Block elseBlock = function.newBlock();
+        Ir.Block join = stmt.elseBranch != null ? function.newBlock() : elseBlock;
+
+        condition(stmt.condition, thenBlock, elseBlock);
+        start(thenBlock);
+        stmt.thenBranch.accept(this);
+        jump(join);
+        if (stmt.elseBranch != null) {
+            start(elseBlock);
+            stmt.elseBranch.accept(this);
+            jump(join);
+        }
+        start(join);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) {
+            emit(Ir.Op.RETURN, null, stmt, lower(stmt.value));
+        } else {
+            emit(Ir.Op.RETURN, null, stmt);
+        }
+        start(function.newBlock());
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Ir.Instr value = stmt.initializer != null ? lower(stmt.initializer) : constant(null, stmt.type);
+        localTypes.put(stmt.slot, stmt.type);
+        store(home, stmt.slot, value);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        Ir.Block header = loopHeader();
+        Ir.Block body = function.newBlock();
+        Ir.Block exit = function.newBlock();
+
+        jump(header);
+        start(header);
+        condition(stmt.condition, body, exit);
+        start(body);
+        stmt.body.accept(this);
+        jump(header);
+        seal(header);
+        start(exit);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        Ir.Instr iterator = emit(Ir.Op.ITERATE, null, stmt, lower(stmt.iterable));
+        Ir.Block header = loopHeader();
+        Ir.Block body = function.newBlock();
+        Ir.Block exit = function.newBlock();
+
+        jump(header);
+        start(header);
+        branch(emit(Ir.Op.HAS_NEXT, new BoolType(), null, iterator), body, exit);
+        start(body);
+        store(stmt.id.depth, stmt.id.slot, emit(Ir.Op.NEXT, stmt.id.inferredType, null, iterator));
+        stmt.body.accept(this);
+        jump(header);
+        seal(header);
+        start(exit);
+        return null;
+    }
+
+    @Override
+    public Void visitPassStmt(Stmt.Pass stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitGlobalStmt(Stmt.Global stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return null;
+    }
+
+    // Expressions.
+
+    @Override
+    public Ir.Instr visitAssignExpr(Expr.Assign expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Ir.Instr visitBinaryExpr(Expr.Binary expr) {
+        Ir.Instr left = lower(expr.left);
+        Ir.Instr right = lower(expr.right);
+        Ir.Op op = switch (expr.operator.type) {
+            case PLUS -> Ir.Op.ADD;
+            case MINUS -> Ir.Op.SUB;
+            case STAR -> Ir.Op.MUL;
+            case DOUBLE_SLASH -> Ir.Op.DIV;
+            case PERCENT -> Ir.Op.MOD;
+            case LESS -> Ir.Op.LT;
+            case LESS_EQUAL -> Ir.Op.LE;
+            case GREATER -> Ir.Op.GT;
+            case GREATER_EQUAL -> Ir.Op.GE;
+            case EQUAL_EQUAL -> Ir.Op.EQ;
+            case BANG_EQUAL -> Ir.Op.NE;
+            default -> Ir.Op.IS;
+        };
+        return emit(op, expr.inferredType, expr, left, right);
+    }
+
+    @Override
+    public Ir.Instr visitCallExpr(Expr.Call expr) {
+        List<Ir.Instr> operands = new ArrayList<>();
+        Ir.Op op = Ir.Op.CALL;
+        if (expr.callee instanceof Expr.Get get) {
+            operands.add(emit(Ir.Op.RECEIVER, get.object.inferredType, get, lower(get.object)));
+            op = Ir.Op.INVOKE;
+        } else {
+            operands.add(lower(expr.callee));
+        }
+        for (Expr argument : expr.arguments) operands.add(lower(argument));
+        return emit(op, expr.inferredType, expr, operands.toArray(new Ir.Instr[0]));
+    }
+
+    @Override
+    public Ir.Instr visitGetExpr(Expr.Get expr) {
+        return emit(Ir.Op.GET, expr.inferredType, expr, lower(expr.object));
+    }
+
+    @Override
+    public Ir.Instr visitGroupingExpr(Expr.Grouping expr) {
+        return lower(expr.expression);
+    }
+
+    @Override
+    public Ir.Instr visitLiteralExpr(Expr.Literal expr) {
+        return constant(expr.value, expr.inferredType);
+    }
+
+    @Override
+    public Ir.Instr visitLogicalExpr(Expr.Logical expr) {
+        Ir.Instr left = lower(expr.left);
+        Ir.Block right = function.newBlock();
+        Ir.Block join = function.newBlock();
+        Map<Ir.Block, Ir.Instr> incoming = new HashMap<>();
+
+        incoming.put(current, left);
+        if (expr.operator.type == TokenType.AND) {
+            branch(left, right, join);
+        } else {
+            branch(left, join, right);
+        }
+        start(right);
+        Ir.Instr value = lower(expr.right);
+        incoming.put(current, value);
+        jump(join);
+        start(join);
+        return merge(join, expr.inferredType, incoming);
+    }
+
+    @Override
+    public Ir.Instr visitTernaryExpr(Expr.Ternary expr) {
+        Ir.Block onTrue = function.newBlock();
+        Ir.Block onFalse = function.newBlock();
+        Ir.Block join = function.newBlock();
+        Map<Ir.Block, Ir.Instr> incoming = new HashMap<>();
+
+        condition(expr.condition, onTrue, onFalse);
+        start(onTrue);
+        incoming.put(current, lower(expr.onTrue));
+        jump(join);
+        start(onFalse);
+        incoming.put(current, lower(expr.onFalse));
+        jump(join);
+        start(join);
+        return merge(join, expr.inferredType, incoming);
+    }
+
+    @Override
+    public Ir.Instr visitListingExpr(Expr.Listing expr) {
+        if (expr.elements == null) return emit(Ir.Op.NONE_LIST, expr.inferredType, expr);
+
+        List<Ir.Instr> elements = new ArrayList<>();
+        for (Expr element : expr.elements) elements.add(lower(element));
+        return emit(Ir.Op.LIST, expr.inferredType, expr, elements.toArray(new Ir.Instr[0]));
+    }
+
+    @Override
+    public Ir.Instr visitIndexExpr(Expr.Index expr) {
+        Ir.Instr listing = lower(expr.listing);
+        Ir.Instr id = lower(expr.id);
+        return emit(Ir.Op.INDEX, expr.inferredType, expr, listing, id);
+    }
+
+    @Override
+    public Ir.Instr visitListSetExpr(Expr.ListSet expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Ir.Instr visitLenExpr(Expr.Len expr) {
+        return emit(Ir.Op.LEN, expr.inferredType, expr, lower(expr.expression));
+    }
+
+    @Override
+    public Ir.Instr visitInputExpr(Expr.Input expr) {
+        return emit(Ir.Op.INPUT, expr.inferredType, expr);
+    }
+
+    @Override
+    public Ir.Instr visitSetExpr(Expr.Set expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Ir.Instr visitSelfExpr(Expr.Self expr) {
+        return load(expr.depth, expr.slot, expr.inferredType);
+    }
+
+    @Override
+    public Ir.Instr visitUnaryExpr(Expr.Unary expr) {
+        Ir.Op op = expr.operator.type == TokenType.MINUS ? Ir.Op.NEG : Ir.Op.NOT;
+        return emit(op, expr.inferredType, expr, lower(expr.right));
+    }
+
+    @Override
+    public Ir.Instr visitVariableExpr(Expr.Variable expr) {
+        return load(expr.depth, expr.slot, expr.inferredType);
+    }
+
+    @Override
+    public Ir.Instr visitPrintExpr(Expr.Print expr) {
+        return emit(Ir.Op.PRINT, expr.inferredType, expr, lower(expr.expression));
+    }
+
+    @Override
+    public Ir.Instr visitMultiAssignExpr(Expr.MultiAssign multiAssign) {
+        Ir.Instr value = lower(multiAssign.value);
+        for (Expr target : multiAssign.targets) {
+            if (target instanceof Expr.Assign expr) {
+                Expr.Variable variable = expr.target;
+                boolean local = variable.depth == 0 && !function.hasFrame;
+                store(variable.depth, variable.slot,
+                        local ? emit(Ir.Op.COPY, localTypes.get(variable.slot), null, value) : value);
+            } else if (target instanceof Expr.Set expr) {
+                emit(Ir.Op.SET, null, expr, lower(expr.object), value);
+            } else if (target instanceof Expr.ListSet expr) {
+                Ir.Instr id = lower(expr.id);
+                Ir.Instr listing = lower(expr.listing);
+                emit(Ir.Op.SET_INDEX, null, expr, listing, id, value);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,41 @@
+package org.chocopy;
+
+import java.util.List;
+
+/**
+ * A function or method at runtime in the IR engine: its optimized {@link Ir}
+ * and the environment it was declared in.
+ */
+class IrFunction implements ChocoPyCallable {
+    final Ir.Function code;
+    final boolean isInitializer;
+    final Environment closure;
+    private final IrInterpreter engine;
+
+    IrFunction(IrInterpreter engine, Ir.Function code, Environment closure, boolean isInitializer) {
+        this.engine = engine;
+        this.code = code;
+        this.closure = closure;
+        this.isInitializer = isInitializer;
+    }
+
+    @Override
+    public int arity() {
+        List<Stmt.Var> params = code.declaration.params;
+        if (params.size() > 0 && params.get(0).name.lexeme.equals("self")) {
+            return params.size() - 1;
+        } else {
+            return params.size();
+        }
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return engine.invoke(this, arguments.toArray());
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + code.declaration.name.lexeme + ">";
+    }
+}
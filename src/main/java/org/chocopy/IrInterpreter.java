@@ -0,0 +1,306 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Execution engine that lowers the script to {@link Ir}, optimizes it with the
+ * {@link PassManager#standard() standard passes} and interprets the result.
+ * Each call keeps the values of its instructions in an array indexed by their
+ * ids; phis are assigned together when control enters their block.
+ *
+ * <p>Values, classes, instances and builtins are shared with the tree-walking
+ * {@link Interpreter}, so the results and errors are the same.
+ */
+class IrInterpreter {
+    private final Interpreter interpreter = new Interpreter();
+    private final Environment globals = interpreter.globals;
+
+    void interpret(List<Stmt> statements) {
+        try {
+            Ir.Function script = PassManager.standard().run(IrBuilder.build(statements));
+            execute(script, globals, new Object[0]);
+        } catch (Throwable e) {
+            Interpreter.reportRuntimeError(e);
+        }
+    }
+
+    Object invoke(IrFunction function, Object[] arguments) {
+        Environment environment = function.code.hasFrame
+                ? new Environment(function.closure, function.code.declaration.frameSize)
+                : function.closure;
+        return execute(function.code, environment, arguments);
+    }
+
+    private Object execute(Ir.Function function, Environment environment, Object[] arguments) {
+        Object[] values = new Object[function.valueCount];
+        Ir.Block previous = null;
+        Ir.Block block = function.entry();
+
+        while (true) {
+            List<Ir.Instr> instructions = block.instructions;
+            int i = previous != null ? enter(block, previous, values) : 0;
+            for (; i < instructions.size(); i++) {
+                Ir.Instr instr = instructions.get(i);
+                switch (instr.op) {
+                    case JUMP -> {
+                        previous = block;
+                        block = instr.targets.get(0);
+                    }
+                    case BRANCH -> {
+                        previous = block;
+                        block = instr.targets.get(Values.isTruthy(values[instr.operand(0).id]) ? 0 : 1);
+                    }
+                    case RETURN -> {
+                        return instr.operands.isEmpty() ? null : values[instr.operand(0).id];
+                    }
+                    default -> values[instr.id] = evaluate(instr, values, environment, arguments);
+                }
+            }
+        }
+    }
+
+    /** Assigns the phis of a block the values flowing in from its predecessor, all at once. */
+    private static int enter(Ir.Block block, Ir.Block previous, Object[] values) {
+        List<Ir.Instr> instructions = block.instructions;
+        int count = 0;
+        while (count < instructions.size() && instructions.get(count).op == Ir.Op.PHI) count++;
+        if (count == 0) return 0;
+
+        int edge = block.predecessors.indexOf(previous);
+        if (count == 1) {
+            Ir.Instr phi = instructions.get(0);
+            values[phi.id] = values[phi.operand(edge).id];
+            return 1;
+        }
+        Object[] incoming = new Object[count];
+        for (int i = 0; i < count; i++) incoming[i] = values[instructions.get(i).operand(edge).id];
+        for (int i = 0; i < count; i++) values[instructions.get(i).id] = incoming[i];
+        return count;
+    }
+
+    private Object evaluate(Ir.Instr instr, Object[] values, Environment environment, Object[] arguments) {
+        switch (instr.op) {
+            case CONST: return instr.constant;
+            case PARAM: return arguments[instr.slot];
+            case COPY: return values[instr.operand(0).id];
+            case LOAD:
+                if (instr.depth == Environment.GLOBAL) return globals.get(instr.slot);
+                return environment.getAt(instr.depth, instr.slot);
+            case STORE: {
+                Object value = values[instr.operand(0).id];
+                if (instr.depth == Environment.GLOBAL) {
+                    globals.define(instr.slot, value);
+                } else {
+                    environment.assignAt(instr.depth, instr.slot, value);
+                }
+                return null;
+            }
+            case ADD: case SUB: case MUL: case DIV: case MOD:
+            case LT: case LE: case GT: case GE: case EQ: case NE: case IS:
+                return binary(instr, values[instr.operand(0).id], values[instr.operand(1).id]);
+            case NEG: case NOT:
+                return Values.unary((Expr.Unary) instr.site, values[instr.operand(0).id]);
+            case LIST: {
+                List<Object> list = Values.list(instr.type, instr.operands.size());
+                for (Ir.Instr element : instr.operands) list.add(values[element.id]);
+                return list;
+            }
+            case NONE_LIST:
+                ChocoPy.exitCode = 4;
+                throw new RuntimeError(((Expr) instr.site).line, "operation on '<None>'", "RuntimeError");
+            case INDEX:
+                return index(instr, values[instr.operand(0).id], values[instr.operand(1).id]);
+            case SET_INDEX:
+                setIndex(instr, values[instr.operand(0).id], values[instr.operand(1).id], values[instr.operand(2).id]);
+                return null;
+            case LEN:
+                return Values.len((Expr.Len) instr.site, values[instr.operand(0).id]);
+            case GET: {
+                Expr.Get get = (Expr.Get) instr.site;
+                return Values.receiver(get, values[instr.operand(0).id]).get(get.name, get.cache);
+            }
+            case SET: {
+                Expr.Set set = (Expr.Set) instr.site;
+                Values.receiver(set, values[instr.operand(0).id]).set(set.name, values[instr.operand(1).id], set.cache);
+                return null;
+            }
+            case RECEIVER:
+                return Values.receiver((Expr.Get) instr.site, values[instr.operand(0).id]);
+            case CALL:
+                return call(instr, values);
+            case INVOKE:
+                return invokeMethod(instr, values);
+            case PRINT:
+                System.out.println(Values.stringify(values[instr.operand(0).id]));
+                return null;
+            case INPUT:
+                return interpreter.input();
+            case FUNCTION:
+                return new IrFunction(this, instr.functions.get(0), environment, false);
+            case CLASS:
+                return defineClass(instr, values, environment);
+            case ITERATE:
+                return iterate((Stmt.For) instr.site, values[instr.operand(0).id]);
+            case HAS_NEXT:
+                return ((Iterator<?>) values[instr.operand(0).id]).hasNext();
+            case NEXT:
+                return ((Iterator<?>) values[instr.operand(0).id]).next();
+            default:
+                throw new IllegalStateException("Unexpected instruction " + instr.op);
+        }
+    }
+
+    private static Object binary(Ir.Instr instr, Object left, Object right) {
+        Expr.Binary expr = (Expr.Binary) instr.site;
+        if (left instanceof Integer a && right instanceof Integer b) {
+            switch (instr.op) {
+                case ADD: return a + b;
+                case SUB: return a - b;
+                case MUL: return a * b;
+                case DIV: return Values.divide(expr, a, b);
+                case MOD: return Values.modulo(expr, a, b);
+                case LT: return a < b;
+                case LE: return a <= b;
+                case GT: return a > b;
+                case GE: return a >= b;
+                case EQ: return a.intValue() == b.intValue();
+                case NE: return a.intValue() != b.intValue();
+                default: break;
+            }
+        }
+        switch (instr.op) {
+            case EQ: return Values.isEqual(left, right);
+            case NE: return !Values.isEqual(left, right);
+            case IS: return left == right;
+            case ADD:
+                if (left instanceof String a && right instanceof String b) return a + b;
+                return Values.add(expr, left, right);
+            default: return Values.binary(expr, left, right);
+        }
+    }
+
+    private static Object index(Ir.Instr instr, Object listObject, Object idObject) {
+        if (instr.inBounds) {
+            try {
+                return ((List<?>) listObject).get((Integer) idObject);
+            } catch (IndexOutOfBoundsException e) {
+                return Values.index((Expr.Index) instr.site, listObject, idObject);
+            }
+        }
+        if (idObject instanceof Integer index && index >= 0) {
+            if (listObject instanceof List<?> list && index < list.size()) return list.get(index);
+            if (listObject instanceof String str && index < str.length()) return Values.character(str.charAt(index));
+        }
+        return Values.index((Expr.Index) instr.site, listObject, idObject);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setIndex(Ir.Instr instr, Object listObject, Object idObject, Object value) {
+        if (instr.inBounds) {
+            try {
+                ((List<Object>) listObject).set((Integer) idObject, value);
+                return;
+            } catch (IndexOutOfBoundsException e) {
+                Values.setIndex((Expr.ListSet) instr.site, listObject, idObject, value);
+            }
+        }
+        if (listObject instanceof List<?> && idObject instanceof Integer index
+                && index >= 0 && index < ((List<?>) listObject).size()) {
+            ((List<Object>) listObject).set(index, value);
+        } else {
+            Values.setIndex((Expr.ListSet) instr.site, listObject, idObject, value);
+        }
+    }
+
+    private static Iterator<?> iterate(Stmt.For stmt, Object iterable) {
+        Values.checkIterable(stmt, iterable);
+        if (iterable instanceof List<?> list) return list.iterator();
+        return ((String) iterable).chars().mapToObj(c -> Values.character((char) c)).iterator();
+    }
+
+    private Object call(Ir.Instr instr, Object[] values) {
+        Expr.Call expr = (Expr.Call) instr.site;
+        Object callee = values[instr.operand(0).id];
+        Object[] arguments = arguments(instr, values, null);
+
+        if (callee instanceof IrFunction function) {
+            checkArity(expr, function.arity(), arguments.length);
+            return invoke(function, arguments);
+        }
+
+        if (callee instanceof ChocoPyClass klass
+                && klass.findMethod("__init__") instanceof IrFunction initializer) {
+            checkArity(expr, initializer.arity(), arguments.length);
+            Object instance = klass.allocate();
+            invoke(initializer, arguments(instr, values, instance));
+            return instance;
+        }
+
+        return interpreter.call(expr, callee, Arrays.asList(arguments));
+    }
+
+    private Object invokeMethod(Ir.Instr instr, Object[] values) {
+        Expr.Call expr = (Expr.Call) instr.site;
+        Expr.Get get = (Expr.Get) expr.callee;
+        ChocoPyInstance receiver = (ChocoPyInstance) values[instr.operand(0).id];
+        Object member = get.methodIndex >= 0
+                ? receiver.klass.method(get.methodIndex)
+                : get.cache.lookup(receiver.klass, get.name.lexeme);
+
+        if (member instanceof IrFunction method) {
+            checkArity(expr, method.arity(), instr.operands.size() - 1);
+            Object value = invoke(method, arguments(instr, values, receiver));
+            return method.isInitializer ? receiver : value;
+        }
+        return interpreter.call(expr, receiver.get(get.name, get.cache),
+                Arrays.asList(arguments(instr, values, null)));
+    }
+
+    /** The argument values of a call, after the receiver if there is one. */
+    private static Object[] arguments(Ir.Instr instr, Object[] values, Object receiver) {
+        int offset = receiver != null ? 1 : 0;
+        Object[] arguments = new Object[instr.operands.size() - 1 + offset];
+        if (receiver != null) arguments[0] = receiver;
+        for (int i = 1; i < instr.operands.size(); i++) {
+            arguments[i - 1 + offset] = values[instr.operand(i).id];
+        }
+        return arguments;
+    }
+
+    private static void checkArity(Expr.Call expr, int arity, int arguments) {
+        if (arguments != arity) {
+            throw new RuntimeError(expr.paren,
+                    String.format("expected %d arguments, but got %d", arity, arguments),
+                    "TypeError");
+        }
+    }
+
+    private ChocoPyClass defineClass(Ir.Instr instr, Object[] values, Environment environment) {
+        Stmt.Class stmt = (Stmt.Class) instr.site;
+        Object superclass = null;
+        if (stmt.superclass != null) {
+            superclass = globals.get(stmt.superclassSlot);
+            if (!(superclass instanceof ChocoPyClass)) {
+                throw new RuntimeError(stmt.superclass, "superclass must be a class", "TypeError");
+            }
+        }
+
+        Map<String, ChocoPyCallable> methods = new LinkedHashMap<>();
+        for (Ir.Function method : instr.functions) {
+            String name = method.declaration.name.lexeme;
+            methods.put(name, new IrFunction(this, method, environment, name.equals("__init__")));
+        }
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        int next = 0;
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Var var) attributes.put(var.name.lexeme, values[instr.operand(next++).id]);
+        }
+
+        return new ChocoPyClass(stmt.name.lexeme, (ChocoPyClass) superclass, methods, attributes, stmt.methodTable);
+    }
+}
@@ -0,0 +1,7 @@
+package org.chocopy;
+
+/** A transformation of one function of the {@link Ir}, run by the {@link PassManager}. */
+interface IrPass {
+    /** Rewrites the function in place and tells whether anything changed. */
+    boolean run(Ir.Function function);
+}
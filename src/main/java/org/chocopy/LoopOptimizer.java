@@ -0,0 +1,399 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Moves work out of loops, after the {@link Optimizer} has folded constants.
+ * <p>
+ * Loop-invariant expressions are computed once into a temporary before the
+ * loop. Any invariant expression that cannot fail and has no side effects is
+ * hoisted. Expressions that may fail, such as {@code len(xs)}, an attribute
+ * read or a division, are hoisted only from a while condition, and only when
+ * nothing that could fail runs before them in it. The condition is checked
+ * before the first iteration anyway, so such an error is still raised at the
+ * same point.
+ * <p>
+ * In while loops, a variable stepped by a constant once per iteration is an
+ * induction variable. Its products with constants are kept in temporaries
+ * that are advanced by additions next to the step.
+ * <p>
+ * What may change inside a loop is worked out from the loop's own code. A
+ * call may assign globals and variables captured by nested functions, and may
+ * write attributes and list elements. So when the loop makes calls, only
+ * locals of a function without nested functions count as invariant.
+ * Temporaries are declared at the top of the enclosing function or script.
+ */
+class LoopOptimizer extends Optimizer {
+    private static final int NONE = 0;
+    private static final int SAFE = 1;
+    private static final int FAILING = 2;
+
+    private Stmt.Function function;
+    private List<Stmt.Var> temporaries = new ArrayList<>();
+    private int nextGlobalSlot;
+    private int counter;
+
+    @Override
+    List<Stmt> optimize(List<Stmt> statements) {
+        nextGlobalSlot = Interpreter.BUILTINS.size();
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var var) nextGlobalSlot = Math.max(nextGlobalSlot, var.slot + 1);
+            if (statement instanceof Stmt.Function fun) nextGlobalSlot = Math.max(nextGlobalSlot, fun.slot + 1);
+            if (statement instanceof Stmt.Class klass) nextGlobalSlot = Math.max(nextGlobalSlot, klass.slot + 1);
+        }
+
+        super.optimize(statements);
+        statements.addAll(0, temporaries);
+        return statements;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        Stmt.Function enclosing = function;
+        List<Stmt.Var> enclosingTemporaries = temporaries;
+        try {
+            function = stmt;
+            temporaries = new ArrayList<>();
+            super.visitFunctionStmt(stmt);
+            stmt.body.addAll(0, temporaries);
+        } finally {
+            function = enclosing;
+            temporaries = enclosingTemporaries;
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        if (!(super.visitWhileStmt(stmt) instanceof Stmt.While loop)) return null;
+
+        Effects effects = new Effects(loop.condition, loop.body);
+        Map<Expr, Expr> replacements = new IdentityHashMap<>();
+        List<Stmt> preheader = new ArrayList<>();
+
+        reduceStrength(loop, effects, replacements, preheader);
+        hoistFromCondition(loop.condition, effects, replacements, preheader);
+        walkStatement(loop.body, expr -> hoistSafe(expr, effects, replacements, preheader));
+
+        return rewrite(loop, preheader, replacements);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Stmt.For loop = (Stmt.For) super.visitForStmt(stmt);
+
+        Effects effects = new Effects(null, loop.body);
+        effects.assign(loop.id);
+        Map<Expr, Expr> replacements = new IdentityHashMap<>();
+        List<Stmt> preheader = new ArrayList<>();
+
+        walkStatement(loop.body, expr -> hoistSafe(expr, effects, replacements, preheader));
+
+        return rewrite(loop, preheader, replacements);
+    }
+
+    private Stmt rewrite(Stmt loop, List<Stmt> preheader, Map<Expr, Expr> replacements) {
+        if (preheader.isEmpty()) return loop;
+
+        Optimizer substitution = new Optimizer() {
+            @Override
+            Expr optimize(Expr expr) {
+                Expr replacement = replacements.get(expr);
+                return replacement != null ? replacement : super.optimize(expr);
+            }
+        };
+        preheader.add(substitution.optimize(loop));
+        return new Stmt.Block(preheader);
+    }
+
+    /**
+     * Replaces {@code i * k} by a temporary for every induction variable
+     * {@code i} stepped by {@code i = i + c} at the top level of the body, and
+     * adds {@code t = t + c * k} right after the step.
+     */
+    private void reduceStrength(Stmt.While loop, Effects effects,
+                                Map<Expr, Expr> replacements, List<Stmt> preheader) {
+        if (!(loop.body instanceof Stmt.Block body)) return;
+
+        for (int i = 0; i < body.statements.size(); i++) {
+            Expr.MultiAssign step = inductionStep(body.statements.get(i));
+            if (step == null) continue;
+            Expr.Variable variable = ((Expr.Assign) step.targets.get(0)).target;
+            if (effects.assignments(variable) != 1 || !effects.invariant(variable, this)) continue;
+
+            Expr.Binary increment = (Expr.Binary) step.value;
+            int stride = (int) (increment.left instanceof Expr.Literal ? constant(increment.left) : constant(increment.right));
+            if (increment.operator.type == TokenType.MINUS) stride = -stride;
+
+            List<Expr> uses = new ArrayList<>();
+            Consumer<Expr> collect = expr -> walkExpr(expr, use -> {
+                if (product(use, variable) != null) uses.add(use);
+            });
+            collect.accept(loop.condition);
+            walkStatement(body, collect);
+
+            Map<Integer, Expr.Variable> products = new HashMap<>();
+            for (Expr use : uses) {
+                int factor = product(use, variable);
+                Expr.Variable temporary = products.get(factor);
+                if (temporary == null) {
+                    temporary = temporary(use.inferredType);
+                    effects.assign(temporary);
+                    products.put(factor, temporary);
+                    preheader.add(assign(temporary, use, use.line));
+                    body.statements.add(i + 1, assign(temporary, add(temporary, increment, stride * factor), step.line));
+                }
+                replacements.put(use, reference(temporary, use.line));
+            }
+            i += products.size();
+        }
+    }
+
+    /** Returns the assignment if the statement is {@code i = i + c} or {@code i = i - c}. */
+    private static Expr.MultiAssign inductionStep(Stmt stmt) {
+        if (!(stmt instanceof Stmt.Expression expression)
+                || !(expression.expression instanceof Expr.MultiAssign assign)
+                || assign.targets.size() != 1
+                || !(assign.targets.get(0) instanceof Expr.Assign target)
+                || !(assign.value instanceof Expr.Binary binary)
+                || !(binary.inferredType instanceof IntType)) {
+            return null;
+        }
+
+        if (binary.operator.type == TokenType.PLUS) {
+            if (sameVariable(binary.left, target.target) && constant(binary.right) instanceof Integer) return assign;
+            if (sameVariable(binary.right, target.target) && constant(binary.left) instanceof Integer) return assign;
+        } else if (binary.operator.type == TokenType.MINUS) {
+            if (sameVariable(binary.left, target.target) && constant(binary.right) instanceof Integer) return assign;
+        }
+        return null;
+    }
+
+    /** Returns {@code k} if the expression is {@code variable * k} or {@code k * variable}. */
+    private static Integer product(Expr expr, Expr.Variable variable) {
+        if (!(expr instanceof Expr.Binary binary) || binary.operator.type != TokenType.STAR
+                || !(binary.inferredType instanceof IntType)) {
+            return null;
+        }
+        if (sameVariable(binary.left, variable) && constant(binary.right) instanceof Integer factor) return factor;
+        if (sameVariable(binary.right, variable) && constant(binary.left) instanceof Integer factor) return factor;
+        return null;
+    }
+
+    private static boolean sameVariable(Expr expr, Expr.Variable variable) {
+        return expr instanceof Expr.Variable other && other.depth == variable.depth && other.slot == variable.slot;
+    }
+
+    private static Expr add(Expr.Variable temporary, Expr.Binary increment, int delta) {
+        Token plus = new Token(TokenType.PLUS, "+", null, increment.operator.line);
+        Expr.Binary sum = copy(increment, new Expr.Binary(reference(temporary, increment.line), plus,
+                literal(increment, delta)));
+        sum.inferredType = new IntType();
+        return sum;
+    }
+
+    /**
+     * Hoists invariant parts of a while condition. Parts that may fail are
+     * hoisted while everything evaluated before them cannot fail.
+     */
+    private void hoistFromCondition(Expr condition, Effects effects,
+                                    Map<Expr, Expr> replacements, List<Stmt> preheader) {
+        boolean[] clean = {true};
+        hoistFromCondition(condition, true, clean, effects, replacements, preheader);
+    }
+
+    private void hoistFromCondition(Expr expr, boolean always, boolean[] clean, Effects effects,
+                                    Map<Expr, Expr> replacements, List<Stmt> preheader) {
+        if (replacements.containsKey(expr)) return;
+
+        int kind = kind(expr, effects);
+        if (kind == SAFE || kind == FAILING && always && clean[0]) {
+            if (worthHoisting(expr)) hoist(expr, replacements, preheader);
+            return;
+        }
+
+        List<Expr> children = children(expr);
+        boolean conditional = expr instanceof Expr.Logical || expr instanceof Expr.Ternary;
+        for (int i = 0; i < children.size(); i++) {
+            boolean evaluated = always && (!conditional || i == 0);
+            hoistFromCondition(children.get(i), evaluated, clean, effects, replacements, preheader);
+        }
+        if (operation(expr, effects) != SAFE) clean[0] = false;
+    }
+
+    private void hoistSafe(Expr expr, Effects effects, Map<Expr, Expr> replacements, List<Stmt> preheader) {
+        if (replacements.containsKey(expr)) return;
+
+        if (kind(expr, effects) == SAFE && worthHoisting(expr)) {
+            hoist(expr, replacements, preheader);
+            return;
+        }
+        for (Expr child : children(expr)) {
+            hoistSafe(child, effects, replacements, preheader);
+        }
+    }
+
+    private void hoist(Expr expr, Map<Expr, Expr> replacements, List<Stmt> preheader) {
+        Expr.Variable temporary = temporary(expr.inferredType);
+        preheader.add(assign(temporary, expr, expr.line));
+        replacements.put(expr, reference(temporary, expr.line));
+    }
+
+    private static boolean worthHoisting(Expr expr) {
+        if (expr instanceof Expr.Grouping grouping) return worthHoisting(grouping.expression);
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Variable || expr instanceof Expr.Self) return false;
+        return expr.inferredType instanceof IntType
+                || expr.inferredType instanceof BoolType
+                || expr.inferredType instanceof StrType;
+    }
+
+    /**
+     * Whether an expression gives the same value on every iteration: NONE if
+     * it may not, SAFE if it also cannot fail, FAILING if it may fail.
+     */
+    private int kind(Expr expr, Effects effects) {
+        if (expr instanceof Expr.Variable variable) {
+            return effects.assignments(variable) == 0 && effects.invariant(variable, this) ? SAFE : NONE;
+        } else if (expr instanceof Expr.Self self) {
+            return !effects.calls || callSafe(self.depth) ? SAFE : NONE;
+        }
+
+        int kind = operation(expr, effects);
+        for (Expr child : children(expr)) {
+            if (kind == NONE) break;
+            int operand = kind(child, effects);
+            kind = operand == NONE ? NONE : Math.max(kind, operand);
+        }
+        return kind;
+    }
+
+    /**
+     * What evaluating the node itself does, given its operands: NONE if the
+     * result may differ between iterations or the node has side effects.
+     */
+    private static int operation(Expr expr, Effects effects) {
+        if (expr instanceof Expr.Literal || expr instanceof Expr.Grouping || expr instanceof Expr.Variable
+                || expr instanceof Expr.Self || expr instanceof Expr.Unary
+                || expr instanceof Expr.Logical || expr instanceof Expr.Ternary) {
+            return SAFE;
+        } else if (expr instanceof Expr.Binary binary) {
+            ValueType left = binary.left.inferredType;
+            ValueType right = binary.right.inferredType;
+            switch (binary.operator.type) {
+                case IS:
+                    return SAFE;
+                case DOUBLE_SLASH:
+                case PERCENT:
+                    return FAILING;
+                case PLUS:
+                    return left instanceof IntType && right instanceof IntType
+                            || left instanceof StrType && right instanceof StrType ? SAFE : NONE;
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    if (left instanceof StrType && right instanceof StrType
+                            || left instanceof BoolType && right instanceof BoolType) {
+                        return SAFE;
+                    }
+                    return left instanceof IntType && right instanceof IntType ? SAFE : NONE;
+                default:
+                    return left instanceof IntType && right instanceof IntType ? SAFE : NONE;
+            }
+        } else if (expr instanceof Expr.Len) {
+            return effects.calls ? NONE : FAILING;
+        } else if (expr instanceof Expr.Get get) {
+            return effects.calls || effects.fields.contains(get.name.lexeme) ? NONE : FAILING;
+        } else if (expr instanceof Expr.Index) {
+            return effects.calls || effects.listWrites ? NONE : FAILING;
+        }
+        return NONE;
+    }
+
+    boolean callSafe(int depth) {
+        return depth == 0 && function != null && !hasNestedFunctions(function);
+    }
+
+    private static boolean hasNestedFunctions(Stmt.Function function) {
+        return function.body.stream().anyMatch(stmt -> stmt instanceof Stmt.Function);
+    }
+
+    private Expr.Variable temporary(ValueType type) {
+        Token name = new Token(TokenType.IDSTRING, "$t" + counter++, null, -1);
+        Stmt.Var var = new Stmt.Var(name, type, defaultValue(type));
+        var.slot = function == null ? nextGlobalSlot++ : function.frameSize++;
+        temporaries.add(var);
+
+        Expr.Variable variable = new Expr.Variable(name);
+        variable.depth = function == null ? Environment.GLOBAL : 0;
+        variable.slot = var.slot;
+        variable.inferredType = type;
+        return variable;
+    }
+
+    private static Expr.Literal defaultValue(ValueType type) {
+        Expr.Literal literal = new Expr.Literal(type instanceof IntType ? (Object) 0
+                : type instanceof BoolType ? (Object) false : "");
+        literal.inferredType = type;
+        return literal;
+    }
+
+    /** What the code of a loop may change while it runs. */
+    private static class Effects {
+        final Map<String, Integer> assignments = new HashMap<>();
+        final Set<String> fields = new HashSet<>();
+        boolean calls;
+        boolean listWrites;
+
+        Effects(Expr condition, Stmt body) {
+            Consumer<Expr> scan = expr -> walkExpr(expr, this::scan);
+            if (condition != null) scan.accept(condition);
+            walkStatement(body, scan);
+            scanLoops(body);
+        }
+
+        private void scanLoops(Stmt stmt) {
+            if (stmt instanceof Stmt.Block block) {
+                block.statements.forEach(this::scanLoops);
+            } else if (stmt instanceof Stmt.If ifStmt) {
+                scanLoops(ifStmt.thenBranch);
+                if (ifStmt.elseBranch != null) scanLoops(ifStmt.elseBranch);
+            } else if (stmt instanceof Stmt.While whileStmt) {
+                scanLoops(whileStmt.body);
+            } else if (stmt instanceof Stmt.For forStmt) {
+                assign(forStmt.id);
+                scanLoops(forStmt.body);
+            }
+        }
+
+        private void scan(Expr expr) {
+            if (expr instanceof Expr.Assign assign) {
+                assign(assign.target);
+            } else if (expr instanceof Expr.Set set) {
+                fields.add(set.name.lexeme);
+            } else if (expr instanceof Expr.ListSet) {
+                listWrites = true;
+            } else if (expr instanceof Expr.Call) {
+                calls = true;
+            }
+        }
+
+        void assign(Expr.Variable variable) {
+            assignments.merge(variable.depth + ":" + variable.slot, 1, Integer::sum);
+        }
+
+        int assignments(Expr.Variable variable) {
+            return assignments.getOrDefault(variable.depth + ":" + variable.slot, 0);
+        }
+
+        /** Whether calls made by the loop cannot assign the variable. */
+        boolean invariant(Expr.Variable variable, LoopOptimizer optimizer) {
+            return !calls || optimizer.callSafe(variable.depth);
+        }
+    }
+}
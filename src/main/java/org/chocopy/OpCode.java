@@ -0,0 +1,90 @@
+package org.chocopy;
+
+/**
+ * Instruction set of the bytecode {@link VM}. Every instruction is an opcode
+ * followed by a fixed number of int operands. Jump operands are offsets relative
+ * to the instruction that follows the jump.
+ */
+class OpCode {
+    static final int CONSTANT = 0;       // index
+    static final int NONE = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int POP = 4;
+    static final int DUP = 5;
+    static final int LOAD_LOCAL = 6;     // slot
+    static final int STORE_LOCAL = 7;    // slot
+    static final int LOAD_OUTER = 8;     // depth, slot
+    static final int STORE_OUTER = 9;    // depth, slot
+    static final int LOAD_GLOBAL = 10;   // slot
+    static final int STORE_GLOBAL = 11;  // slot
+    static final int ADD = 12;           // site
+    static final int SUBTRACT = 13;      // site
+    static final int MULTIPLY = 14;      // site
+    static final int DIVIDE = 15;        // site
+    static final int MODULO = 16;        // site
+    static final int LESS = 17;          // site
+    static final int LESS_EQUAL = 18;    // site
+    static final int GREATER = 19;       // site
+    static final int GREATER_EQUAL = 20; // site
+    static final int EQUAL = 21;
+    static final int NOT_EQUAL = 22;
+    static final int IS = 23;
+    static final int NEGATE = 24;        // site
+    static final int NOT = 25;           // site
+    static final int JUMP = 26;          // offset
+    static final int JUMP_IF_FALSE = 27; // offset
+    static final int JUMP_IF_FALSE_OR_POP = 28; // offset
+    static final int JUMP_IF_TRUE_OR_POP = 29;  // offset
+    static final int LIST = 30;          // count
+    static final int INDEX = 31;         // site
+    static final int SET_INDEX = 32;     // site
+    static final int GET_ATTR = 33;      // site
+    static final int SET_ATTR = 34;      // site
+    static final int CALL = 35;          // argument count, site
+    static final int LEN = 36;           // site
+    static final int PRINT = 37;
+    static final int INPUT = 38;
+    static final int ITER = 39;          // site
+    static final int FOR_NEXT = 40;      // offset
+    static final int CLOSURE = 41;       // function
+    static final int CLASS = 42;         // class
+    static final int RETURN = 43;
+
+    private static final String[] NAMES = {
+            "CONSTANT", "NONE", "TRUE", "FALSE", "POP", "DUP",
+            "LOAD_LOCAL", "STORE_LOCAL", "LOAD_OUTER", "STORE_OUTER", "LOAD_GLOBAL", "STORE_GLOBAL",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "MODULO",
+            "LESS", "LESS_EQUAL", "GREATER", "GREATER_EQUAL", "EQUAL", "NOT_EQUAL", "IS",
+            "NEGATE", "NOT",
+            "JUMP", "JUMP_IF_FALSE", "JUMP_IF_FALSE_OR_POP", "JUMP_IF_TRUE_OR_POP",
+            "LIST", "INDEX", "SET_INDEX", "GET_ATTR", "SET_ATTR", "CALL", "LEN", "PRINT", "INPUT",
+            "ITER", "FOR_NEXT", "CLOSURE", "CLASS", "RETURN"
+    };
+
+    private static final int[] OPERANDS = {
+            1, 0, 0, 0, 0, 0,
+            1, 1, 2, 2, 1, 1,
+            1, 1, 1, 1, 1,
+            1, 1, 1, 1, 0, 0, 0,
+            1, 1,
+            1, 1, 1, 1,
+            1, 1, 1, 1, 1, 2, 1, 0, 0,
+            1, 1, 1, 1, 0
+    };
+
+    private OpCode() {}
+
+    static String name(int opCode) {
+        return NAMES[opCode];
+    }
+
+    static int operands(int opCode) {
+        return OPERANDS[opCode];
+    }
+
+    static boolean isJump(int opCode) {
+        return opCode == JUMP || opCode == JUMP_IF_FALSE || opCode == JUMP_IF_FALSE_OR_POP
+                || opCode == JUMP_IF_TRUE_OR_POP || opCode == FOR_NEXT;
+    }
+}
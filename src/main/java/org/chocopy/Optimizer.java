@@ -0,0 +1,465 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Simplifies a resolved script before it runs. Operators whose operands are
+ * literals are folded into literals, branches and loops with a constant
+ * condition are replaced by the code that actually runs, and statements after
+ * a {@code return} are dropped.
+ * <p>
+ * Nothing that can fail at runtime is folded, such as a division by zero, so
+ * errors are still reported on the same lines. Nodes whose children change are
+ * rebuilt with the types and slots the {@link Resolver} gave the originals.
+ */
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        optimizeBlock(statements);
+        return statements;
+    }
+
+    Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    /** Returns the simplified statement, or null if it does nothing. */
+    Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    /**
+     * Simplifies a statement list in place. Blocks that replace another kind
+     * of statement, such as a folded {@code if}, are spliced into the list.
+     */
+    void optimizeBlock(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>();
+        for (Stmt statement : statements) {
+            Stmt result = optimize(statement);
+            if (result instanceof Stmt.Block block && !(statement instanceof Stmt.Block)) {
+                optimized.addAll(block.statements);
+            } else if (result != null) {
+                optimized.add(result);
+            }
+        }
+
+        statements.clear();
+        for (Stmt statement : optimized) {
+            statements.add(statement);
+            if (alwaysReturns(statement)) break;
+        }
+    }
+
+    /**
+     * Whether the statement returns on every path. {@link Stmt#isReturn} is not
+     * enough: the resolver also sets it on loops whose body merely contains a
+     * {@code return}, and such loops may run zero times.
+     */
+    static boolean alwaysReturns(Stmt stmt) {
+        if (stmt instanceof Stmt.Return) return true;
+        if (stmt instanceof Stmt.Block block) return block.statements.stream().anyMatch(Optimizer::alwaysReturns);
+        if (stmt instanceof Stmt.If ifStmt) {
+            return alwaysReturns(ifStmt.thenBranch) && ifStmt.elseBranch != null && alwaysReturns(ifStmt.elseBranch);
+        }
+        return false;
+    }
+
+    static <T extends Expr> T copy(Expr from, T to) {
+        to.inferredType = from.inferredType;
+        to.line = from.line;
+        to.callable = from.callable;
+        to.targetCounter = from.targetCounter;
+        return to;
+    }
+
+    static <T extends Stmt> T copy(Stmt from, T to) {
+        to.inferredType = from.inferredType;
+        to.line = from.line;
+        to.isReturn = from.isReturn;
+        to.resolverStage = from.resolverStage;
+        return to;
+    }
+
+    static Expr.Literal literal(Expr expr, Object value) {
+        return copy(expr, new Expr.Literal(value));
+    }
+
+    static Object constant(Expr expr) {
+        return expr instanceof Expr.Literal literal ? literal.value : null;
+    }
+
+    /**
+     * The subexpressions an expression evaluates, in order. The value of an
+     * assignment target is the assignment's own value and is not repeated.
+     */
+    static List<Expr> children(Expr expr) {
+        if (expr instanceof Expr.Binary binary) return List.of(binary.left, binary.right);
+        if (expr instanceof Expr.Logical logical) return List.of(logical.left, logical.right);
+        if (expr instanceof Expr.Unary unary) return List.of(unary.right);
+        if (expr instanceof Expr.Grouping grouping) return List.of(grouping.expression);
+        if (expr instanceof Expr.Ternary ternary) return List.of(ternary.condition, ternary.onTrue, ternary.onFalse);
+        if (expr instanceof Expr.Len len) return List.of(len.expression);
+        if (expr instanceof Expr.Print print) return List.of(print.expression);
+        if (expr instanceof Expr.Get get) return List.of(get.object);
+        if (expr instanceof Expr.Set set) return List.of(set.object);
+        if (expr instanceof Expr.Index index) return List.of(index.listing, index.id);
+        if (expr instanceof Expr.ListSet listSet) return List.of(listSet.id, listSet.listing);
+        if (expr instanceof Expr.Listing listing && listing.elements != null) return listing.elements;
+        if (expr instanceof Expr.Call call) {
+            List<Expr> children = new ArrayList<>();
+            children.add(call.callee);
+            children.addAll(call.arguments);
+            return children;
+        }
+        if (expr instanceof Expr.MultiAssign multiAssign) {
+            List<Expr> children = new ArrayList<>();
+            children.add(multiAssign.value);
+            children.addAll(multiAssign.targets);
+            return children;
+        }
+        return List.of();
+    }
+
+    /** Calls the action on each top-level expression of the statement and its nested statements. */
+    static void walkStatement(Stmt stmt, Consumer<Expr> action) {
+        if (stmt instanceof Stmt.Block block) {
+            for (Stmt statement : block.statements) walkStatement(statement, action);
+        } else if (stmt instanceof Stmt.Expression expression) {
+            action.accept(expression.expression);
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            action.accept(ifStmt.condition);
+            walkStatement(ifStmt.thenBranch, action);
+            if (ifStmt.elseBranch != null) walkStatement(ifStmt.elseBranch, action);
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            action.accept(whileStmt.condition);
+            walkStatement(whileStmt.body, action);
+        } else if (stmt instanceof Stmt.For forStmt) {
+            action.accept(forStmt.iterable);
+            walkStatement(forStmt.body, action);
+        } else if (stmt instanceof Stmt.Return returnStmt && returnStmt.value != null) {
+            action.accept(returnStmt.value);
+        }
+    }
+
+    static void walkExpr(Expr expr, Consumer<Expr> action) {
+        action.accept(expr);
+        for (Expr child : children(expr)) walkExpr(child, action);
+    }
+
+    /** A new reference to a variable, for code added by a pass. */
+    static Expr.Variable reference(Expr.Variable temporary, int line) {
+        Expr.Variable variable = new Expr.Variable(temporary.name);
+        variable.depth = temporary.depth;
+        variable.slot = temporary.slot;
+        variable.inferredType = temporary.inferredType;
+        variable.line = line;
+        return variable;
+    }
+
+    /** A statement assigning the value to a variable, as the resolver would have built it. */
+    static Stmt assign(Expr.Variable temporary, Expr value, int line) {
+        Expr.Assign assign = new Expr.Assign(reference(temporary, line), value);
+        assign.line = line;
+        Expr.MultiAssign multiAssign = new Expr.MultiAssign(new ArrayList<>(List.of(assign)), value);
+        multiAssign.line = line;
+        multiAssign.inferredType = value.inferredType;
+        Stmt.Expression stmt = new Stmt.Expression(multiAssign);
+        stmt.line = line;
+        return stmt;
+    }
+
+    private List<Expr> optimizeAll(List<Expr> exprs) {
+        List<Expr> optimized = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        for (Expr expr : exprs) {
+            Expr result = optimize(expr);
+            optimized.add(result);
+            changed |= result != expr;
+        }
+        return changed ? optimized : exprs;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        Object a = constant(left);
+        Object b = constant(right);
+
+        if (a instanceof Integer && b instanceof Integer) {
+            boolean divides = expr.operator.type == TokenType.DOUBLE_SLASH
+                    || expr.operator.type == TokenType.PERCENT;
+            if (!(divides && (int) b == 0) && expr.operator.type != TokenType.IS) {
+                return literal(expr, Values.binary(expr, a, b));
+            }
+        } else if (a instanceof String && b instanceof String || a instanceof Boolean && b instanceof Boolean) {
+            TokenType operator = expr.operator.type;
+            if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.BANG_EQUAL
+                    || operator == TokenType.PLUS && a instanceof String) {
+                return literal(expr, Values.binary(expr, a, b));
+            }
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return copy(expr, new Expr.Binary(left, expr.operator, right));
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = optimizeAll(expr.arguments);
+
+        if (callee == expr.callee && arguments == expr.arguments) return expr;
+        return copy(expr, new Expr.Call(callee, expr.paren, arguments));
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+
+        if (object == expr.object) return expr;
+        Expr.Get get = copy(expr, new Expr.Get(object, expr.name));
+        get.methodIndex = expr.methodIndex;
+        return get;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+
+        if (expression instanceof Expr.Literal) return expression;
+        if (expression == expr.expression) return expr;
+        return copy(expr, new Expr.Grouping(expression));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (constant(left) instanceof Boolean value) {
+            boolean shortCircuits = expr.operator.type == TokenType.OR ? value : !value;
+            return shortCircuits ? left : right;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return copy(expr, new Expr.Logical(left, expr.operator, right));
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        Expr condition = optimize(expr.condition);
+        Expr onTrue = optimize(expr.onTrue);
+        Expr onFalse = optimize(expr.onFalse);
+
+        if (constant(condition) instanceof Boolean value) {
+            Expr branch = value ? onTrue : onFalse;
+            if (branch.inferredType != null && branch.inferredType.equals(expr.inferredType)) return branch;
+        }
+
+        if (condition == expr.condition && onTrue == expr.onTrue && onFalse == expr.onFalse) return expr;
+        return copy(expr, new Expr.Ternary(onTrue, condition, onFalse));
+    }
+
+    @Override
+    public Expr visitListingExpr(Expr.Listing expr) {
+        if (expr.elements == null) return expr;
+        List<Expr> elements = optimizeAll(expr.elements);
+
+        if (elements == expr.elements) return expr;
+        return copy(expr, new Expr.Listing(elements));
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        Expr listing = optimize(expr.listing);
+        Expr id = optimize(expr.id);
+
+        if (listing == expr.listing && id == expr.id) return expr;
+        return copy(expr, new Expr.Index(listing, id));
+    }
+
+    @Override
+    public Expr visitListSetExpr(Expr.ListSet expr) {
+        Expr listing = optimize(expr.listing);
+        Expr id = optimize(expr.id);
+
+        if (listing == expr.listing && id == expr.id) return expr;
+        return copy(expr, new Expr.ListSet(listing, id, expr.value));
+    }
+
+    @Override
+    public Expr visitLenExpr(Expr.Len expr) {
+        Expr expression = optimize(expr.expression);
+
+        if (constant(expression) instanceof String value) return literal(expr, value.length());
+        if (expression == expr.expression) return expr;
+        return copy(expr, new Expr.Len(expression));
+    }
+
+    @Override
+    public Expr visitInputExpr(Expr.Input expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+
+        if (object == expr.object) return expr;
+        return copy(expr, new Expr.Set(object, expr.name, expr.value));
+    }
+
+    @Override
+    public Expr visitSelfExpr(Expr.Self expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        Object value = constant(right);
+
+        if (expr.operator.type == TokenType.MINUS && value instanceof Integer number) {
+            return literal(expr, -number);
+        } else if (expr.operator.type == TokenType.NOT && value instanceof Boolean bool) {
+            return literal(expr, !bool);
+        }
+
+        if (right == expr.right) return expr;
+        return copy(expr, new Expr.Unary(expr.operator, right));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitPrintExpr(Expr.Print expr) {
+        Expr expression = optimize(expr.expression);
+
+        if (expression == expr.expression) return expr;
+        return copy(expr, new Expr.Print(expression));
+    }
+
+    @Override
+    public Expr visitMultiAssignExpr(Expr.MultiAssign expr) {
+        List<Expr> targets = optimizeAll(expr.targets);
+        Expr value = optimize(expr.value);
+
+        if (targets == expr.targets && value == expr.value) return expr;
+        return copy(expr, new Expr.MultiAssign(targets, value));
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        optimizeBlock(stmt.statements);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        for (Stmt member : stmt.members) {
+            optimize(member);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+
+        if (expression instanceof Expr.Literal) return null;
+        if (expression == stmt.expression) return stmt;
+        return copy(stmt, new Stmt.Expression(expression));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        optimizeBlock(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        Stmt thenBranch = optimize(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+
+        if (constant(condition) instanceof Boolean value) {
+            Stmt branch = value ? thenBranch : elseBranch;
+            if (branch == null || branch instanceof Stmt.Block) return branch;
+            return copy(branch, new Stmt.Block(new ArrayList<>(List.of(branch))));
+        }
+
+        if (condition == stmt.condition && elseBranch == stmt.elseBranch) return stmt;
+        if (elseBranch == null && stmt.elseBranch != null) {
+            elseBranch = new Stmt.Block(new ArrayList<>());
+        }
+        return copy(stmt, new Stmt.If(condition, thenBranch, elseBranch));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return stmt;
+        Expr value = optimize(stmt.value);
+
+        if (value == stmt.value) return stmt;
+        Stmt.Return result = copy(stmt, new Stmt.Return(stmt.keyword, value));
+        result.expectedType = stmt.expectedType;
+        return result;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) stmt.initializer = optimize(stmt.initializer);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        optimize(stmt.body);
+
+        if (Boolean.FALSE.equals(constant(condition))) return null;
+        if (condition == stmt.condition) return stmt;
+        return copy(stmt, new Stmt.While(condition, stmt.body));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Expr iterable = optimize(stmt.iterable);
+        optimize(stmt.body);
+
+        if (iterable == stmt.iterable) return stmt;
+        return copy(stmt, new Stmt.For(stmt.id, iterable, stmt.body));
+    }
+
+    @Override
+    public Stmt visitPassStmt(Stmt.Pass stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitGlobalStmt(Stmt.Global stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return stmt;
+    }
+}
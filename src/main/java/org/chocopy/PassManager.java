@@ -0,0 +1,40 @@
+package org.chocopy;
+
+import java.util.List;
+
+/**
+ * Runs a pipeline of {@link IrPass}es over every function of a script, nested
+ * functions and methods included. The pipeline is repeated while it still
+ * changes something, since one pass often exposes work for another, up to
+ * {@link #MAX_ROUNDS} times.
+ */
+class PassManager {
+    static final int MAX_ROUNDS = 8;
+
+    private final List<IrPass> passes;
+
+    PassManager(IrPass... passes) {
+        this.passes = List.of(passes);
+    }
+
+    /** The passes every script goes through before the {@link IrInterpreter} runs it. */
+    static PassManager standard() {
+        return new PassManager(new DeadCodeElimination(), new CopyPropagation(),
+                new ValueNumbering(), new BoundsCheckElimination(), new DeadCodeElimination());
+    }
+
+    Ir.Function run(Ir.Function function) {
+        for (Ir.Block block : function.blocks) {
+            for (Ir.Instr instr : block.instructions) {
+                instr.functions.forEach(this::run);
+            }
+        }
+
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = false;
+            for (IrPass pass : passes) changed |= pass.run(function);
+            if (!changed) break;
+        }
+        return function;
+    }
+}
@@ -0,0 +1,37 @@
+package org.chocopy;
+
+import java.util.List;
+
+/** A {@link RegisterFunction} with its enclosing environment, and its receiver once it is bound. */
+class RegisterClosure implements ChocoPyCallable {
+    final RegisterFunction function;
+    final Environment enclosing;
+    final ChocoPyInstance receiver;
+    private final RegisterVM vm;
+
+    RegisterClosure(RegisterFunction function, Environment enclosing, RegisterVM vm, ChocoPyInstance receiver) {
+        this.function = function;
+        this.enclosing = enclosing;
+        this.vm = vm;
+        this.receiver = receiver;
+    }
+
+    RegisterClosure bind(ChocoPyInstance instance) {
+        return new RegisterClosure(function, enclosing, vm, instance);
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return vm.invoke(this, receiver, arguments.toArray(), 0, arguments.size());
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,547 @@
+package org.chocopy;
+
+import java.util.*;
+
+/**
+ * Compiles a resolved script into register code for the {@link RegisterVM}.
+ * Params and locals live in the registers numbered by their {@link Resolver}
+ * slots, so reading one needs no instruction, and an expression assigned to a
+ * local computes straight into its register: {@code found = found + 1} is a
+ * single {@code ADD}. Temporaries are allocated above the locals like a stack
+ * and released after the statement that used them.
+ * <p>
+ * Functions that declare nested functions copy a local before using it as an
+ * operand, since a call evaluated after it could change it through
+ * {@code nonlocal}.
+ */
+class RegisterCompiler implements Expr.Visitor<Integer>, Stmt.Visitor<Void> {
+    /** Passed as the target of an expression whose value may end up anywhere. */
+    private static final int ANY = Integer.MIN_VALUE;
+
+    private static class Builder {
+        final Builder enclosing;
+        int[] code = new int[64];
+        int count = 0;
+        final List<Object> constants = new ArrayList<>();
+        final Map<Object, Integer> constantIndexes = new HashMap<>();
+        /** Registers holding params and locals. */
+        final int locals;
+        final boolean copiesLocals;
+        int top;
+        int registers;
+
+        Builder(Builder enclosing, int locals, boolean copiesLocals) {
+            this.enclosing = enclosing;
+            this.locals = locals;
+            this.copiesLocals = copiesLocals;
+            this.top = locals;
+            this.registers = locals;
+        }
+    }
+
+    private Builder current;
+    private int target = ANY;
+    private int globalCount = Interpreter.BUILTINS.size();
+
+    RegisterFunction compile(List<Stmt> statements) {
+        current = new Builder(null, 0, false);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emit(RegisterOpCode.RETURN, constant(null));
+
+        return new RegisterFunction("<script>", Arrays.copyOf(current.code, current.count),
+                current.constants.toArray(), new int[0], 0, current.registers, false);
+    }
+
+    int globalCount() {
+        return globalCount;
+    }
+
+    private boolean isTopLevel() {
+        return current.enclosing == null;
+    }
+
+    private void compile(Stmt stmt) {
+        int mark = current.top;
+        stmt.accept(this);
+        current.top = mark;
+    }
+
+    /**
+     * Compiles an expression and returns the operand holding its value: a
+     * register, or a constant. With a target register, the value is left in it.
+     */
+    private int compile(Expr expr, int target) {
+        int saved = this.target;
+        this.target = target;
+        try {
+            return expr.accept(this);
+        } finally {
+            this.target = saved;
+        }
+    }
+
+    private int temp() {
+        int register = current.top++;
+        current.registers = Math.max(current.registers, current.top);
+        return register;
+    }
+
+    /** The register an instruction should write its result to. */
+    private int destination() {
+        return target != ANY ? target : temp();
+    }
+
+    private int move(int operand, int target) {
+        if (target == ANY) return operand;
+        if (operand != target) emit(RegisterOpCode.MOVE, target, operand);
+        return target;
+    }
+
+    private void emit(int opCode, int... operands) {
+        write(opCode);
+        for (int operand : operands) write(operand);
+    }
+
+    private void write(int value) {
+        if (current.count == current.code.length) {
+            current.code = Arrays.copyOf(current.code, current.count * 2);
+        }
+        current.code[current.count++] = value;
+    }
+
+    /** The operand naming a constant. */
+    private int constant(Object value) {
+        Integer index = current.constantIndexes.get(value);
+        if (index == null) {
+            index = current.constants.size();
+            current.constants.add(value);
+            current.constantIndexes.put(value, index);
+        }
+        return ~index;
+    }
+
+    private int site(Object node) {
+        current.constants.add(node);
+        return current.constants.size() - 1;
+    }
+
+    private int emitJump(int opCode, int... operands) {
+        emit(opCode, operands);
+        write(0);
+        return current.count - 1;
+    }
+
+    private void patchJump(int operand) {
+        current.code[operand] = current.count - (operand + 1);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(RegisterOpCode.JUMP, 0);
+        current.code[current.count - 1] = loopStart - current.count;
+    }
+
+    private boolean isLocal(int depth) {
+        return depth == 0 && !isTopLevel();
+    }
+
+    private int load(int depth, int slot) {
+        if (slot == Environment.UNRESOLVED) {
+            return move(constant(null), target);
+        } else if (isLocal(depth)) {
+            if (current.copiesLocals && target == ANY) return move(slot, temp());
+            return move(slot, target);
+        } else if (depth == Environment.GLOBAL) {
+            globalCount = Math.max(globalCount, slot + 1);
+            int destination = destination();
+            emit(RegisterOpCode.LOAD_GLOBAL, destination, slot);
+            return destination;
+        }
+        int destination = destination();
+        emit(RegisterOpCode.LOAD_OUTER, destination, depth, slot);
+        return destination;
+    }
+
+    private void store(int depth, int slot, int value) {
+        if (slot == Environment.UNRESOLVED) return;
+        if (isLocal(depth)) {
+            move(value, slot);
+        } else if (depth == Environment.GLOBAL) {
+            globalCount = Math.max(globalCount, slot + 1);
+            emit(RegisterOpCode.STORE_GLOBAL, slot, value);
+        } else {
+            emit(RegisterOpCode.STORE_OUTER, depth, slot, value);
+        }
+    }
+
+    private void define(int slot, int value) {
+        store(isTopLevel() ? Environment.GLOBAL : 0, slot, value);
+    }
+
+    /** The target for a value about to be stored in a variable, if it can be computed in place. */
+    private int targetOf(int depth, int slot) {
+        return isLocal(depth) && slot != Environment.UNRESOLVED ? slot : ANY;
+    }
+
+    private RegisterFunction function(Stmt.Function stmt, boolean isInitializer) {
+        boolean declaresFunctions = false;
+        for (Stmt statement : stmt.body) declaresFunctions |= statement instanceof Stmt.Function;
+
+        current = new Builder(current, stmt.frameSize, declaresFunctions);
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emit(RegisterOpCode.RETURN, constant(null));
+
+        int[] paramSlots = new int[stmt.params.size()];
+        for (int i = 0; i < paramSlots.length; i++) {
+            paramSlots[i] = stmt.params.get(i).slot;
+        }
+        int arity = stmt.params.size();
+        if (arity > 0 && stmt.params.get(0).name.lexeme.equals("self")) {
+            arity--;
+        }
+
+        RegisterFunction function = new RegisterFunction(stmt.name.lexeme, Arrays.copyOf(current.code, current.count),
+                current.constants.toArray(), paramSlots, arity, current.registers, isInitializer);
+        current = current.enclosing;
+        return function;
+    }
+
+    /** Whether evaluating the expression can neither fail nor have an effect. */
+    private static boolean isSimple(Expr expr) {
+        return expr instanceof Expr.Literal || expr instanceof Expr.Variable || expr instanceof Expr.Self;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+        int mark = current.top;
+        int left = compile(expr.left, ANY);
+        int right = compile(expr.right, ANY);
+        current.top = mark;
+        int destination = destination();
+
+        switch (expr.operator.type) {
+            case BANG_EQUAL -> emit(RegisterOpCode.NOT_EQUAL, destination, left, right);
+            case EQUAL_EQUAL -> emit(RegisterOpCode.EQUAL, destination, left, right);
+            case IS -> emit(RegisterOpCode.IS, destination, left, right);
+            case GREATER -> emit(RegisterOpCode.GREATER, destination, left, right, site(expr));
+            case GREATER_EQUAL -> emit(RegisterOpCode.GREATER_EQUAL, destination, left, right, site(expr));
+            case LESS -> emit(RegisterOpCode.LESS, destination, left, right, site(expr));
+            case LESS_EQUAL -> emit(RegisterOpCode.LESS_EQUAL, destination, left, right, site(expr));
+            case MINUS -> emit(RegisterOpCode.SUBTRACT, destination, left, right, site(expr));
+            case PLUS -> emit(RegisterOpCode.ADD, destination, left, right, site(expr));
+            case DOUBLE_SLASH -> emit(RegisterOpCode.DIVIDE, destination, left, right, site(expr));
+            case PERCENT -> emit(RegisterOpCode.MODULO, destination, left, right, site(expr));
+            case STAR -> emit(RegisterOpCode.MULTIPLY, destination, left, right, site(expr));
+            default -> emit(RegisterOpCode.MOVE, destination, constant(null));
+        }
+        return destination;
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+        int first = current.top;
+        int opCode = RegisterOpCode.CALL;
+        if (expr.callee instanceof Expr.Get get) {
+            compile(get.object, temp());
+            boolean simple = true;
+            for (Expr argument : expr.arguments) simple &= isSimple(argument);
+            if (!simple) emit(RegisterOpCode.RECEIVER, first, site(get));
+            opCode = RegisterOpCode.INVOKE;
+        } else {
+            compile(expr.callee, temp());
+        }
+        for (Expr argument : expr.arguments) {
+            compile(argument, temp());
+        }
+
+        current.top = first;
+        int destination = destination();
+        emit(opCode, destination, first, expr.arguments.size(), site(expr));
+        return destination;
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+        int mark = current.top;
+        int object = compile(expr.object, ANY);
+        current.top = mark;
+        int destination = destination();
+        emit(RegisterOpCode.GET_ATTR, destination, object, site(expr));
+        return destination;
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression, target);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+        return move(constant(expr.value), target);
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+        // A local target is only written at the end: the right operand may read it.
+        int result = target != ANY && target >= current.locals ? target : temp();
+        move(compile(expr.left, result), result);
+        int opCode = expr.operator.type == TokenType.OR ? RegisterOpCode.JUMP_IF_TRUE : RegisterOpCode.JUMP_IF_FALSE;
+        int end = emitJump(opCode, result);
+        move(compile(expr.right, result), result);
+        patchJump(end);
+        return move(result, target);
+    }
+
+    @Override
+    public Integer visitTernaryExpr(Expr.Ternary expr) {
+        int mark = current.top;
+        int condition = compile(expr.condition, ANY);
+        current.top = mark;
+        int result = destination();
+        int elseJump = emitJump(RegisterOpCode.JUMP_IF_FALSE, condition);
+        move(compile(expr.onTrue, result), result);
+        int endJump = emitJump(RegisterOpCode.JUMP);
+        patchJump(elseJump);
+        move(compile(expr.onFalse, result), result);
+        patchJump(endJump);
+        return result;
+    }
+
+    @Override
+    public Integer visitListingExpr(Expr.Listing expr) {
+        if (expr.elements == null) {
+            emit(RegisterOpCode.NONE_LIST, site(expr));
+            return move(constant(null), target);
+        }
+
+        int first = current.top;
+        for (Expr element : expr.elements) {
+            compile(element, temp());
+        }
+        current.top = first;
+        int destination = destination();
+        emit(RegisterOpCode.LIST, destination, first, expr.elements.size());
+        return destination;
+    }
+
+    @Override
+    public Integer visitIndexExpr(Expr.Index expr) {
+        int mark = current.top;
+        int listing = compile(expr.listing, ANY);
+        int id = compile(expr.id, ANY);
+        current.top = mark;
+        int destination = destination();
+        emit(RegisterOpCode.INDEX, destination, listing, id, site(expr));
+        return destination;
+    }
+
+    @Override
+    public Integer visitListSetExpr(Expr.ListSet expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Integer visitLenExpr(Expr.Len expr) {
+        int mark = current.top;
+        int value = compile(expr.expression, ANY);
+        current.top = mark;
+        int destination = destination();
+        emit(RegisterOpCode.LEN, destination, value, site(expr));
+        return destination;
+    }
+
+    @Override
+    public Integer visitInputExpr(Expr.Input expr) {
+        int destination = destination();
+        emit(RegisterOpCode.INPUT, destination);
+        return destination;
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+        throw new RuntimeError(expr.line, "use Expr.MultiAssign", "NotImplementedError");
+    }
+
+    @Override
+    public Integer visitSelfExpr(Expr.Self expr) {
+        return load(expr.depth, expr.slot);
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+        int mark = current.top;
+        int value = compile(expr.right, ANY);
+        current.top = mark;
+        int destination = destination();
+        if (expr.operator.type == TokenType.MINUS) {
+            emit(RegisterOpCode.NEGATE, destination, value, site(expr));
+        } else if (expr.operator.type == TokenType.NOT) {
+            emit(RegisterOpCode.NOT, destination, value, site(expr));
+        } else {
+            emit(RegisterOpCode.MOVE, destination, constant(null));
+        }
+        return destination;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+        return load(expr.depth, expr.slot);
+    }
+
+    @Override
+    public Integer visitPrintExpr(Expr.Print expr) {
+        int mark = current.top;
+        emit(RegisterOpCode.PRINT, compile(expr.expression, ANY));
+        current.top = mark;
+        return move(constant(null), target);
+    }
+
+    @Override
+    public Integer visitMultiAssignExpr(Expr.MultiAssign multiAssign) {
+        int value;
+        if (multiAssign.targets.size() == 1 && multiAssign.targets.get(0) instanceof Expr.Assign expr) {
+            value = compile(multiAssign.value, targetOf(expr.target.depth, expr.target.slot));
+        } else {
+            value = compile(multiAssign.value, ANY);
+        }
+
+        for (Expr target : multiAssign.targets) {
+            int mark = current.top;
+            if (target instanceof Expr.Assign expr) {
+                store(expr.target.depth, expr.target.slot, value);
+            } else if (target instanceof Expr.Set expr) {
+                int object = compile(expr.object, ANY);
+                emit(RegisterOpCode.SET_ATTR, object, value, site(expr));
+            } else if (target instanceof Expr.ListSet expr) {
+                int id = compile(expr.id, ANY);
+                int listing = compile(expr.listing, ANY);
+                emit(RegisterOpCode.SET_INDEX, listing, id, value, site(expr));
+            }
+            current.top = mark;
+        }
+        return move(value, this.target);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        Map<String, RegisterFunction> methods = new LinkedHashMap<>();
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Stmt member : stmt.members) {
+            if (member instanceof Stmt.Function method) {
+                methods.put(method.name.lexeme, function(method, method.name.lexeme.equals("__init__")));
+            } else if (member instanceof Stmt.Var attribute) {
+                attributes.put(attribute.name.lexeme, ((Expr.Literal) attribute.initializer).value);
+            }
+        }
+
+        globalCount = Math.max(globalCount, stmt.slot + 1);
+        emit(RegisterOpCode.CLASS, site(new RegisterFunction.ClassTemplate(stmt, methods, attributes)));
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression, ANY);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        RegisterFunction function = function(stmt, false);
+        int destination = isTopLevel() ? temp() : stmt.slot;
+        emit(RegisterOpCode.CLOSURE, destination, site(function));
+        if (isTopLevel()) define(stmt.slot, destination);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        int elseJump = emitJump(RegisterOpCode.JUMP_IF_FALSE, compile(stmt.condition, ANY));
+        compile(stmt.thenBranch);
+        if (stmt.elseBranch != null) {
+            int endJump = emitJump(RegisterOpCode.JUMP);
+            patchJump(elseJump);
+            compile(stmt.elseBranch);
+            patchJump(endJump);
+        } else {
+            patchJump(elseJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        int value = stmt.value != null ? compile(stmt.value, ANY) : constant(null);
+        emit(RegisterOpCode.RETURN, value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        int target = isTopLevel() ? ANY : stmt.slot;
+        int value = stmt.initializer != null ? compile(stmt.initializer, target) : move(constant(null), target);
+        define(stmt.slot, value);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = current.count;
+        int mark = current.top;
+        int exitJump = emitJump(RegisterOpCode.JUMP_IF_FALSE, compile(stmt.condition, ANY));
+        current.top = mark;
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        int cursor = temp();
+        int iterable = compile(stmt.iterable, ANY);
+        emit(RegisterOpCode.ITER, cursor, iterable, site(stmt));
+        current.top = cursor + 1;
+
+        int id = targetOf(stmt.id.depth, stmt.id.slot);
+        if (id == ANY) id = temp();
+        int loopStart = current.count;
+        int exitJump = emitJump(RegisterOpCode.FOR_NEXT, id, cursor);
+        store(stmt.id.depth, stmt.id.slot, id);
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPassStmt(Stmt.Pass stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitGlobalStmt(Stmt.Global stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitNonlocalStmt(Stmt.Nonlocal stmt) {
+        return null;
+    }
+}
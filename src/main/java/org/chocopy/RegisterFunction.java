@@ -0,0 +1,110 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A function or script compiled by the {@link RegisterCompiler}. Its frame is
+ * a fixed file of {@code registerCount} registers: the params and locals at
+ * the slots the {@link Resolver} gave them, then the temporaries.
+ */
+class RegisterFunction {
+    final String name;
+    final int[] code;
+    final Object[] constants;
+    final int[] paramSlots;
+    final int arity;
+    final int registerCount;
+    final boolean isInitializer;
+
+    RegisterFunction(String name, int[] code, Object[] constants, int[] paramSlots, int arity,
+                     int registerCount, boolean isInitializer) {
+        this.name = name;
+        this.code = code;
+        this.constants = constants;
+        this.paramSlots = paramSlots;
+        this.arity = arity;
+        this.registerCount = registerCount;
+        this.isInitializer = isInitializer;
+    }
+
+    /** A class whose methods are compiled, created at runtime by {@code CLASS}. */
+    static class ClassTemplate {
+        final Stmt.Class declaration;
+        final Map<String, RegisterFunction> methods;
+        final Map<String, Object> attributes;
+
+        ClassTemplate(Stmt.Class declaration, Map<String, RegisterFunction> methods, Map<String, Object> attributes) {
+            this.declaration = declaration;
+            this.methods = methods;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public String toString() {
+            return "<class " + declaration.name.lexeme + ">";
+        }
+    }
+
+    /** Lists the instructions of the function and of every function it declares. */
+    String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        List<RegisterFunction> nested = new ArrayList<>();
+        builder.append("== ").append(name).append(" (").append(registerCount).append(" registers) ==\n");
+
+        int offset = 0;
+        while (offset < code.length) {
+            int opCode = code[offset];
+            String operands = RegisterOpCode.operands(opCode);
+
+            List<String> text = new ArrayList<>();
+            String site = null;
+            for (int i = 0; i < operands.length(); i++) {
+                int operand = code[offset + 1 + i];
+                switch (operands.charAt(i)) {
+                    case 'd' -> text.add("r" + operand);
+                    case 'r' -> text.add(operand >= 0 ? "r" + operand : constant(constants[~operand]));
+                    case 'g' -> text.add("g" + operand);
+                    case 'n' -> text.add(Integer.toString(operand));
+                    case 'o' -> text.add(String.format("-> %04d", offset + operands.length() + 1 + operand));
+                    case 's' -> site = "line " + line(constants[operand]);
+                    default -> {
+                        Object value = constants[operand];
+                        if (value instanceof RegisterFunction function) {
+                            nested.add(function);
+                        } else {
+                            nested.addAll(((ClassTemplate) value).methods.values());
+                        }
+                        text.add(value.toString());
+                    }
+                }
+            }
+            String line = String.format("%04d %-14s%s", offset, RegisterOpCode.name(opCode), String.join(", ", text));
+            builder.append(line.stripTrailing());
+            if (site != null) builder.append("  ; ").append(site);
+            builder.append('\n');
+            offset += operands.length() + 1;
+        }
+
+        for (RegisterFunction function : nested) {
+            builder.append('\n').append(function.disassemble());
+        }
+        return builder.toString();
+    }
+
+    private static String constant(Object value) {
+        return value instanceof String ? '"' + (String) value + '"' : Values.stringify(value);
+    }
+
+    private static int line(Object site) {
+        if (site instanceof Expr.Binary binary) return binary.operator.line;
+        if (site instanceof Expr expr) return expr.line;
+        return ((Stmt) site).line;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
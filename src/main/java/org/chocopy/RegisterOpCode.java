@@ -0,0 +1,84 @@
+package org.chocopy;
+
+/**
+ * Instruction set of the {@link RegisterVM}. Every instruction is an opcode
+ * followed by a fixed number of int operands that name registers directly.
+ * A source operand that is negative names the constant {@code ~operand}
+ * instead, so literals need no instruction of their own. Jump operands are
+ * offsets relative to the instruction that follows the jump.
+ */
+class RegisterOpCode {
+    static final int MOVE = 0;           // destination, source
+    static final int LOAD_GLOBAL = 1;    // destination, slot
+    static final int STORE_GLOBAL = 2;   // slot, source
+    static final int LOAD_OUTER = 3;     // destination, depth, slot
+    static final int STORE_OUTER = 4;    // depth, slot, source
+    static final int ADD = 5;            // destination, left, right, site
+    static final int SUBTRACT = 6;       // destination, left, right, site
+    static final int MULTIPLY = 7;       // destination, left, right, site
+    static final int DIVIDE = 8;         // destination, left, right, site
+    static final int MODULO = 9;         // destination, left, right, site
+    static final int LESS = 10;          // destination, left, right, site
+    static final int LESS_EQUAL = 11;    // destination, left, right, site
+    static final int GREATER = 12;       // destination, left, right, site
+    static final int GREATER_EQUAL = 13; // destination, left, right, site
+    static final int EQUAL = 14;         // destination, left, right
+    static final int NOT_EQUAL = 15;     // destination, left, right
+    static final int IS = 16;            // destination, left, right
+    static final int NEGATE = 17;        // destination, source, site
+    static final int NOT = 18;           // destination, source, site
+    static final int JUMP = 19;          // offset
+    static final int JUMP_IF_FALSE = 20; // source, offset
+    static final int JUMP_IF_TRUE = 21;  // source, offset
+    static final int LIST = 22;          // destination, first, count
+    static final int NONE_LIST = 23;     // site
+    static final int INDEX = 24;         // destination, list, index, site
+    static final int SET_INDEX = 25;     // list, index, source, site
+    static final int GET_ATTR = 26;      // destination, object, site
+    static final int SET_ATTR = 27;      // object, source, site
+    static final int RECEIVER = 28;      // object, site
+    static final int CALL = 29;          // destination, first, count, site
+    static final int INVOKE = 30;        // destination, first, count, site
+    static final int LEN = 31;           // destination, source, site
+    static final int PRINT = 32;         // source
+    static final int INPUT = 33;         // destination
+    static final int ITER = 34;          // destination, source, site
+    static final int FOR_NEXT = 35;      // destination, cursor, offset
+    static final int CLOSURE = 36;       // destination, function
+    static final int CLASS = 37;         // class
+    static final int RETURN = 38;        // source
+
+    private static final String[] NAMES = {
+            "MOVE", "LOAD_GLOBAL", "STORE_GLOBAL", "LOAD_OUTER", "STORE_OUTER",
+            "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "MODULO",
+            "LESS", "LESS_EQUAL", "GREATER", "GREATER_EQUAL", "EQUAL", "NOT_EQUAL", "IS",
+            "NEGATE", "NOT", "JUMP", "JUMP_IF_FALSE", "JUMP_IF_TRUE",
+            "LIST", "NONE_LIST", "INDEX", "SET_INDEX", "GET_ATTR", "SET_ATTR", "RECEIVER",
+            "CALL", "INVOKE", "LEN", "PRINT", "INPUT", "ITER", "FOR_NEXT", "CLOSURE", "CLASS", "RETURN"
+    };
+
+    /**
+     * What each operand is, for the disassembler: {@code d} a destination
+     * register, {@code r} a source register or constant, {@code g} a global
+     * slot, {@code n} a number, {@code o} a jump offset, {@code s} the site
+     * of an error and {@code k} a function or class.
+     */
+    private static final String[] OPERANDS = {
+            "dr", "dg", "gr", "dnn", "nnr",
+            "drrs", "drrs", "drrs", "drrs", "drrs",
+            "drrs", "drrs", "drrs", "drrs", "drr", "drr", "drr",
+            "drs", "drs", "o", "ro", "ro",
+            "ddn", "s", "drrs", "rrrs", "drs", "rrs", "rs",
+            "ddns", "ddns", "drs", "r", "d", "drs", "dro", "dk", "k", "r"
+    };
+
+    private RegisterOpCode() {}
+
+    static String name(int opCode) {
+        return NAMES[opCode];
+    }
+
+    static String operands(int opCode) {
+        return OPERANDS[opCode];
+    }
+}
@@ -0,0 +1,401 @@
+package org.chocopy;
+
+import java.util.*;
+
+/**
+ * Register-based virtual machine executing the code produced by
+ * {@link RegisterCompiler}. Instructions read their operands from the
+ * registers of the running frame and write their result to a destination
+ * register, so no value is pushed or popped between them.
+ */
+class RegisterVM {
+    private final java.util.Scanner scanner = new java.util.Scanner(System.in);
+    private final int maxDepth;
+    private Environment globals;
+
+    /**
+     * Activation record of a call. The registers of a function are the values
+     * of its environment, so nested functions see its locals; the script keeps
+     * its temporaries apart from the globals. {@code returnTo} is the register
+     * of the caller that receives the result.
+     */
+    private static class Frame {
+        RegisterFunction function;
+        Environment environment;
+        Object[] registers;
+        ChocoPyInstance receiver;
+        int returnTo;
+        int ip;
+    }
+
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+
+    private static class Cursor {
+        final Object iterable;
+        int index = 0;
+
+        Cursor(Object iterable) {
+            this.iterable = iterable;
+        }
+    }
+
+    RegisterVM() {
+        this(VM.DEFAULT_MAX_DEPTH);
+    }
+
+    RegisterVM(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    void interpret(RegisterFunction script, int globalCount) {
+        globals = new Environment(null, globalCount);
+        defineBuiltins();
+
+        try {
+            pushFrame(script, globals, new Object[script.registerCount], null, 0, 0);
+            run(0);
+        } catch (Throwable e) {
+            Interpreter.reportRuntimeError(e);
+        }
+    }
+
+    private void defineBuiltins() {
+        ChocoPyClass objectClass = new ChocoPyClass("object", null, Collections.emptyMap(), Collections.emptyMap(), List.of());
+        globals.define(Interpreter.BUILTINS.indexOf("object"), objectClass);
+        for (String name : List.of("int", "bool", "str")) {
+            globals.define(Interpreter.BUILTINS.indexOf(name),
+                    new ChocoPyClass(name, objectClass, Collections.emptyMap(), Collections.emptyMap(), List.of()));
+        }
+    }
+
+    /** Calls a closure from outside the dispatch loop and runs until it returns. */
+    Object invoke(RegisterClosure closure, ChocoPyInstance receiver, Object[] arguments, int offset, int count) {
+        int depth = frameCount;
+        Environment environment = bindArguments(closure, receiver, arguments, offset, count);
+        pushFrame(closure.function, environment, environment.values, receiver, -1, 0);
+        return run(depth);
+    }
+
+    private Environment bindArguments(RegisterClosure closure, ChocoPyInstance receiver,
+                                      Object[] arguments, int offset, int count) {
+        RegisterFunction function = closure.function;
+        Environment environment = new Environment(closure.enclosing, function.registerCount);
+        int[] paramSlots = function.paramSlots;
+
+        int param = 0;
+        if (receiver != null) {
+            environment.values[paramSlots[param++]] = receiver;
+        }
+        for (int i = 0; i < count; i++) {
+            environment.values[paramSlots[param++]] = arguments[offset + i];
+        }
+        return environment;
+    }
+
+    private Frame pushFrame(RegisterFunction function, Environment environment, Object[] registers,
+                            ChocoPyInstance receiver, int returnTo, int line) {
+        if (frameCount == maxDepth) {
+            ChocoPy.exitCode = 1;
+            throw new RuntimeError(line, "maximum recursion depth exceeded", "RecursionError");
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, Math.min(frames.length * 2, maxDepth));
+        }
+
+        Frame frame = frames[frameCount];
+        if (frame == null) frame = frames[frameCount] = new Frame();
+        frameCount++;
+
+        frame.function = function;
+        frame.environment = environment;
+        frame.registers = registers;
+        frame.receiver = receiver;
+        frame.returnTo = returnTo;
+        frame.ip = 0;
+        return frame;
+    }
+
+    private Object getAttribute(Expr.Get site, Object object) {
+        ChocoPyInstance instance = Values.receiver(site, object);
+        if (site.methodIndex >= 0 && instance.klass.method(site.methodIndex) instanceof RegisterClosure closure) {
+            return closure.bind(instance);
+        }
+
+        Object member = site.cache.lookup(instance.klass, site.name.lexeme);
+        if (member instanceof Integer slot) return instance.fields[slot];
+        if (member instanceof RegisterClosure closure) return closure.bind(instance);
+
+        throw new RuntimeError(site.name, "Undefined property '" + site.name.lexeme + "'.");
+    }
+
+    private ChocoPyClass defineClass(RegisterFunction.ClassTemplate template, Environment frame) {
+        Stmt.Class stmt = template.declaration;
+        Object superclass = globals.get(stmt.superclassSlot);
+        if (!(superclass instanceof ChocoPyClass)) {
+            throw new RuntimeError(stmt.superclass, "superclass must be a class", "TypeError");
+        }
+
+        Map<String, ChocoPyCallable> methods = new LinkedHashMap<>();
+        for (Map.Entry<String, RegisterFunction> entry : template.methods.entrySet()) {
+            methods.put(entry.getKey(), new RegisterClosure(entry.getValue(), frame, this, null));
+        }
+        return new ChocoPyClass(stmt.name.lexeme, (ChocoPyClass) superclass, methods, template.attributes,
+                stmt.methodTable);
+    }
+
+    /** Reads a source operand: a register, or the constant {@code ~operand}. */
+    private static Object rk(Object[] registers, Object[] constants, int operand) {
+        return operand >= 0 ? registers[operand] : constants[~operand];
+    }
+
+    /**
+     * Dispatch loop. Runs the frame on top of the frame stack, entering and
+     * leaving ChocoPy calls without recursing in Java, and returns once the
+     * frame count drops back to {@code exitDepth}.
+     */
+    private Object run(int exitDepth) {
+        Frame frame = frames[frameCount - 1];
+        int[] code = frame.function.code;
+        Object[] constants = frame.function.constants;
+        Object[] registers = frame.registers;
+        int ip = frame.ip;
+
+        while (true) {
+            switch (code[ip++]) {
+                case RegisterOpCode.MOVE -> {
+                    int destination = code[ip++];
+                    registers[destination] = rk(registers, constants, code[ip++]);
+                }
+                case RegisterOpCode.LOAD_GLOBAL -> {
+                    int destination = code[ip++];
+                    registers[destination] = globals.values[code[ip++]];
+                }
+                case RegisterOpCode.STORE_GLOBAL -> {
+                    int slot = code[ip++];
+                    globals.values[slot] = rk(registers, constants, code[ip++]);
+                }
+                case RegisterOpCode.LOAD_OUTER -> {
+                    int destination = code[ip++];
+                    int depth = code[ip++];
+                    registers[destination] = frame.environment.getAt(depth, code[ip++]);
+                }
+                case RegisterOpCode.STORE_OUTER -> {
+                    int depth = code[ip++];
+                    int slot = code[ip++];
+                    frame.environment.assignAt(depth, slot, rk(registers, constants, code[ip++]));
+                }
+                case RegisterOpCode.ADD -> {
+                    int destination = code[ip++];
+                    Object left = rk(registers, constants, code[ip++]);
+                    Object right = rk(registers, constants, code[ip++]);
+                    if (left instanceof Integer a && right instanceof Integer b) {
+                        registers[destination] = a + b;
+                    } else {
+                        registers[destination] = Values.add((Expr.Binary) constants[code[ip]], left, right);
+                    }
+                    ip++;
+                }
+                case RegisterOpCode.SUBTRACT, RegisterOpCode.MULTIPLY, RegisterOpCode.DIVIDE, RegisterOpCode.MODULO,
+                     RegisterOpCode.LESS, RegisterOpCode.LESS_EQUAL, RegisterOpCode.GREATER,
+                     RegisterOpCode.GREATER_EQUAL -> {
+                    int opCode = code[ip - 1];
+                    int destination = code[ip++];
+                    Object left = rk(registers, constants, code[ip++]);
+                    Object right = rk(registers, constants, code[ip++]);
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    registers[destination] = switch (opCode) {
+                        case RegisterOpCode.SUBTRACT -> a - b;
+                        case RegisterOpCode.MULTIPLY -> a * b;
+                        case RegisterOpCode.DIVIDE -> Values.divide(site, a, b);
+                        case RegisterOpCode.MODULO -> Values.modulo(site, a, b);
+                        case RegisterOpCode.LESS -> a < b;
+                        case RegisterOpCode.LESS_EQUAL -> a <= b;
+                        case RegisterOpCode.GREATER -> a > b;
+                        default -> a >= b;
+                    };
+                }
+                case RegisterOpCode.EQUAL -> {
+                    int destination = code[ip++];
+                    Object left = rk(registers, constants, code[ip++]);
+                    registers[destination] = Values.isEqual(left, rk(registers, constants, code[ip++]));
+                }
+                case RegisterOpCode.NOT_EQUAL -> {
+                    int destination = code[ip++];
+                    Object left = rk(registers, constants, code[ip++]);
+                    registers[destination] = !Values.isEqual(left, rk(registers, constants, code[ip++]));
+                }
+                case RegisterOpCode.IS -> {
+                    int destination = code[ip++];
+                    Object left = rk(registers, constants, code[ip++]);
+                    registers[destination] = left == rk(registers, constants, code[ip++]);
+                }
+                case RegisterOpCode.NEGATE, RegisterOpCode.NOT -> {
+                    int destination = code[ip++];
+                    Object value = rk(registers, constants, code[ip++]);
+                    registers[destination] = Values.unary((Expr.Unary) constants[code[ip++]], value);
+                }
+                case RegisterOpCode.JUMP -> ip += code[ip] + 1;
+                case RegisterOpCode.JUMP_IF_FALSE -> {
+                    if (Values.isTruthy(rk(registers, constants, code[ip++]))) {
+                        ip++;
+                    } else {
+                        ip += code[ip] + 1;
+                    }
+                }
+                case RegisterOpCode.JUMP_IF_TRUE -> {
+                    if (Values.isTruthy(rk(registers, constants, code[ip++]))) {
+                        ip += code[ip] + 1;
+                    } else {
+                        ip++;
+                    }
+                }
+                case RegisterOpCode.LIST -> {
+                    int destination = code[ip++];
+                    int first = code[ip++];
+                    int count = code[ip++];
+                    List<Object> list = new ArrayList<>(count);
+                    for (int i = first; i < first + count; i++) {
+                        list.add(registers[i]);
+                    }
+                    registers[destination] = list;
+                }
+                case RegisterOpCode.NONE_LIST -> {
+                    ChocoPy.exitCode = 4;
+                    throw new RuntimeError(((Expr) constants[code[ip]]).line, "operation on '<None>'", "RuntimeError");
+                }
+                case RegisterOpCode.INDEX -> {
+                    int destination = code[ip++];
+                    Object listing = rk(registers, constants, code[ip++]);
+                    Object id = rk(registers, constants, code[ip++]);
+                    registers[destination] = Values.index((Expr.Index) constants[code[ip++]], listing, id);
+                }
+                case RegisterOpCode.SET_INDEX -> {
+                    Object listing = rk(registers, constants, code[ip++]);
+                    Object id = rk(registers, constants, code[ip++]);
+                    Object value = rk(registers, constants, code[ip++]);
+                    Values.setIndex((Expr.ListSet) constants[code[ip++]], listing, id, value);
+                }
+                case RegisterOpCode.GET_ATTR -> {
+                    int destination = code[ip++];
+                    Object object = rk(registers, constants, code[ip++]);
+                    registers[destination] = getAttribute((Expr.Get) constants[code[ip++]], object);
+                }
+                case RegisterOpCode.SET_ATTR -> {
+                    Object object = rk(registers, constants, code[ip++]);
+                    Object value = rk(registers, constants, code[ip++]);
+                    Expr.Set site = (Expr.Set) constants[code[ip++]];
+                    Values.receiver(site, object).set(site.name, value, site.cache);
+                }
+                case RegisterOpCode.RECEIVER -> {
+                    Object object = rk(registers, constants, code[ip++]);
+                    Values.receiver((Expr.Get) constants[code[ip++]], object);
+                }
+                case RegisterOpCode.CALL, RegisterOpCode.INVOKE -> {
+                    int opCode = code[ip - 1];
+                    int destination = code[ip++];
+                    int first = code[ip++];
+                    int count = code[ip++];
+                    Expr.Call site = (Expr.Call) constants[code[ip++]];
+
+                    RegisterClosure closure;
+                    ChocoPyInstance receiver;
+                    if (opCode == RegisterOpCode.INVOKE) {
+                        Expr.Get get = (Expr.Get) site.callee;
+                        receiver = Values.receiver(get, registers[first]);
+                        Object member = get.methodIndex >= 0 ? receiver.klass.method(get.methodIndex) : null;
+                        if (member == null) member = get.cache.lookup(receiver.klass, get.name.lexeme);
+                        if (member instanceof RegisterClosure method) {
+                            closure = method;
+                        } else {
+                            throw new RuntimeError(site.paren, String.format("'%s' object is not callable",
+                                    Values.stringify(getAttribute(get, receiver))), "TypeError");
+                        }
+                    } else if (registers[first] instanceof RegisterClosure function) {
+                        closure = function;
+                        receiver = function.receiver;
+                    } else if (registers[first] instanceof ChocoPyClass klass) {
+                        Object object = klass.allocate();
+                        if (object instanceof ChocoPyInstance instance
+                                && klass.findMethod("__init__") instanceof RegisterClosure initializer) {
+                            closure = initializer;
+                            receiver = instance;
+                        } else {
+                            registers[destination] = object;
+                            continue;
+                        }
+                    } else {
+                        throw new RuntimeError(site.paren, String.format("'%s' object is not callable",
+                                Values.stringify(registers[first])), "TypeError");
+                    }
+
+                    Environment environment = bindArguments(closure, receiver, registers, first + 1, count);
+                    frame.ip = ip;
+                    frame = pushFrame(closure.function, environment, environment.values, receiver, destination,
+                            site.paren.line);
+                    code = frame.function.code;
+                    constants = frame.function.constants;
+                    registers = frame.registers;
+                    ip = 0;
+                }
+                case RegisterOpCode.LEN -> {
+                    int destination = code[ip++];
+                    Object value = rk(registers, constants, code[ip++]);
+                    registers[destination] = Values.len((Expr.Len) constants[code[ip++]], value);
+                }
+                case RegisterOpCode.PRINT -> System.out.println(Values.stringify(rk(registers, constants, code[ip++])));
+                case RegisterOpCode.INPUT ->
+                        registers[code[ip++]] = scanner.hasNextLine() ? scanner.nextLine() + "\n" : "";
+                case RegisterOpCode.ITER -> {
+                    int destination = code[ip++];
+                    Object iterable = rk(registers, constants, code[ip++]);
+                    Values.checkIterable((Stmt.For) constants[code[ip++]], iterable);
+                    registers[destination] = new Cursor(iterable);
+                }
+                case RegisterOpCode.FOR_NEXT -> {
+                    int destination = code[ip++];
+                    Cursor cursor = (Cursor) registers[code[ip++]];
+                    if (cursor.iterable instanceof List<?> list && cursor.index < list.size()) {
+                        registers[destination] = list.get(cursor.index++);
+                        ip++;
+                    } else if (cursor.iterable instanceof String str && cursor.index < str.length()) {
+                        registers[destination] = Values.character(str.charAt(cursor.index++));
+                        ip++;
+                    } else {
+                        ip += code[ip] + 1;
+                    }
+                }
+                case RegisterOpCode.CLOSURE -> {
+                    int destination = code[ip++];
+                    RegisterFunction function = (RegisterFunction) constants[code[ip++]];
+                    registers[destination] = new RegisterClosure(function, frame.environment, this, null);
+                }
+                case RegisterOpCode.CLASS -> {
+                    RegisterFunction.ClassTemplate template = (RegisterFunction.ClassTemplate) constants[code[ip++]];
+                    globals.define(template.declaration.slot, defineClass(template, frame.environment));
+                }
+                case RegisterOpCode.RETURN -> {
+                    Object value = rk(registers, constants, code[ip]);
+                    Object result = frame.function.isInitializer ? frame.receiver : value;
+                    int returnTo = frame.returnTo;
+                    frame.environment = null;
+                    frame.registers = null;
+                    frame.receiver = null;
+
+                    if (--frameCount == exitDepth) return result;
+
+                    frame = frames[frameCount - 1];
+                    code = frame.function.code;
+                    constants = frame.function.constants;
+                    registers = frame.registers;
+                    ip = frame.ip;
+                    registers[returnTo] = result;
+                }
+                default -> throw new RuntimeError(0, "unknown opcode " + code[ip - 1], "RuntimeError");
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     
     private static final List<Class> staticTypes = List.of(IntType.class, BoolType.class, StrType.class);
     private final Stack<Map<String, ValueType>> scopes = new Stack<>();
+    private final Stack<FrameLayout> frames = new Stack<>();
     private final Map<String, ClassInfo> classes = new HashMap<>();
     private FunctionType currentFunction = FunctionType.NONE;
     private final Set<Integer> targetCounters = new HashSet<>();
@@ -33,6 +34,30 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private ClassType currentClass = ClassType.NONE;
     private String currentClassName;
 
+    /**
+     * Runtime slots of a scope. Class bodies are not frames at runtime, so their
+     * names are never bound to slots and lookups skip over them.
+     */
+    private static class FrameLayout {
+        final boolean isFrame;
+        final Map<String, Integer> slots = new HashMap<>();
+        final Set<String> globals = new HashSet<>();
+        final Set<String> nonlocals = new HashSet<>();
+
+        FrameLayout(boolean isFrame) {
+            this.isFrame = isFrame;
+        }
+
+        void allocate(String name) {
+            if (globals.contains(name) || nonlocals.contains(name)) return;
+            slots.putIfAbsent(name, slots.size());
+        }
+
+        int slot(String name) {
+            return slots.getOrDefault(name, Environment.UNRESOLVED);
+        }
+    }
+
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.target);
@@ -259,6 +284,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                     expr.inferredType = new ObjectType();
                 } else {
                     expr.inferredType = getMethod(className, memberName);
+                    expr.methodIndex = methodTable(className).indexOf(memberName);
                 }
             } else {
                 if (getAttr(className, memberName) == null) {
@@ -463,6 +489,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             return null;
         }
 
+        int[] binding = lookUpSlot("self");
+        expr.depth = binding[0];
+        expr.slot = binding[1];
         expr.inferredType = getType("self");
         return null;
     }
@@ -519,10 +548,30 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             ChocoPy.error(expr.name, "can't read local variable in its own initializer", "NameError");
         }
         
+        int[] binding = lookUpSlot(expr.name.lexeme);
+        expr.depth = binding[0];
+        expr.slot = binding[1];
         expr.inferredType = type;
         return null;
     }
 
+    private int[] lookUpSlot(String name) {
+        int depth = 0;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            FrameLayout frame = frames.get(i);
+            if (!frame.isFrame) continue;
+            
+            if (scopes.get(i).containsKey(name) && !frame.nonlocals.contains(name)) {
+                if (i == 0 || frame.globals.contains(name)) {
+                    return new int[] {Environment.GLOBAL, frames.get(0).slot(name)};
+                }
+                return new int[] {depth, frame.slot(name)};
+            }
+            depth++;
+        }
+        return new int[] {Environment.GLOBAL, Environment.UNRESOLVED};
+    }
+
     private ValueType getType(String name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name)) {
@@ -575,13 +624,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             declare(stmt.name);
             define(stmt.name, new ClassValueType(className));
             classes.put(className, new ClassInfo(className, superClassName));
+            stmt.slot = frames.peek().slot(className);
+            stmt.superclassSlot = frames.get(0).slot(superClassName);
         } else if (stmt.resolverStage == STATEMENTS) {
             String className = stmt.name.lexeme;
             ClassType enclosingClass = currentClass;
             currentClass = ClassType.CLASS;
             currentClassName = className;
 
-            beginScope();
+            beginScope(false);
             scopes.peek().put("self", new ClassValueType(className));
 
             for (Stmt member : stmt.members) {
@@ -627,6 +678,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                     resolve(attr);
                 }
             }
+            if (classes.containsKey(className)) {
+                classes.get(className).methodTable = List.copyOf(methodTable(className));
+            }
             for (Stmt member : stmt.members) {
                 if (member instanceof Stmt.Function) {
                     Stmt.Function method = (Stmt.Function) member;
@@ -638,6 +692,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
                     resolveFunction(method, declaration);
                 }
             }
+            if (stmt.resolverStage != ERROR) {
+                stmt.methodTable = methodTable(className);
+            }
 
             endScope();
 
@@ -649,6 +706,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     void resolveScript(List<Stmt> statements) {
         beginScope();
+        for (String name : Interpreter.BUILTINS) {
+            frames.peek().allocate(name);
+        }
         
         define("print", new FuncType(Collections.singletonList(new ObjectType()), new NoneType()));
         define("input", new FuncType(Collections.emptyList(), new StrType()));
@@ -694,11 +754,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void beginScope() {
+        beginScope(true);
+    }
+
+    private void beginScope(boolean isFrame) {
         scopes.push(new HashMap<>());
+        frames.push(new FrameLayout(isFrame));
     }
 
     private void endScope() {
         scopes.pop();
+        frames.pop();
     }
     
     private FuncType getMethod(String className, String methodName) {
@@ -715,6 +781,26 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
     }
     
+    /**
+     * Method names of a class in vtable order: the superclass's table, then the
+     * class's own new methods in declaration order. Overrides keep the slot of
+     * the method they override, so an index is valid for every subclass. The
+     * table is built once, when the class's methods have all been declared.
+     */
+    private List<String> methodTable(String className) {
+        ClassInfo info = classes.get(className);
+        if (info.methodTable != null) return info.methodTable;
+
+        List<String> table = new ArrayList<>();
+        if (info.superclass != null && !info.superclass.equals(className) && classes.containsKey(info.superclass)) {
+            table.addAll(methodTable(info.superclass));
+        }
+        for (String methodName : info.methods.keySet()) {
+            if (!table.contains(methodName)) table.add(methodName);
+        }
+        return table;
+    }
+    
     private ValueType getAttrOrMethod(String className, String name) {
         if (classes.containsKey(className)) {
             if (classes.get(className).methods.containsKey(name)) {
@@ -817,6 +903,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             FuncType funcType = getSignature(stmt);
             declare(stmt.name);
             define(stmt.name, funcType);
+            stmt.slot = frames.peek().slot(functionName);
         } else if (stmt.resolverStage == STATEMENTS) {
             resolveFunction(stmt, FunctionType.FUNCTION);
         }
@@ -870,6 +957,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             declare(param.name);
             define(param.name, param.type);
             param.inferredType = param.type;
+            param.slot = frames.peek().slot(param.name.lexeme);
         }
         for (Stmt statement : function.body) {
             resolve(statement);
@@ -890,6 +978,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             function.resolverStage = ERROR;
         }
         scopes.peek().put("expectedReturnType", null);
+        function.frameSize = frames.peek().slots.size();
         endScope();
         currentFunction = enclosingFunction;
     }
@@ -1042,6 +1131,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
         
         declare(stmt.name);
+        stmt.slot = frames.peek().slot(varName);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
 
@@ -1061,6 +1151,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         if (!scopes.peek().containsKey(name.lexeme)) {
             scopes.peek().put(name.lexeme, new StubType());
         }
+        frames.peek().allocate(name.lexeme);
     }
 
     private void define(Token name, ValueType type) {
@@ -1183,6 +1274,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             return null;
         } else {
             addGlobalVarToCurrentScope(stmt.name.lexeme);
+            frames.peek().globals.add(stmt.name.lexeme);
         }
 
         declare(stmt.name);
@@ -1249,6 +1341,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             return null;
         } else {
             addNonlocalVarToCurrentScope(stmt.name.lexeme);
+            frames.peek().nonlocals.add(stmt.name.lexeme);
         }
 
         declare(stmt.name);
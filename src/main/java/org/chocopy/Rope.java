@@ -0,0 +1,64 @@
+package org.chocopy;
+
+/**
+ * A ChocoPy {@code str} built by concatenation in the tree interpreter. The
+ * characters live in a {@link StringBuilder} that a rope shares with the ropes
+ * concatenated from it: {@code s + t} appends {@code t} in place when {@code s}
+ * ends where the builder does, so {@code s = s + c} in a loop copies each
+ * character once instead of once per iteration. {@link #length} and
+ * {@link #charAt} read the builder directly; the rope is only flattened into a
+ * {@link String}, once, when it is compared or printed.
+ */
+final class Rope implements CharSequence {
+    /** Shorter results are plain strings; the builder only pays off for longer ones. */
+    static final int MIN_LENGTH = 32;
+
+    private final StringBuilder chars;
+    private final int length;
+    private String flat;
+
+    private Rope(StringBuilder chars, int length) {
+        this.chars = chars;
+        this.length = length;
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (left instanceof Rope rope && rope.length == rope.chars.length()) {
+            return new Rope(rope.chars.append(right), length);
+        }
+        if (length < MIN_LENGTH) {
+            return left.toString().concat(right.toString());
+        }
+
+        StringBuilder chars = new StringBuilder(length * 2);
+        return new Rope(chars.append(left).append(right), length);
+    }
+
+    /** The string value of {@code str} values that may be ropes, for code that expects a {@link String}. */
+    static String flatten(Object value) {
+        return value instanceof Rope rope ? rope.toString() : (String) value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) throw new StringIndexOutOfBoundsException(index);
+        return chars.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flat = chars.substring(0, length);
+        return flat;
+    }
+}
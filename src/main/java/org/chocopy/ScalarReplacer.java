@@ -0,0 +1,381 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps objects and lists that never leave the function creating them in
+ * local variables instead of allocating them.
+ * <p>
+ * A local of a class type is replaced when every value assigned to it is a
+ * fresh instance of that class, the class has no {@code __init__}, and the
+ * local is only used to read and write attributes. Each attribute it uses
+ * becomes a local of its own. A local of a list type is replaced the same way
+ * when every value assigned to it is a list display of one length, and it is
+ * only indexed with literals in range or passed to {@code len}.
+ * <p>
+ * The local must be assigned at the top level of the function body before it
+ * is used anywhere else, so it can never be None where it is used. Passing it
+ * on, returning it, comparing it, calling its methods or assigning it to
+ * anything else lets it escape, and then it is left alone. Functions that
+ * declare nested functions, which may capture the local, are skipped.
+ */
+class ScalarReplacer extends Optimizer {
+    private final Map<String, Stmt.Class> classes = new HashMap<>();
+    private Stmt.Function function;
+    private Map<Integer, Replacement> replacements = Map.of();
+
+    /** The locals standing in for the attributes or elements of one local. */
+    private static class Replacement {
+        final Stmt.Var local;
+        final Map<String, Expr.Variable> fields = new LinkedHashMap<>();
+        final Map<String, Expr.Literal> defaults = new HashMap<>();
+        final int length;
+
+        Replacement(Stmt.Var local, int length) {
+            this.local = local;
+            this.length = length;
+        }
+    }
+
+    @Override
+    List<Stmt> optimize(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Class klass) classes.put(klass.name.lexeme, klass);
+        }
+        return super.optimize(statements);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        if (stmt.body.stream().anyMatch(member -> member instanceof Stmt.Function)) {
+            return super.visitFunctionStmt(stmt);
+        }
+
+        Stmt.Function enclosing = function;
+        Map<Integer, Replacement> enclosingReplacements = replacements;
+        try {
+            function = stmt;
+            replacements = new HashMap<>();
+            for (Stmt member : stmt.body) {
+                if (member instanceof Stmt.Var local) {
+                    Replacement replacement = analyze(local);
+                    if (replacement != null) replacements.put(local.slot, replacement);
+                }
+            }
+
+            List<Stmt> locals = new ArrayList<>();
+            for (Replacement replacement : replacements.values()) {
+                for (Map.Entry<String, Expr.Variable> field : replacement.fields.entrySet()) {
+                    Expr.Variable variable = field.getValue();
+                    Stmt.Var var = new Stmt.Var(variable.name, variable.inferredType,
+                            fieldDefault(replacement, field.getKey()));
+                    var.slot = variable.slot;
+                    locals.add(var);
+                }
+            }
+            super.visitFunctionStmt(stmt);
+            stmt.body.addAll(0, locals);
+        } finally {
+            function = enclosing;
+            replacements = enclosingReplacements;
+        }
+        return stmt;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Replacement replacement = replaced(expr.object);
+        if (replacement == null) return super.visitGetExpr(expr);
+        return reference(replacement.fields.get(expr.name.lexeme), expr.line);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        Replacement replacement = replaced(expr.listing);
+        if (replacement == null) return super.visitIndexExpr(expr);
+        return reference(replacement.fields.get(constant(expr.id).toString()), expr.line);
+    }
+
+    @Override
+    public Expr visitLenExpr(Expr.Len expr) {
+        Replacement replacement = replaced(expr.expression);
+        if (replacement == null) return super.visitLenExpr(expr);
+        return literal(expr, replacement.length);
+    }
+
+    @Override
+    public Expr visitMultiAssignExpr(Expr.MultiAssign expr) {
+        List<Expr> targets = new ArrayList<>();
+        boolean changed = false;
+        for (Expr target : expr.targets) {
+            Expr.Variable field = field(target);
+            if (field != null) {
+                Expr.Assign assign = copy(target, new Expr.Assign(reference(field, target.line), expr.value));
+                targets.add(assign);
+                changed = true;
+            } else {
+                targets.add(target);
+            }
+        }
+
+        if (!changed) return super.visitMultiAssignExpr(expr);
+        return super.visitMultiAssignExpr(copy(expr, new Expr.MultiAssign(targets, expr.value)));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        if (!(stmt.expression instanceof Expr.MultiAssign multiAssign) || multiAssign.targets.size() != 1
+                || !(multiAssign.targets.get(0) instanceof Expr.Assign assign)) {
+            return super.visitExpressionStmt(stmt);
+        }
+        Replacement replacement = replaced(assign.target);
+        if (replacement == null) return super.visitExpressionStmt(stmt);
+
+        List<Stmt> statements = new ArrayList<>();
+        if (multiAssign.value instanceof Expr.Listing listing) {
+            for (int i = 0; i < listing.elements.size(); i++) {
+                Expr.Variable element = replacement.fields.get(String.valueOf(i));
+                Expr value = optimize(listing.elements.get(i));
+                if (element != null) {
+                    statements.add(assign(element, value, stmt.line));
+                } else if (!(value instanceof Expr.Literal)) {
+                    statements.add(copy(stmt, new Stmt.Expression(value)));
+                }
+            }
+        } else {
+            for (Map.Entry<String, Expr.Variable> field : replacement.fields.entrySet()) {
+                statements.add(assign(field.getValue(), fieldDefault(replacement, field.getKey()), stmt.line));
+            }
+        }
+        if (statements.isEmpty()) return null;
+        return copy(stmt, new Stmt.Block(statements));
+    }
+
+    private Replacement replaced(Expr expr) {
+        if (!(expr instanceof Expr.Variable variable) || variable.depth != 0) return null;
+        return replacements.get(variable.slot);
+    }
+
+    /** The local standing in for an attribute or element an assignment target writes. */
+    private Expr.Variable field(Expr target) {
+        if (target instanceof Expr.Set set) {
+            Replacement replacement = replaced(set.object);
+            if (replacement != null) return replacement.fields.get(set.name.lexeme);
+        } else if (target instanceof Expr.ListSet listSet) {
+            Replacement replacement = replaced(listSet.listing);
+            if (replacement != null) return replacement.fields.get(constant(listSet.id).toString());
+        }
+        return null;
+    }
+
+    private Expr.Literal fieldDefault(Replacement replacement, String name) {
+        Expr.Literal literal = replacement.defaults.get(name);
+        return copy(literal, new Expr.Literal(literal.value));
+    }
+
+    /** Decides whether a local can be replaced, and which attributes or elements it needs. */
+    private Replacement analyze(Stmt.Var local) {
+        int length;
+        if (local.type instanceof ListValueType) {
+            length = listingLength(local);
+        } else if (local.type instanceof ClassValueType type && classes.containsKey(type.getClassName())
+                && method(type.getClassName(), "__init__") == null) {
+            length = 0;
+        } else {
+            return null;
+        }
+        if (length < 0 || !assignedFirst(function.body, local)) return null;
+        for (Stmt statement : function.body) {
+            if (iterates(statement, local)) return null;
+        }
+
+        Replacement replacement = new Replacement(local, length);
+        boolean[] escapes = {false};
+        for (Stmt statement : function.body) {
+            walkStatement(statement, expr -> escapes[0] |= escapes(expr, null, local, replacement));
+        }
+        return escapes[0] ? null : replacement;
+    }
+
+    /**
+     * The length every list display assigned to the local has, 0 if nothing
+     * is assigned, or -1 if assignments disagree or are not list displays.
+     */
+    private int listingLength(Stmt.Var local) {
+        int[] length = {0};
+        boolean[] first = {true};
+        for (Stmt statement : function.body) {
+            walkStatement(statement, expr -> {
+                if (!(expr instanceof Expr.MultiAssign multiAssign)) return;
+                for (Expr target : multiAssign.targets) {
+                    if (!(target instanceof Expr.Assign assign) || !isLocal(assign.target, local)) continue;
+                    int size = multiAssign.value instanceof Expr.Listing listing && listing.elements != null
+                            ? listing.elements.size() : -1;
+                    if (first[0] || length[0] == size) length[0] = size;
+                    else length[0] = -1;
+                    first[0] = false;
+                }
+            });
+        }
+        return length[0];
+    }
+
+    /**
+     * Whether the first statement using the local assigns it. A loop may come
+     * first instead if nothing after it uses the local and the same holds for
+     * its body, since the local is then only used after the assignment.
+     */
+    private static boolean assignedFirst(List<Stmt> statements, Stmt.Var local) {
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = statements.get(i);
+            if (!uses(statement, local)) continue;
+
+            if (statement instanceof Stmt.Expression expression
+                    && expression.expression instanceof Expr.MultiAssign multiAssign) {
+                return multiAssign.targets.get(0) instanceof Expr.Assign assign && isLocal(assign.target, local);
+            }
+            Stmt body = statement instanceof Stmt.While whileStmt && !uses(whileStmt.condition, local)
+                    ? whileStmt.body
+                    : statement instanceof Stmt.For forStmt && !uses(forStmt.iterable, local) ? forStmt.body : null;
+            if (!(body instanceof Stmt.Block block)) return false;
+            for (Stmt rest : statements.subList(i + 1, statements.size())) {
+                if (uses(rest, local)) return false;
+            }
+            return assignedFirst(block.statements, local);
+        }
+        return false;
+    }
+
+    private static boolean uses(Stmt stmt, Stmt.Var local) {
+        boolean[] uses = {false};
+        walkStatement(stmt, expr -> uses[0] |= uses(expr, local));
+        return uses[0];
+    }
+
+    private static boolean uses(Expr expr, Stmt.Var local) {
+        boolean[] uses = {false};
+        walkExpr(expr, e -> uses[0] |= isLocal(e, local)
+                || e instanceof Expr.Assign assign && isLocal(assign.target, local));
+        return uses[0];
+    }
+
+    /** Whether a for loop in the statement assigns the local. */
+    private static boolean iterates(Stmt stmt, Stmt.Var local) {
+        if (stmt instanceof Stmt.Block block) {
+            return block.statements.stream().anyMatch(statement -> iterates(statement, local));
+        } else if (stmt instanceof Stmt.If ifStmt) {
+            return iterates(ifStmt.thenBranch, local)
+                    || ifStmt.elseBranch != null && iterates(ifStmt.elseBranch, local);
+        } else if (stmt instanceof Stmt.While whileStmt) {
+            return iterates(whileStmt.body, local);
+        } else if (stmt instanceof Stmt.For forStmt) {
+            return isLocal(forStmt.id, local) || iterates(forStmt.body, local);
+        }
+        return false;
+    }
+
+    /**
+     * Whether the local escapes anywhere in an expression, recording each
+     * attribute or element it is used for.
+     */
+    private boolean escapes(Expr expr, Expr parent, Stmt.Var local, Replacement replacement) {
+        if (expr instanceof Expr.MultiAssign multiAssign) {
+            for (Expr target : multiAssign.targets) {
+                if (target instanceof Expr.Assign assign && isLocal(assign.target, local)
+                        && (multiAssign.targets.size() > 1 || !creates(multiAssign.value, local, replacement))) {
+                    return true;
+                }
+            }
+        }
+        if (isLocal(expr, local)) {
+            String name = null;
+            if (parent instanceof Expr.Get get && !get.callable) name = get.name.lexeme;
+            if (parent instanceof Expr.Set set) name = set.name.lexeme;
+            if (parent instanceof Expr.Index index) name = element(index.id, replacement);
+            if (parent instanceof Expr.ListSet listSet) name = element(listSet.id, replacement);
+            if (parent instanceof Expr.Len) return false;
+            if (name == null) return true;
+            field(replacement, name);
+            return false;
+        }
+        for (Expr child : children(expr)) {
+            if (escapes(child, expr, local, replacement)) return true;
+        }
+        return false;
+    }
+
+    /** Whether the value is a fresh object or list of the kind the local is replaced with. */
+    private boolean creates(Expr value, Stmt.Var local, Replacement replacement) {
+        if (value instanceof Expr.Listing listing) {
+            boolean[] mentions = {false};
+            walkExpr(listing, e -> mentions[0] |= isLocal(e, local));
+            ValueType element = ((ListValueType) local.type).getElementType();
+            return !mentions[0] && listing.elements.stream().allMatch(e -> element.equals(e.inferredType));
+        }
+        return value instanceof Expr.Call call && call.arguments.isEmpty()
+                && call.callee instanceof Expr.Variable callee && callee.depth == Environment.GLOBAL
+                && local.type instanceof ClassValueType type && callee.name.lexeme.equals(type.getClassName());
+    }
+
+    private static String element(Expr id, Replacement replacement) {
+        if (constant(id) instanceof Integer index && index >= 0 && index < replacement.length) {
+            return index.toString();
+        }
+        return null;
+    }
+
+    private void field(Replacement replacement, String name) {
+        if (replacement.fields.containsKey(name)) return;
+
+        ValueType type;
+        Expr.Literal initial;
+        if (replacement.local.type instanceof ListValueType list) {
+            type = list.getElementType();
+            initial = new Expr.Literal(type instanceof IntType ? (Object) 0
+                    : type instanceof BoolType ? (Object) false : type instanceof StrType ? "" : null);
+            initial.inferredType = initial.value == null ? new NoneType() : type;
+        } else {
+            Stmt.Var attribute = attribute(((ClassValueType) replacement.local.type).getClassName(), name);
+            type = attribute.type;
+            initial = (Expr.Literal) attribute.initializer;
+        }
+
+        Token token = new Token(TokenType.IDSTRING, replacement.local.name.lexeme + "$" + name, null, -1);
+        Expr.Variable variable = new Expr.Variable(token);
+        variable.depth = 0;
+        variable.slot = function.frameSize++;
+        variable.inferredType = type;
+        replacement.fields.put(name, variable);
+        replacement.defaults.put(name, initial);
+    }
+
+    private static boolean isLocal(Expr expr, Stmt.Var local) {
+        return expr instanceof Expr.Variable variable && variable.depth == 0 && variable.slot == local.slot;
+    }
+
+    private Stmt.Function method(String className, String name) {
+        for (Stmt.Class klass = classes.get(className); klass != null; klass = superclass(klass)) {
+            for (Stmt member : klass.members) {
+                if (member instanceof Stmt.Function method && method.name.lexeme.equals(name)) return method;
+            }
+        }
+        return null;
+    }
+
+    private Stmt.Var attribute(String className, String name) {
+        for (Stmt.Class klass = classes.get(className); klass != null; klass = superclass(klass)) {
+            for (Stmt member : klass.members) {
+                if (member instanceof Stmt.Var attribute && attribute.name.lexeme.equals(name)) return attribute;
+            }
+        }
+        return null;
+    }
+
+    private Stmt.Class superclass(Stmt.Class klass) {
+        return klass.superclass != null ? classes.get(klass.superclass.lexeme) : null;
+    }
+}
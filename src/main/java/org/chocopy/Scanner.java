@@ -289,6 +289,7 @@ class Scanner {
         value = value.replace("\\n", "\n");
         value = value.replace("\\t", "\t");
         value = value.replace("\\\"", "\"");
+        if (value.length() == 1) value = Values.character(value.charAt(0));
         
         if (isIdString(value)) {
             addToken(IDSTRING, value);
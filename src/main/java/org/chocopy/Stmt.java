@@ -51,6 +51,9 @@ abstract class Stmt {
         final Token name;
         final Token superclass;
         final List<Stmt> members;
+        int slot = Environment.UNRESOLVED;
+        int superclassSlot = Environment.UNRESOLVED;
+        List<String> methodTable = List.of();
     }
 
     static class Expression extends Stmt {
@@ -84,6 +87,8 @@ abstract class Stmt {
         final ValueType returnType;
         final List<Stmt> body;
         FuncType signature;
+        int slot = Environment.UNRESOLVED;
+        int frameSize;
     }
 
     static class If extends Stmt  {
@@ -101,6 +106,7 @@ abstract class Stmt {
         final Expr condition;
         final Stmt thenBranch;
         final Stmt elseBranch;
+        Fusion fusion;
     }
 
     static class Return extends Stmt {
@@ -135,6 +141,7 @@ abstract class Stmt {
         final Token name;
         final ValueType type;
         Expr initializer;
+        int slot = Environment.UNRESOLVED;
 
         public void setInitializer(Expr initializer) {
             this.initializer = initializer;
@@ -154,6 +161,7 @@ abstract class Stmt {
 
         final Expr condition;
         final Stmt body;
+        Fusion fusion;
     }
 
     static class For extends Stmt {
@@ -0,0 +1,189 @@
+package org.chocopy;
+
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles the body of a hot {@link ChocoPyFunction} into a hidden class while
+ * the tree interpreter runs the rest of the script. The body is translated like
+ * the {@link AotCompiler} does, but it shares its values with the interpreter:
+ * arguments come from the interpreter's frame, globals live in the interpreter's
+ * environment, and calls, attributes and objects go through the interpreter.
+ *
+ * <p>The AST nodes the compiled code needs, such as the inline caches of
+ * attribute accesses, are handed to the hidden class as class data.
+ */
+class TieredCompiler extends AotCompiler {
+
+    private final List<Object> sites = new ArrayList<>();
+
+    /** Functions with nested functions keep their frames in the interpreter. */
+    static boolean canCompile(Stmt.Function function) {
+        return function.body.stream().noneMatch(stmt -> stmt instanceof Stmt.Function);
+    }
+
+    /** Compiles on a daemon thread, so the interpreter keeps running the function meanwhile. */
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "chocopy-compiler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /** Whether to report each compilation, and why one failed, on stderr. */
+    static boolean trace = false;
+
+    static Future<ChocoPyFunction.Body> compileInBackground(Stmt.Function function) {
+        return COMPILER.submit(() -> compile(function));
+    }
+
+    /**
+     * Returns the compiled body, or null if the function cannot be compiled,
+     * either because of its shape or because no JDK is available to compile it.
+     */
+    static ChocoPyFunction.Body compile(Stmt.Function function) {
+        if (!canCompile(function)) return null;
+
+        TieredCompiler compiler = new TieredCompiler();
+        String className = "Compiled_" + function.name.lexeme.replaceAll("\\W", "_");
+        try {
+            Map<String, byte[]> classFiles = javac(className, compiler.generate(function, className));
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(
+                    classFiles.get("org.chocopy." + className), compiler.sites.toArray(), true);
+            ChocoPyFunction.Body body = (ChocoPyFunction.Body) lookup.lookupClass()
+                    .getDeclaredConstructor().newInstance();
+            if (trace) System.err.println("compiled " + function.name.lexeme);
+            return body;
+        } catch (IllegalStateException | ReflectiveOperationException e) {
+            if (trace) System.err.println("could not compile " + function.name.lexeme + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    static Object[] sites(MethodHandles.Lookup lookup) {
+        try {
+            return MethodHandles.classData(lookup, ConstantDescs.DEFAULT_NAME, Object[].class);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String generate(Stmt.Function function, String className) {
+        scope = new Scope(script, className, "Object", false);
+        out = new StringBuilder();
+        indent = 1;
+        line("@Override");
+        line("public Object execute(Interpreter interpreter, Environment frame) {");
+        indent++;
+        line("Environment globals = frame.enclosing;");
+        currentLine = function.name.line;
+        for (Stmt.Var param : function.params) {
+            String type = javaType(param.type);
+            line(type + " v_" + param.name.lexeme + " = "
+                    + coerce("frame.values[" + param.slot + "]", "Object", type) + ";");
+        }
+        if (statements(function.body)) {
+            line("return null;");
+        }
+        indent--;
+        line("}");
+
+        StringBuilder source = new StringBuilder();
+        source.append("package org.chocopy;\n\n")
+                .append("import java.lang.invoke.MethodHandles;\n")
+                .append("import java.util.Arrays;\n")
+                .append("import java.util.List;\n\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("final class ").append(className).append(" implements ChocoPyFunction.Body {\n")
+                .append("    private static final Object[] SITES = TieredCompiler.sites(MethodHandles.lookup());\n");
+        for (int i = 0; i < sites.size(); i++) {
+            String type = sites.get(i).getClass().getCanonicalName();
+            source.append("    private static final ").append(type).append(" SITE_").append(i)
+                    .append(" = (").append(type).append(") SITES[").append(i).append("];\n");
+        }
+        return source.append('\n').append(out).append("}\n").toString();
+    }
+
+    private String site(Object node) {
+        sites.add(node);
+        return "SITE_" + (sites.size() - 1);
+    }
+
+    private String arguments(List<Expr> arguments) {
+        List<String> codes = new ArrayList<>();
+        for (Expr argument : arguments) {
+            codes.add(compile(argument));
+        }
+        return "Arrays.<Object>asList(" + String.join(", ", codes) + ")";
+    }
+
+    /** Strings built by the interpreter may be {@link Rope ropes}; compiled code works on flat ones. */
+    @Override
+    String coerce(String code, String from, String to) {
+        if (from.equals("Object") && to.equals("String")) return "Rope.flatten(" + code + ")";
+        return super.coerce(code, from, to);
+    }
+
+    @Override
+    String load(int depth, int slot, String name, ValueType type) {
+        if (depth == Environment.GLOBAL) {
+            return coerce("globals.get(" + slot + ")", "Object", javaType(type));
+        }
+        return super.load(depth, slot, name, type);
+    }
+
+    @Override
+    void store(Expr.Variable variable, String code, String type) {
+        if (variable.depth == Environment.GLOBAL) {
+            line("globals.define(" + variable.slot + ", "
+                    + coerce(code, type, javaType(variable.inferredType)) + ");");
+        } else {
+            super.store(variable, code, type);
+        }
+    }
+
+    /** Calls go through the interpreter, whose functions may return None, so ints and bools stay boxed. */
+    @Override
+    String callType(Expr.Call expr) {
+        String type = javaType(expr.inferredType);
+        return isPrimitive(type) ? box(type) : type;
+    }
+
+    @Override
+    Code call(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            String receiver = "Values.receiver(" + site(get) + ", " + compile(get.object) + ")";
+            return new Code("interpreter.invoke(" + site(expr) + ", " + receiver + ", "
+                    + arguments(expr.arguments) + ")", "Object", true);
+        }
+
+        return new Code("interpreter.call(" + site(expr) + ", " + compile(expr.callee) + ", "
+                + arguments(expr.arguments) + ")", "Object", true);
+    }
+
+    @Override
+    void setAttribute(Expr.Set expr, String code, String type) {
+        String site = site(expr);
+        line("Values.receiver(" + site + ", " + compile(expr.object) + ").set(" + site + ".name, " + code + ", "
+                + site + ".cache);");
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        String site = site(expr);
+        return coerce("Values.receiver(" + site + ", " + compile(expr.object) + ").get(" + site + ".name, "
+                + site + ".cache)", "Object", type(expr));
+    }
+
+    @Override
+    public String visitInputExpr(Expr.Input expr) {
+        return "((String) interpreter.input())";
+    }
+}
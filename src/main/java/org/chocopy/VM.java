@@ -0,0 +1,430 @@
+package org.chocopy;
+
+import java.util.*;
+
+/**
+ * Stack-based virtual machine executing the bytecode produced by
+ * {@link BytecodeCompiler}.
+ */
+class VM {
+    static final int DEFAULT_MAX_DEPTH = 100_000;
+
+    private final java.util.Scanner scanner = new java.util.Scanner(System.in);
+    private final int maxDepth;
+    private Environment globals;
+
+    /**
+     * Activation record of a call. Frames live in {@link #frames} rather than on
+     * the Java stack, so the depth of ChocoPy recursion is bounded by
+     * {@link #maxDepth} and the heap instead of the thread's stack size.
+     * Operands of every frame share {@link #stack}, starting at {@code base}.
+     */
+    private static class Frame {
+        CompiledFunction function;
+        Environment environment;
+        ChocoPyInstance receiver;
+        int base;
+        int ip;
+    }
+
+    private Frame[] frames = new Frame[64];
+    private int frameCount = 0;
+    private Object[] stack = new Object[256];
+
+    private static class Cursor {
+        final Object iterable;
+        int index = 0;
+
+        Cursor(Object iterable) {
+            this.iterable = iterable;
+        }
+    }
+
+    VM() {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    VM(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    void interpret(CompiledFunction script, int globalCount) {
+        globals = new Environment(null, globalCount);
+        defineBuiltins();
+
+        try {
+            pushFrame(script, globals, null, 0, 0);
+            run(0);
+        } catch (Throwable e) {
+            Interpreter.reportRuntimeError(e);
+        }
+    }
+
+    private void defineBuiltins() {
+        ChocoPyClass objectClass = new ChocoPyClass("object", null, Collections.emptyMap(), Collections.emptyMap(), List.of());
+        globals.define(Interpreter.BUILTINS.indexOf("object"), objectClass);
+        for (String name : List.of("int", "bool", "str")) {
+            globals.define(Interpreter.BUILTINS.indexOf(name),
+                    new ChocoPyClass(name, objectClass, Collections.emptyMap(), Collections.emptyMap(), List.of()));
+        }
+    }
+
+    /**
+     * Calls a closure from outside the dispatch loop. Its frame is pushed above
+     * the operands of the frame currently running, and the loop runs until it
+     * returns.
+     */
+    Object invoke(Closure closure, ChocoPyInstance receiver, Object[] arguments, int offset, int count) {
+        int depth = frameCount;
+        int base = 0;
+        if (depth > 0) {
+            Frame top = frames[depth - 1];
+            base = top.base + top.function.maxStack;
+        }
+
+        Environment environment = bindArguments(closure, receiver, arguments, offset, count);
+        pushFrame(closure.function, environment, receiver, base, 0);
+        return run(depth);
+    }
+
+    private Environment bindArguments(Closure closure, ChocoPyInstance receiver,
+                                      Object[] arguments, int offset, int count) {
+        CompiledFunction function = closure.function;
+        Environment environment = new Environment(closure.enclosing, function.frameSize);
+        int[] paramSlots = function.paramSlots;
+
+        int param = 0;
+        if (receiver != null) {
+            environment.values[paramSlots[param++]] = receiver;
+        }
+        for (int i = 0; i < count; i++) {
+            environment.values[paramSlots[param++]] = arguments[offset + i];
+        }
+        return environment;
+    }
+
+    private Frame pushFrame(CompiledFunction function, Environment environment, ChocoPyInstance receiver,
+                            int base, int line) {
+        if (frameCount == maxDepth) {
+            ChocoPy.exitCode = 1;
+            throw new RuntimeError(line, "maximum recursion depth exceeded", "RecursionError");
+        }
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, Math.min(frames.length * 2, maxDepth));
+        }
+        if (base + function.maxStack > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + function.maxStack));
+        }
+
+        Frame frame = frames[frameCount];
+        if (frame == null) frame = frames[frameCount] = new Frame();
+        frameCount++;
+
+        frame.function = function;
+        frame.environment = environment;
+        frame.receiver = receiver;
+        frame.base = base;
+        frame.ip = 0;
+        return frame;
+    }
+
+    private Object getAttribute(Expr.Get site, Object object) {
+        ChocoPyInstance instance = Values.receiver(site, object);
+        if (site.methodIndex >= 0 && instance.klass.method(site.methodIndex) instanceof Closure closure) {
+            return new BoundMethod(instance, closure);
+        }
+
+        Object member = site.cache.lookup(instance.klass, site.name.lexeme);
+        if (member instanceof Integer slot) return instance.fields[slot];
+        if (member instanceof Closure closure) return new BoundMethod(instance, closure);
+
+        throw new RuntimeError(site.name, "Undefined property '" + site.name.lexeme + "'.");
+    }
+
+    private ChocoPyClass defineClass(CompiledClass template, Environment frame) {
+        Stmt.Class stmt = template.declaration;
+        Object superclass = globals.get(stmt.superclassSlot);
+        if (!(superclass instanceof ChocoPyClass)) {
+            throw new RuntimeError(stmt.superclass, "superclass must be a class", "TypeError");
+        }
+
+        Map<String, ChocoPyCallable> methods = new LinkedHashMap<>();
+        for (Map.Entry<String, CompiledFunction> entry : template.methods.entrySet()) {
+            methods.put(entry.getKey(), new Closure(entry.getValue(), frame, this));
+        }
+        return new ChocoPyClass(stmt.name.lexeme, (ChocoPyClass) superclass, methods, template.attributes,
+                stmt.methodTable);
+    }
+
+    /**
+     * Dispatch loop. Runs the frame on top of the frame stack, entering and
+     * leaving ChocoPy calls without recursing in Java, and returns once the
+     * frame count drops back to {@code exitDepth}.
+     */
+    private Object run(int exitDepth) {
+        Frame frame = frames[frameCount - 1];
+        int[] code = frame.function.chunk.code;
+        Object[] constants = frame.function.chunk.constants;
+        Object[] locals = frame.environment.values;
+        Object[] stack = this.stack;
+        int sp = frame.base;
+        int ip = frame.ip;
+
+        while (true) {
+            switch (code[ip++]) {
+                case OpCode.CONSTANT -> stack[sp++] = constants[code[ip++]];
+                case OpCode.NONE -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = true;
+                case OpCode.FALSE -> stack[sp++] = false;
+                case OpCode.POP -> sp--;
+                case OpCode.DUP -> {
+                    stack[sp] = stack[sp - 1];
+                    sp++;
+                }
+                case OpCode.LOAD_LOCAL -> stack[sp++] = locals[code[ip++]];
+                case OpCode.STORE_LOCAL -> locals[code[ip++]] = stack[--sp];
+                case OpCode.LOAD_OUTER -> {
+                    int depth = code[ip++];
+                    stack[sp++] = frame.environment.getAt(depth, code[ip++]);
+                }
+                case OpCode.STORE_OUTER -> {
+                    int depth = code[ip++];
+                    frame.environment.assignAt(depth, code[ip++], stack[--sp]);
+                }
+                case OpCode.LOAD_GLOBAL -> stack[sp++] = globals.values[code[ip++]];
+                case OpCode.STORE_GLOBAL -> globals.values[code[ip++]] = stack[--sp];
+                case OpCode.ADD -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    if (left instanceof Integer a && right instanceof Integer b) {
+                        stack[sp - 1] = a + b;
+                    } else {
+                        stack[sp - 1] = Values.add((Expr.Binary) constants[code[ip]], left, right);
+                    }
+                    ip++;
+                }
+                case OpCode.SUBTRACT -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = a - b;
+                }
+                case OpCode.MULTIPLY -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = a * b;
+                }
+                case OpCode.DIVIDE -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = Values.divide(site, a, b);
+                }
+                case OpCode.MODULO -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = Values.modulo(site, a, b);
+                }
+                case OpCode.LESS -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = a < b;
+                }
+                case OpCode.LESS_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = a <= b;
+                }
+                case OpCode.GREATER -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = a > b;
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    Expr.Binary site = (Expr.Binary) constants[code[ip++]];
+                    Values.checkNumberOperands(site, left, right);
+                    int a = (Integer) left;
+                    int b = (Integer) right;
+                    stack[sp - 1] = a >= b;
+                }
+                case OpCode.EQUAL -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = Values.isEqual(stack[sp - 1], right);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = !Values.isEqual(stack[sp - 1], right);
+                }
+                case OpCode.IS -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = stack[sp - 1] == right;
+                }
+                case OpCode.NEGATE, OpCode.NOT ->
+                        stack[sp - 1] = Values.unary((Expr.Unary) constants[code[ip++]], stack[sp - 1]);
+                case OpCode.JUMP -> ip += code[ip] + 1;
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (Values.isTruthy(stack[--sp])) {
+                        ip++;
+                    } else {
+                        ip += code[ip] + 1;
+                    }
+                }
+                case OpCode.JUMP_IF_FALSE_OR_POP -> {
+                    if (Values.isTruthy(stack[sp - 1])) {
+                        sp--;
+                        ip++;
+                    } else {
+                        ip += code[ip] + 1;
+                    }
+                }
+                case OpCode.JUMP_IF_TRUE_OR_POP -> {
+                    if (Values.isTruthy(stack[sp - 1])) {
+                        ip += code[ip] + 1;
+                    } else {
+                        sp--;
+                        ip++;
+                    }
+                }
+                case OpCode.LIST -> {
+                    int count = code[ip++];
+                    List<Object> list = new ArrayList<>(count);
+                    for (int i = sp - count; i < sp; i++) {
+                        list.add(stack[i]);
+                    }
+                    sp -= count;
+                    stack[sp++] = list;
+                }
+                case OpCode.INDEX -> {
+                    Object id = stack[--sp];
+                    stack[sp - 1] = Values.index((Expr.Index) constants[code[ip++]], stack[sp - 1], id);
+                }
+                case OpCode.SET_INDEX -> {
+                    Object listing = stack[--sp];
+                    Object id = stack[--sp];
+                    Object value = stack[--sp];
+                    Values.setIndex((Expr.ListSet) constants[code[ip++]], listing, id, value);
+                }
+                case OpCode.GET_ATTR ->
+                        stack[sp - 1] = getAttribute((Expr.Get) constants[code[ip++]], stack[sp - 1]);
+                case OpCode.SET_ATTR -> {
+                    Object object = stack[--sp];
+                    Object value = stack[--sp];
+                    Expr.Set site = (Expr.Set) constants[code[ip++]];
+                    Values.receiver(site, object).set(site.name, value, site.cache);
+                }
+                case OpCode.CALL -> {
+                    int count = code[ip++];
+                    Expr.Call site = (Expr.Call) constants[code[ip++]];
+                    int offset = sp - count;
+                    Object callee = stack[offset - 1];
+
+                    Closure closure;
+                    ChocoPyInstance receiver = null;
+                    if (callee instanceof Closure function) {
+                        closure = function;
+                    } else if (callee instanceof BoundMethod method) {
+                        closure = method.method;
+                        receiver = method.receiver;
+                    } else if (callee instanceof ChocoPyClass klass) {
+                        Object object = klass.allocate();
+                        if (object instanceof ChocoPyInstance instance
+                                && klass.findMethod("__init__") instanceof Closure initializer) {
+                            closure = initializer;
+                            receiver = instance;
+                        } else {
+                            sp = offset;
+                            stack[sp - 1] = object;
+                            continue;
+                        }
+                    } else {
+                        throw new RuntimeError(site.paren,
+                                String.format("'%s' object is not callable", Values.stringify(callee)), "TypeError");
+                    }
+
+                    Environment environment = bindArguments(closure, receiver, stack, offset, count);
+                    frame.ip = ip;
+                    frame = pushFrame(closure.function, environment, receiver, offset, site.paren.line);
+                    code = frame.function.chunk.code;
+                    constants = frame.function.chunk.constants;
+                    locals = environment.values;
+                    stack = this.stack;
+                    sp = offset;
+                    ip = 0;
+                }
+                case OpCode.LEN -> stack[sp - 1] = Values.len((Expr.Len) constants[code[ip++]], stack[sp - 1]);
+                case OpCode.PRINT -> {
+                    System.out.println(Values.stringify(stack[sp - 1]));
+                    stack[sp - 1] = null;
+                }
+                case OpCode.INPUT -> stack[sp++] = scanner.hasNextLine() ? scanner.nextLine() + "\n" : "";
+                case OpCode.ITER -> {
+                    Values.checkIterable((Stmt.For) constants[code[ip++]], stack[sp - 1]);
+                    stack[sp - 1] = new Cursor(stack[sp - 1]);
+                }
+                case OpCode.FOR_NEXT -> {
+                    Cursor cursor = (Cursor) stack[sp - 1];
+                    if (cursor.iterable instanceof List<?> list && cursor.index < list.size()) {
+                        stack[sp++] = list.get(cursor.index++);
+                        ip++;
+                    } else if (cursor.iterable instanceof String str && cursor.index < str.length()) {
+                        stack[sp++] = Values.character(str.charAt(cursor.index++));
+                        ip++;
+                    } else {
+                        sp--;
+                        ip += code[ip] + 1;
+                    }
+                }
+                case OpCode.CLOSURE ->
+                        stack[sp++] = new Closure((CompiledFunction) constants[code[ip++]], frame.environment, this);
+                case OpCode.CLASS -> {
+                    CompiledClass template = (CompiledClass) constants[code[ip++]];
+                    globals.define(template.declaration.slot, defineClass(template, frame.environment));
+                }
+                case OpCode.RETURN -> {
+                    Object result = frame.function.isInitializer ? frame.receiver : stack[--sp];
+                    sp = frame.base;
+                    frame.environment = null;
+                    frame.receiver = null;
+
+                    if (--frameCount == exitDepth) return result;
+
+                    frame = frames[frameCount - 1];
+                    code = frame.function.chunk.code;
+                    constants = frame.function.chunk.constants;
+                    locals = frame.environment.values;
+                    ip = frame.ip;
+                    stack[sp - 1] = result;
+                }
+                default -> throw new RuntimeError(0, "unknown opcode " + code[ip - 1], "RuntimeError");
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Global value numbering over the dominator tree. An instruction that
+ * computes the same operation on the same operands as one in a dominating
+ * block reuses that value instead. Only operations that read no memory and
+ * allocate nothing observable are numbered: constants, arithmetic,
+ * comparisons, string concatenation, and indexing into or taking the length of
+ * a string. Such an operation that would fail has already failed at the
+ * earlier instruction, on the same line as before.
+ */
+class ValueNumbering implements IrPass {
+    private Ir.Function function;
+    private Map<Ir.Block, List<Ir.Block>> children;
+    private boolean changed;
+
+    @Override
+    public boolean run(Ir.Function function) {
+        this.function = function;
+        children = new HashMap<>();
+        for (Map.Entry<Ir.Block, Ir.Block> entry : function.dominators().entrySet()) {
+            if (entry.getKey() == entry.getValue()) continue;
+            children.computeIfAbsent(entry.getValue(), block -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        changed = false;
+        number(function.entry(), new HashMap<>());
+        return changed;
+    }
+
+    private void number(Ir.Block block, Map<List<Object>, Ir.Instr> available) {
+        for (Ir.Instr instr : new ArrayList<>(block.instructions)) {
+            List<Object> key = key(instr);
+            if (key == null) continue;
+
+            Ir.Instr existing = available.get(key);
+            if (existing == null) {
+                available.put(key, instr);
+            } else {
+                function.replaceUses(instr, existing);
+                block.instructions.remove(instr);
+                changed = true;
+            }
+        }
+
+        for (Ir.Block child : children.getOrDefault(block, List.of())) {
+            number(child, new HashMap<>(available));
+        }
+    }
+
+    /** What identifies the value an instruction computes, or null if it may differ each time. */
+    private static List<Object> key(Ir.Instr instr) {
+        switch (instr.op) {
+            case CONST:
+                return Arrays.asList(instr.op, instr.constant,
+                        instr.constant != null ? instr.constant.getClass() : null, String.valueOf(instr.type));
+            case INDEX:
+            case LEN:
+                return instr.operand(0).type instanceof StrType ? operation(instr) : null;
+            case ADD:
+                return isValue(instr.operand(0).type) && isValue(instr.operand(1).type) ? operation(instr) : null;
+            case SUB: case MUL: case DIV: case MOD:
+            case LT: case LE: case GT: case GE: case EQ: case NE: case IS:
+            case NEG: case NOT:
+                return operation(instr);
+            default:
+                return null;
+        }
+    }
+
+    private static List<Object> operation(Ir.Instr instr) {
+        List<Object> key = new ArrayList<>();
+        key.add(instr.op);
+        key.addAll(instr.operands);
+        return key;
+    }
+
+    /**
+     * Whether values of the type are immutable, so an operation on them always
+     * gives the same result. Adding lists builds a new list every time.
+     */
+    private static boolean isValue(ValueType type) {
+        return type instanceof IntType || type instanceof BoolType || type instanceof StrType;
+    }
+}
@@ -0,0 +1,344 @@
+package org.chocopy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runtime semantics of ChocoPy values shared by the execution engines, so that
+ * every engine produces the same results, error messages and exit codes.
+ */
+class Values {
+
+    private Values() {}
+
+    /**
+     * Interned one-character strings, indexed by character: every Latin-1
+     * character up front, others as they are first met.
+     */
+    private static String[] characters = new String[256];
+
+    static {
+        for (char c = 0; c < characters.length; c++) {
+            characters[c] = String.valueOf(c).intern();
+        }
+    }
+
+    /** The shared string of one character, for indexing and iterating over a {@code str}. */
+    static String character(char c) {
+        String[] table = characters;
+        if (c >= table.length) {
+            table = characters = Arrays.copyOf(table, Integer.highestOneBit(c) << 1);
+        } else if (table[c] != null) {
+            return table[c];
+        }
+        return table[c] = String.valueOf(c).intern();
+    }
+
+    static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean)object;
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null) return false;
+        if ((a instanceof Rope || b instanceof Rope) && b != null) return a.toString().equals(b.toString());
+
+        return a.equals(b);
+    }
+
+    static String stringify(Object object) {
+        if (object == null) return "None";
+
+        if (object instanceof Boolean) {
+            String text = object.toString();
+            return text.substring(0, 1).toUpperCase() + text.substring(1);
+        }
+
+        return object.toString();
+    }
+
+    static Object binary(Expr.Binary expr, Object left, Object right) {
+        switch (expr.operator.type) {
+            case BANG_EQUAL: return !isEqual(left, right);
+            case EQUAL_EQUAL: return isEqual(left, right);
+            case IS: return left == right;
+            case GREATER:
+                checkNumberOperands(expr, left, right);
+                return (int)left > (int)right;
+            case GREATER_EQUAL:
+                checkNumberOperands(expr, left, right);
+                return (int)left >= (int)right;
+            case LESS:
+                checkNumberOperands(expr, left, right);
+                return (int)left < (int)right;
+            case LESS_EQUAL:
+                checkNumberOperands(expr, left, right);
+                return (int)left <= (int)right;
+            case MINUS:
+                checkNumberOperands(expr, left, right);
+                return (int)left - (int)right;
+            case PLUS:
+                return add(expr, left, right);
+            case DOUBLE_SLASH:
+                checkNumberOperands(expr, left, right);
+                return divide(expr, (int)left, (int)right);
+            case PERCENT:
+                checkNumberOperands(expr, left, right);
+                return modulo(expr, (int)left, (int)right);
+            case STAR:
+                checkNumberOperands(expr, left, right);
+                return (int)left * (int)right;
+        }
+
+        return null;
+    }
+
+    /**
+     * A new list for values of the given list type: an {@link IntList} for
+     * {@code [int]} and a {@link BoolList} for {@code [bool]}.
+     */
+    static List<Object> list(ValueType type, int capacity) {
+        if (type instanceof ListValueType listType) {
+            if (listType.getElementType() instanceof IntType) return new IntList(capacity);
+            if (listType.getElementType() instanceof BoolType) return new BoolList(capacity);
+        }
+        return new ArrayList<>(capacity);
+    }
+
+    /**
+     * A new list of the given list type holding the elements of every list in
+     * turn, allocated once at its final size. The lists themselves are left
+     * untouched. Every call makes a distinct list, so optimizations must not
+     * merge two concatenations of the same lists; see {@link ValueNumbering}.
+     */
+    static List<Object> concat(ValueType type, List<?>... lists) {
+        int size = 0;
+        for (List<?> list : lists) size += list.size();
+
+        List<Object> result = list(type, size);
+        for (List<?> list : lists) result.addAll(list);
+        return result;
+    }
+
+    static Object add(Expr.Binary expr, Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (int)left + (int)right;
+        }
+
+        if (left instanceof String && right instanceof String) {
+            return (String)left + (String)right;
+        }
+
+        if (left instanceof CharSequence && right instanceof CharSequence) {
+            return Rope.concat((CharSequence)left, (CharSequence)right);
+        }
+
+        if (left instanceof List && right instanceof List) {
+            return concat(expr.inferredType, (List<?>)left, (List<?>)right);
+        }
+
+        throw unsupportedOperands(expr, left, right);
+    }
+
+    static int divide(Expr.Binary expr, int left, int right) {
+        return divide(expr.operator.line, left, right);
+    }
+
+    static int divide(int line, int left, int right) {
+        try {
+            return left / right;
+        } catch (ArithmeticException e) {
+            ChocoPy.exitCode = 2;
+            throw new RuntimeError(line, "division by zero", "ZeroDivisionError");
+        }
+    }
+
+    static int modulo(Expr.Binary expr, int left, int right) {
+        return modulo(expr.operator.line, left, right);
+    }
+
+    static int modulo(int line, int left, int right) {
+        try {
+            return left % right;
+        } catch (ArithmeticException e) {
+            ChocoPy.exitCode = 2;
+            throw new RuntimeError(line, "integer modulo by zero", "ZeroDivisionError");
+        }
+    }
+
+    static Object unary(Expr.Unary expr, Object right) {
+        if (expr.operator.type == TokenType.MINUS) {
+            checkNumberOperand(expr.operator, right);
+            return -(int)right;
+        } else if (expr.operator.type == TokenType.NOT) {
+            checkBooleanOperand(expr.operator, right);
+            return !(boolean) right;
+        }
+
+        return null;
+    }
+
+    static Object index(Expr.Index expr, Object listObject, Object idObject) {
+        return index(expr.line, listObject, idObject);
+    }
+
+    static Object index(int line, Object listObject, Object idObject) {
+        if (listObject == null || idObject == null) {
+            ChocoPy.exitCode = 4;
+            throw new RuntimeError(line, "'<None>' object is not subscriptable", "TypeError");
+        } else if (!(idObject instanceof Integer)) {
+            ChocoPy.exitCode = 4;
+            throw new RuntimeError(line, "list indices must be 'int', not '<None>'", "TypeError");
+        }
+
+        Integer id = (Integer) idObject;
+        if (listObject instanceof List) {
+            List<?> list = (List<?>) listObject;
+            if (list.isEmpty() || id < 0 || id >= list.size()) {
+                ChocoPy.exitCode = 3;
+                throw new RuntimeError(line, "list index out of range", "IndexError");
+            } else {
+                return list.get(id);
+            }
+        } else if (listObject instanceof CharSequence) {
+            CharSequence str = (CharSequence) listObject;
+            if (str.length() == 0 || id < 0 || id >= str.length()) {
+                ChocoPy.exitCode = 3;
+                throw new RuntimeError(line, "string index out of range", "IndexError");
+            } else {
+                return character(str.charAt(id));
+            }
+        } else {
+            throw new RuntimeError(line, "expected type 'str' or 'list'", "TypeError");
+        }
+    }
+
+    static void setIndex(Expr.ListSet expr, Object listObject, Object idObject, Object value) {
+        setIndex(expr.line, listObject, idObject, value);
+    }
+
+    static void setIndex(int line, Object listObject, Object idObject, Object value) {
+        if (listObject == null || idObject == null) {
+            ChocoPy.exitCode = 4;
+            throw new RuntimeError(line, "'<None>' object is not subscriptable", "TypeError");
+        } else if (!(idObject instanceof Integer)) {
+            ChocoPy.exitCode = 4;
+            throw new RuntimeError(line, "list indices must be 'int', not '<None>'", "TypeError");
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object> list = (List<Object>) listObject;
+        Integer id = (Integer) idObject;
+
+        if (list.isEmpty() || id < 0 || id >= list.size()) {
+            ChocoPy.exitCode = 3;
+            throw new RuntimeError(line, "list index out of range", "IndexError");
+        } else {
+            list.set(id, value);
+        }
+    }
+
+    static int len(Expr.Len expr, Object object) {
+        return len(expr.line, object);
+    }
+
+    static int len(int line, Object object) {
+        if (object == null) {
+            ChocoPy.exitCode = 1;
+            throw new RuntimeError(line, "'<None>' object has no len()", "TypeError");
+        }
+        return len(object);
+    }
+
+    static int len(Object object) {
+        if (object instanceof CharSequence) {
+            return ((CharSequence) object).length();
+        } else if (object instanceof List) {
+            return ((List<?>) object).size();
+        } else  {
+            throw new RuntimeException();
+        }
+    }
+
+    static void checkIterable(Stmt.For stmt, Object iterable) {
+        checkIterable(stmt.line, iterable);
+    }
+
+    static void checkIterable(int line, Object iterable) {
+        if (iterable == null) {
+            ChocoPy.exitCode = 4;
+            throw new RuntimeError(line, "'<None>' object is not iterable", "TypeError");
+        }
+    }
+
+    static ChocoPyInstance receiver(Expr.Get expr, Object object) {
+        if (object == null) {
+            throw noneAttribute(expr.name.line, expr.name.lexeme);
+        } else if (object instanceof ChocoPyInstance) {
+            return (ChocoPyInstance) object;
+        } else {
+            throw new RuntimeError(expr.name, String.format("'%s' object has no attribute '%s'", object, expr.name.lexeme),
+                    "AttributeError");
+        }
+    }
+
+    static ChocoPyInstance receiver(Expr.Set expr, Object object) {
+        if (object == null) {
+            throw noneAttribute(expr.line, expr.name.lexeme);
+        } else if (!(object instanceof ChocoPyInstance)) {
+            throw new RuntimeError(expr.name,
+                    String.format("'%s' object has no attribute '%s'", expr.object.inferredType.toString(), expr.name.lexeme),
+                    "AttributeError");
+        }
+        return (ChocoPyInstance) object;
+    }
+
+    static RuntimeError noneAttribute(int line, String name) {
+        ChocoPy.exitCode = 4;
+        return new RuntimeError(line, String.format("'<None>' object has no attribute '%s'", name), "AttributeError");
+    }
+
+    static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Integer) return;
+        throw new RuntimeError(operator,
+                String.format("unsupported operand type for %s: '%s'", operator.lexeme, operand.toString()),
+                "TypeError");
+    }
+
+    static void checkBooleanOperand(Token operator, Object operand) {
+        if (operand instanceof Boolean) return;
+        throw new RuntimeError(operator,
+                String.format("unsupported operand type for %s: '%s'", operator.lexeme, operand.toString()),
+                "TypeError");
+    }
+
+    static void checkNumberOperands(Expr.Binary expr,
+                                    Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) return;
+
+        throw unsupportedOperands(expr, left, right);
+    }
+
+    static RuntimeError unsupportedOperands(Expr.Binary expr, Object left, Object right) {
+        return unsupportedOperands(expr.operator, left, right, expr.left.inferredType, expr.right.inferredType);
+    }
+
+    static RuntimeError unsupportedOperands(Token operator, Object left, Object right,
+                                            Object leftType, Object rightType) {
+        if (operator.type == TokenType.PLUS && (left == null || right == null)) {
+            ChocoPy.exitCode = 4;
+            return new RuntimeError(operator,
+                    String.format("unsupported operand type(s) for +: '%s' and '%s'",
+                            left == null ? "<None>" : leftType,
+                            right == null ? "<None>" : rightType),
+                    "TypeError");
+        }
+
+        return new RuntimeError(operator,
+                String.format("unsupported operand type(s) for %s: '%s' and '%s'", operator.lexeme, leftType, rightType),
+                "TypeError");
+    }
+}
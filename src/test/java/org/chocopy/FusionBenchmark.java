@@ -0,0 +1,68 @@
+package org.chocopy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times the tree-walking interpreter on a script with and without
+ * {@link Fusion fused} idioms. Functions are never compiled, so every
+ * iteration is interpreted.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes org.chocopy.FusionBenchmark [FILE.py]}.
+ */
+public class FusionBenchmark {
+    private static final int WARMUP = 5;
+    private static final int RUNS = 15;
+
+    public static void main(String[] args) throws IOException {
+        Path inputPath = Paths.get(args.length > 0 ? args[0] : "src/test/resources/interpreter/benchmark/idioms.py");
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                run(input, false);
+                run(input, true);
+            }
+            long[] generic = new long[RUNS];
+            long[] fused = new long[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                generic[i] = run(input, false);
+                fused[i] = run(input, true);
+            }
+
+            out.printf("generic: %6.2f ms%n", median(generic) / 1e6);
+            out.printf("fused:   %6.2f ms%n", median(fused) / 1e6);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static long run(String input, boolean fuse) {
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+        statements = ChocoPy.optimize(statements);
+
+        Interpreter interpreter = new Interpreter();
+        interpreter.compileThreshold = Integer.MAX_VALUE;
+        interpreter.fuse = fuse;
+
+        long start = System.nanoTime();
+        interpreter.interpret(statements);
+        return System.nanoTime() - start;
+    }
+
+    private static double median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -2,22 +2,27 @@ package org.chocopy;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Stream;
 
 import static org.chocopy.TestUtils.removeEmptyLines;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class InterpreterTest {
     private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
@@ -29,11 +34,14 @@ public class InterpreterTest {
     private Resolver resolver;
     private Interpreter interpreter;
     private final AstPrinter astPrinter = new AstPrinter();
+    private int compileThreshold = ChocoPyFunction.DEFAULT_COMPILE_THRESHOLD;
+    private boolean fuse = true;
 
     @BeforeEach
     public void setUpStreams() {
         System.setOut(new PrintStream(outContent));
         System.setErr(new PrintStream(outContent));
+        ChocoPy.exitCode = null;
     }
 
     @AfterEach
@@ -42,35 +50,73 @@ public class InterpreterTest {
         System.setErr(originalErr);
     }
 
-    public static Stream<Arguments> testFilesForInterpreter() {
-        return TestUtils.testFiles("test/resources/interpreter/sample");
+    /** Directories whose programs every engine must run to the same golden output. */
+    private static final List<String> GOLDEN_DIRECTORIES = List.of(
+            "test/resources/interpreter/sample",
+            "test/resources/interpreter/features",
+            "test/resources/interpreter/benchmark",
+            "test/resources/interpreter/benchmark/tree");
+
+    public static Stream<Arguments> goldenFiles() {
+        return GOLDEN_DIRECTORIES.stream().flatMap(TestUtils::testFiles);
+    }
+
+    public static Stream<Arguments> goldenRuns() {
+        return GOLDEN_DIRECTORIES.stream()
+                .flatMap(dir -> TestUtils.files(dir).stream())
+                .flatMap(path -> Arrays.stream(ChocoPy.Engine.values())
+                        .flatMap(engine -> Stream.of(true, false).map(optimize -> Arguments.of(path, engine, optimize))));
     }
 
     public static Stream<Arguments> testFilesForBenchmark() {
         return TestUtils.testFiles("test/resources/interpreter/benchmark");
     }
 
-    @ParameterizedTest
-    @MethodSource("testFilesForInterpreter")
-    public void testInterpreter(Path inputPath) throws IOException {
-        test(inputPath);
+    /** Programs that run long enough for tiered compilation to pay off; too slow for every engine. */
+    public static Stream<Arguments> hotFiles() {
+        return TestUtils.testFiles("test/resources/interpreter/benchmark/hot");
+    }
+
+    @ParameterizedTest(name = "{0} on {1}, optimized: {2}")
+    @MethodSource("goldenRuns")
+    public void testGolden(Path inputPath, ChocoPy.Engine engine, boolean optimize) throws IOException {
+        test(inputPath, engine, optimize);
     }
 
     @ParameterizedTest
-    @MethodSource("testFilesForBenchmark")
-    public void testBenchmark(Path inputPath) throws IOException {
+    @MethodSource({"goldenFiles", "hotFiles"})
+    public void testTiered(Path inputPath) throws IOException {
+        compileThreshold = 1;
         test(inputPath);
     }
 
-    @Disabled
+    /** Functions returning None must print the same before and after they are compiled. */
     @Test
-    public void testTree() throws IOException {
-        Path resourcesPath = Paths.get("src","test/resources/interpreter/benchmark/tree".split("/"));
-        Path inputPath = resourcesPath.resolve("tree.py");
+    public void testTieredCrossesThreshold() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("tiered_none.py");
 
+        compileThreshold = 5;
         test(inputPath);
     }
 
+    @ParameterizedTest
+    @MethodSource({"testFilesForBenchmark", "hotFiles"})
+    public void testTieredCompilesFunctions(Path inputPath) throws IOException {
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+
+        for (Stmt stmt : statements) {
+            List<Stmt> functions = stmt instanceof Stmt.Class klass ? klass.members : List.of(stmt);
+            for (Stmt function : functions) {
+                if (function instanceof Stmt.Function declaration && TieredCompiler.canCompile(declaration)) {
+                    assertNotNull(TieredCompiler.compile(declaration), declaration.name.lexeme);
+                }
+            }
+        }
+    }
+
     @Test
     public void testInput() throws IOException {
         Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
@@ -86,7 +132,217 @@ public class InterpreterTest {
         }
     }
 
+    @Test
+    public void testOptimizerAst() throws IOException {
+        Path inputPath = Paths.get("src","test/resources/interpreter/features/optimizer.py".split("/"));
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+
+        String output = removeEmptyLines(astPrinter.print(new Optimizer().optimize(statements)));
+
+        String expected = new String(Files.readAllBytes(Paths.get(inputPath + ".ast.optimized")), Charset.defaultCharset());
+        assertEquals(expected, output);
+    }
+
+    @Test
+    public void testLoopsAst() throws IOException {
+        Path inputPath = Paths.get("src","test/resources/interpreter/features/loops.py".split("/"));
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+
+        String output = removeEmptyLines(astPrinter.print(new LoopOptimizer().optimize(statements)));
+
+        String expected = new String(Files.readAllBytes(Paths.get(inputPath + ".ast.optimized")), Charset.defaultCharset());
+        assertEquals(expected, output);
+    }
+
+    @Test
+    public void testInlinerAst() throws IOException {
+        Path inputPath = Paths.get("src","test/resources/interpreter/features/inline.py".split("/"));
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+
+        String output = removeEmptyLines(astPrinter.print(new Inliner().optimize(statements)));
+
+        String expected = new String(Files.readAllBytes(Paths.get(inputPath + ".ast.optimized")), Charset.defaultCharset());
+        assertEquals(expected, output);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ir.py", "value_numbering.py"})
+    public void testIrDump(String name) throws IOException {
+        Path inputPath = Paths.get("src","test/resources/interpreter/features".split("/")).resolve(name);
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+
+        String output = PassManager.standard().run(IrBuilder.build(statements)).toString();
+
+        String expected = new String(Files.readAllBytes(Paths.get(inputPath + ".ir")), Charset.defaultCharset());
+        assertEquals(expected, output);
+    }
+
+    @Test
+    public void testRegisterDisassembly() throws IOException {
+        Path inputPath = Paths.get("src","test/resources/interpreter/features/register.py".split("/"));
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+
+        String output = new RegisterCompiler().compile(ChocoPy.optimize(statements)).disassemble();
+
+        String expected = new String(Files.readAllBytes(Paths.get(inputPath + ".reg")), Charset.defaultCharset());
+        assertEquals(expected, output);
+    }
+
+    @Test
+    public void testFusion() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("fusion.py");
+
+        test(inputPath);
+    }
+
+    @Test
+    public void testFusionDisabled() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("fusion.py");
+
+        fuse = false;
+        test(inputPath);
+    }
+
+    @Test
+    public void testIntListBoxing() {
+        IntList list = new IntList(0);
+        list.add(1);
+        list.addAll(List.of(2, 3));
+        assertTrue(list.isUnboxed());
+        assertEquals(2, list.getInt(1));
+
+        list.set(1, null);
+        assertFalse(list.isUnboxed());
+        assertEquals(Arrays.asList(1, null, 3), list);
+
+        list.addAll(list);
+        assertEquals(Arrays.asList(1, null, 3, 1, null, 3), list);
+    }
+
+    @Test
+    public void testBoolListPacking() {
+        BoolList list = new BoolList(0);
+        for (int i = 0; i < 130; i++) list.add(i % 3 == 0);
+        list.addAll(list);
+        assertTrue(list.isUnboxed());
+        assertEquals(260, list.size());
+        assertTrue(list.getBoolean(129));
+        assertTrue(list.getBoolean(130));
+        assertFalse(list.getBoolean(131));
+
+        list.set(1, null);
+        assertFalse(list.isUnboxed());
+        assertEquals(Arrays.asList(true, null, false, true), list.subList(0, 4));
+    }
+
+    @Test
+    public void testRopeSharing() {
+        CharSequence s = Rope.concat("a".repeat(Rope.MIN_LENGTH), "b");
+        CharSequence t = Rope.concat(s, "c");
+        CharSequence u = Rope.concat(s, "d");
+        assertTrue(s instanceof Rope);
+        assertEquals(Rope.MIN_LENGTH + 1, s.length());
+        assertEquals('c', t.charAt(Rope.MIN_LENGTH + 1));
+        assertEquals('d', u.charAt(Rope.MIN_LENGTH + 1));
+        assertEquals("a".repeat(Rope.MIN_LENGTH) + "b", s.toString());
+        assertTrue(Values.isEqual(Rope.concat(s, "c"), t));
+        assertFalse(Values.isEqual(t, u));
+        assertEquals("ab", Rope.concat("a", "b"));
+    }
+
+    @Test
+    public void testListConcat() {
+        IntList left = new IntList(0);
+        left.addAll(List.of(1, 2));
+        List<Object> result = Values.concat(new ListValueType(new IntType()), left, List.of(3), left);
+        assertEquals(List.of(1, 2, 3, 1, 2), result);
+        assertTrue(result instanceof IntList list && list.isUnboxed());
+        assertEquals(List.of(1, 2), left);
+    }
+
+    @Test
+    public void testCharacterTable() {
+        assertSame("a", Values.character('a'));
+        assertSame(Values.index(1, "abc", 0), Values.index(2, "cba", 2));
+        assertSame(Values.character('\u20ac'), Values.index(1, "\u20ac", 0));
+        assertEquals("\u20ac", Values.character('\u20ac'));
+        assertSame(Values.character('\uffff'), Values.character('\uffff'));
+    }
+
+    @Test
+    public void testScalarReplacementAllocations() throws IOException {
+        Path inputPath = Paths.get("src","test/resources/interpreter/benchmark/points.py".split("/"));
+
+        assertEquals(3603, allocations(inputPath, false));
+        assertEquals(2, allocations(inputPath, true));
+    }
+
+    @Test
+    public void testVmRecursion() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("recursion.py");
+
+        test(inputPath, ChocoPy.Engine.VM);
+    }
+
+    @Test
+    public void testVmRecursionLimit() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("recursion_limit.py");
+
+        test(inputPath, ChocoPy.Engine.VM);
+    }
+
+    @Test
+    public void testRegisterRecursion() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("recursion.py");
+
+        test(inputPath, ChocoPy.Engine.REGISTER);
+    }
+
+    @Test
+    public void testRegisterRecursionLimit() throws IOException {
+        Path resourcesPath = Paths.get("src","test/resources/interpreter".split("/"));
+        Path inputPath = resourcesPath.resolve("recursion_limit.py");
+
+        test(inputPath, ChocoPy.Engine.REGISTER);
+    }
+
+    private long allocations(Path inputPath, boolean replaceScalars) throws IOException {
+        String input = new String(Files.readAllBytes(inputPath), Charset.defaultCharset());
+        List<Stmt> statements = new Parser(new Scanner(input).scanTokens()).parse();
+        new Resolver().resolveScript(statements);
+        statements = new Inliner().optimize(statements);
+        if (replaceScalars) statements = new ScalarReplacer().optimize(statements);
+
+        interpreter = new Interpreter();
+        interpreter.compileThreshold = Integer.MAX_VALUE;
+        interpreter.interpret(new LoopOptimizer().optimize(statements));
+        return interpreter.allocations;
+    }
+
     private void test(Path inputPath) throws IOException {
+        test(inputPath, ChocoPy.Engine.TREE);
+    }
+
+    private void test(Path inputPath, ChocoPy.Engine engine) throws IOException {
+        test(inputPath, engine, true);
+    }
+
+    private void test(Path inputPath, ChocoPy.Engine engine, boolean optimize) throws IOException {
         // Given
         byte[] bytes = Files.readAllBytes(inputPath);
         String input = new String(bytes, Charset.defaultCharset());
@@ -106,6 +362,9 @@ public class InterpreterTest {
         }
         
         interpreter = new Interpreter();
+        interpreter.compileThreshold = compileThreshold;
+        interpreter.compileInBackground = false;
+        interpreter.fuse = fuse;
         resolver = new Resolver();
         resolver.resolveScript(statements);
         
@@ -127,9 +386,10 @@ public class InterpreterTest {
 
         // Given
         outContent.reset();
+        if (optimize) statements = ChocoPy.optimize(statements);
 
         // When
-        interpreter.interpret(statements);
+        ChocoPy.execute(engine, interpreter, statements);
 
         // Then
         if (ChocoPy.errors.size() > 0 || ChocoPy.runtimeErrors.size() > 0) {
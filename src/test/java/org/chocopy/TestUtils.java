@@ -13,6 +13,10 @@ import java.util.stream.Stream;
 public class TestUtils {
 
     public static Stream<Arguments> testFiles(String dir) {
+        return files(dir).stream().map(Arguments::of);
+    }
+
+    public static List<Path> files(String dir) {
         List<Path> inputData;
         final Path resourcesPath = Paths.get("src",dir.split("/"));
         try (Stream<Path> walk = Files.walk(resourcesPath, 1)) {
@@ -23,7 +27,7 @@ public class TestUtils {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return inputData.stream().map(Arguments::of);
+        return inputData;
     }
 
     public static String removeEmptyLines(String text) {
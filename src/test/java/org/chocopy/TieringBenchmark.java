@@ -0,0 +1,53 @@
+package org.chocopy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times the tree-walking interpreter on a script with tiered compilation off
+ * and at the default threshold. Each run is a fresh JVM, so the cost of
+ * starting javac is counted the way a user of {@code chocopy.jar} pays it.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes org.chocopy.TieringBenchmark [FILE.py]}.
+ */
+public class TieringBenchmark {
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path inputPath = Paths.get(args.length > 0 ? args[0] : "src/test/resources/interpreter/benchmark/hot/collatz.py");
+
+        long[] interpreted = new long[RUNS];
+        long[] tiered = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            interpreted[i] = run(inputPath, Integer.MAX_VALUE);
+            tiered[i] = run(inputPath, ChocoPyFunction.DEFAULT_COMPILE_THRESHOLD);
+        }
+
+        System.out.printf("interpreted: %8.2f ms%n", median(interpreted) / 1e6);
+        System.out.printf("tiered:      %8.2f ms%n", median(tiered) / 1e6);
+    }
+
+    private static long run(Path inputPath, int compileThreshold) throws IOException, InterruptedException {
+        Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+        ProcessBuilder builder = new ProcessBuilder(List.of(java.toString(),
+                "-cp", System.getProperty("java.class.path"), ChocoPy.class.getName(),
+                "--compile-threshold=" + compileThreshold, inputPath.toString()));
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        long start = System.nanoTime();
+        int exitCode = builder.start().waitFor();
+        long time = System.nanoTime() - start;
+        if (exitCode != 0) throw new IllegalStateException(inputPath + " exited with " + exitCode);
+        return time;
+    }
+
+    private static double median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
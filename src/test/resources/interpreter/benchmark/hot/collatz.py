@@ -0,0 +1,26 @@
+def steps(n:int) -> int:
+    count:int = 0
+    while n != 1:
+        if n % 2 == 0:
+            n = n // 2
+        else:
+            n = 3 * n + 1
+        count = count + 1
+    return count
+
+def longest(limit:int) -> int:
+    best:int = 0
+    start:int = 1
+    length:int = 0
+    while start < limit:
+        length = steps(start)
+        if length > best:
+            best = length
+        start = start + 1
+    return best
+
+round:int = 0
+while round < 4:
+    print(longest(100000))
+    round = round + 1
+print(steps(77031))
@@ -0,0 +1,29 @@
+# Loops made of the idioms the tree interpreter fuses
+def count_divisors(n:int) -> int:
+    d:int = 1
+    count:int = 0
+    while d < n + 1:
+        if n % d == 0:
+            count = count + 1
+        d = d + 1
+    return count
+
+def total(xs:[int]) -> int:
+    i:int = 0
+    s:int = 0
+    while i < len(xs):
+        s = s + xs[i]
+        i = i + 1
+    return s
+
+xs:[int] = None
+n:int = 1
+best:int = 0
+xs = []
+while n < 1000:
+    if count_divisors(n) > best:
+        best = count_divisors(n)
+        xs = xs + [n]
+    n = n + 1
+print(best)
+print(total(xs))
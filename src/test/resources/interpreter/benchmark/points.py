@@ -0,0 +1,77 @@
+class Point(object):
+    x:int = 0
+    y:int = 0
+
+class Pair(object):
+    first:int = 0
+    second:int = 1
+
+def dist2(ax:int, ay:int, bx:int, by:int) -> int:
+    d:Point = None
+    d = Point()
+    d.x = bx - ax
+    d.y = by - ay
+    return d.x * d.x + d.y * d.y
+
+def fib(n:int) -> int:
+    p:Pair = None
+    i:int = 0
+    t:int = 0
+    p = Pair()
+    while i < n:
+        t = p.first + p.second
+        p.first = p.second
+        p.second = t % 1000007
+        i = i + 1
+    return p.first
+
+def rotate(n:int) -> int:
+    buf:[int] = None
+    i:int = 0
+    acc:int = 0
+    while i < n:
+        buf = [i, i + 1, i * 2]
+        buf[0] = buf[2] - buf[1]
+        acc = acc + buf[0] + len(buf)
+        i = i + 1
+    return acc
+
+def pair(n:int) -> [int]:
+    out:[int] = None
+    out = [n, n]
+    out[1] = n * 2
+    return out
+
+def alias(n:int) -> int:
+    p:Point = None
+    q:Point = None
+    p = Point()
+    p.x = n
+    q = p
+    q.y = 2
+    return p.x + q.y
+
+def unset() -> int:
+    p:Point = None
+    if p is None:
+        return -1
+    p = Point()
+    return p.x
+
+i:int = 0
+j:int = 0
+total:int = 0
+
+while i < 40:
+    j = 0
+    while j < 40:
+        total = total + dist2(i, j, 20, 20)
+        j = j + 1
+    i = i + 1
+
+print(total)
+print(fib(3000))
+print(rotate(2000))
+print(pair(21)[1])
+print(alias(5))
+print(unset())
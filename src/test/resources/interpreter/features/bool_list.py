@@ -0,0 +1,28 @@
+# Sieve of Eratosthenes over a [bool] list
+def count(flags:[bool]) -> int:
+    n:int = 0
+    flag:bool = False
+    for flag in flags:
+        if flag:
+            n = n + 1
+    return n
+
+flags:[bool] = None
+n:int = 100
+i:int = 2
+j:int = 0
+flags = [False, False] + [True]
+while len(flags) < n:
+    flags = flags + [True, True, True, True, True, True, True, True]
+print(len(flags))
+while i * i < len(flags):
+    if flags[i]:
+        j = i * i
+        while j < len(flags):
+            flags[j] = False
+            j = j + i
+    i = i + 1
+print(count(flags))
+print(flags[97])
+print(flags[99])
+print(flags[107])
@@ -0,0 +1,87 @@
+class Counter(object):
+    count:int = 0
+    step:int = 1
+
+    def get(self:"Counter") -> int:
+        return self.count
+
+    def set(self:"Counter", count:int):
+        self.count = count
+
+    def bump(self:"Counter") -> int:
+        self.set(self.get() + self.step)
+        return self.get()
+
+    def label(self:"Counter") -> str:
+        return "count"
+
+class Double(Counter):
+    def label(self:"Double") -> str:
+        return "double"
+
+    def show(self:"Double") -> str:
+        return self.label()
+
+factor:int = 3
+total:int = 0
+
+def square(x:int) -> int:
+    return x * x
+
+def add(a:int, b:int) -> int:
+    return a + b
+
+def sub(a:int, b:int) -> int:
+    return b - a
+
+def scaled(x:int) -> int:
+    return x * factor
+
+def set_factor(f:int):
+    global factor
+    factor = f
+
+def tick(n:int) -> int:
+    print(n)
+    return n
+
+def fact(n:int) -> int:
+    return 1 if n <= 1 else n * fact(n - 1)
+
+def is_even(n:int) -> bool:
+    return True if n == 0 else is_odd(n - 1)
+
+def is_odd(n:int) -> bool:
+    return False if n == 0 else is_even(n - 1)
+
+def ratio(a:int, b:int) -> int:
+    return a // b
+
+c:Counter = None
+d:Double = None
+i:int = 0
+
+print(square(7))
+print(add(square(2), 3))
+print(add(tick(1), tick(2)))
+print(sub(tick(3), tick(4)))
+print(scaled(5))
+set_factor(10)
+print(scaled(5))
+print(fact(6))
+print(is_even(10))
+print(is_odd(7))
+
+c = Counter()
+while i < 5:
+    total = total + c.bump() + square(i)
+    i = i + 1
+print(total)
+print(c.get())
+
+d = Double()
+d.bump()
+print(d.show())
+print(d.get())
+print(ratio(7, 2))
+print(ratio(7, 0))
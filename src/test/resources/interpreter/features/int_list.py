@@ -0,0 +1,28 @@
+def total(xs:[int]) -> int:
+    s:int = 0
+    x:int = 0
+    for x in xs:
+        s = s + x
+    return s
+
+xs:[int] = None
+ys:[int] = None
+zs:[object] = None
+i:int = 0
+xs = [1, 2, 3]
+ys = [10, 20]
+xs[1] = -5
+print(xs[1])
+print(len(xs))
+print(total(xs))
+xs = xs + ys
+print(len(xs))
+print(xs[4])
+print(total(ys + [100]))
+zs = [1, "two", 3]
+print(len(zs))
+while i < len(xs):
+    xs[i] = xs[i] * 2
+    i = i + 1
+print(total(xs))
+print(xs[4])
@@ -0,0 +1,50 @@
+class Box(object):
+    value:int = 0
+
+    def twice(self:"Box") -> int:
+        return self.value * 2
+
+def total(xs:[int]) -> int:
+    i:int = 0
+    s:int = 0
+    n:int = 0
+    while i < len(xs):
+        n = xs[i]
+        s = s + n * n + n * n
+        i = i + 1
+    return s
+
+def last(xs:[int]) -> int:
+    i:int = 0
+    while i <= len(xs):
+        i = i + 1
+    return xs[i - 1]
+
+def shout(s:str) -> str:
+    t:str = ""
+    if True:
+        t = s + "!"
+    else:
+        t = s
+    return t + " " + t
+
+def counter() -> int:
+    count:int = 0
+    def bump():
+        nonlocal count
+        count = count + 1
+    bump()
+    bump()
+    return count
+
+b:Box = None
+c:str = ""
+b = Box()
+b.value = 21
+print(b.twice())
+print(total([1, 2, 3, 4]))
+print(shout("hey"))
+print(counter())
+for c in "ab":
+    print(c)
+print(last([5, 6]))
@@ -0,0 +1,48 @@
+def extend(xs:[int], ys:[int]) -> [int]:
+    return xs + ys
+
+def twice(xs:[int]) -> int:
+    p:[int] = None
+    q:[int] = None
+    p = xs + xs
+    q = xs + xs
+    p[0] = 7
+    return q[0] + len(p) + len(q) + len(xs)
+
+def noisy() -> [int]:
+    print("evaluated")
+    return [0]
+
+a:[int] = None
+b:[int] = None
+c:[int] = None
+d:[bool] = None
+e:[object] = None
+a = [1, 2]
+b = a
+c = a + a
+print(len(a))
+print(len(c))
+c[0] = 9
+print(a[0])
+b = b + [3]
+print(len(a))
+print(len(b))
+c = extend(a, a)
+print(len(c))
+print(len(a))
+c = a + b + c + [4]
+print(len(c))
+print(c[9])
+print(len(a))
+print(len(b))
+print(twice(a))
+d = [True] + [False, True]
+print(d[2])
+e = a + d
+print(len(e))
+e[0] = "x"
+print(a[0])
+b = None
+c = a + b + noisy()
+print(len(c))
@@ -0,0 +1,72 @@
+class Box(object):
+    size:int = 3
+
+def total(xs:[int], scale:int) -> int:
+    i:int = 0
+    s:int = 0
+    while i < len(xs):
+        s = s + xs[i] * (scale + 1) + i * 4
+        i = i + 1
+    return s
+
+def countdown(n:int) -> str:
+    out:str = ""
+    k:int = 0
+    k = n
+    while k > 0:
+        out = out + str_of(k * 2)
+        k = k - 1
+    return out
+
+def str_of(n:int) -> str:
+    digits:str = "0123456789"
+    out:str = ""
+    if n == 0:
+        return "0"
+    while n > 0:
+        out = digits[n % 10] + out
+        n = n // 10
+    return out
+
+def boxes(b:Box, m:int) -> int:
+    j:int = 0
+    acc:int = 0
+    c:str = ""
+    while j < b.size * m:
+        for c in "ab":
+            acc = acc + j * 3 + len(c) * m
+        j = j + 1
+    return acc
+
+def grow(b:Box) -> int:
+    j:int = 0
+    while j < b.size:
+        b.size = b.size - 1
+        j = j + 1
+    return j
+
+def divide(n:int, d:int) -> int:
+    q:int = 0
+    while q < n // d:
+        q = q + 1
+    return q
+
+xs:[int] = None
+ys:[int] = None
+n:int = 0
+b:Box = None
+
+xs = [1, 2, 3, 4]
+print(total(xs, 2))
+print(countdown(5))
+b = Box()
+print(boxes(b, 2))
+print(grow(b))
+b = Box()
+ys = xs
+while n < len(xs) and n < 6:
+    ys = ys + [n]
+    n = n + 1
+print(n)
+print(divide(7, 2))
+print(divide(7, 0))
@@ -0,0 +1,39 @@
+class Box(object):
+    n:int = 0
+
+    def get(self:"Box") -> int:
+        while self.n > 0:
+            return self.n
+
+def first(xs:[int]) -> int:
+    x:int = 0
+    for x in xs:
+        return x
+
+def positive(n:int) -> bool:
+    while n > 0:
+        return True
+
+b:Box = None
+
+print(first([1, 2, 3]) == 1)
+print(first([]) == 7)
+print(first([]) != 7)
+print(7 == first([]))
+print(first([]) == first([]))
+print(first([]))
+print(positive(0) == True)
+print(positive(0) != False)
+print(positive(0))
+if first([]) == 5:
+    print("found")
+else:
+    print("missing")
+b = Box()
+print(b.get() == 0)
+b.n = 3
+print(b.get() == 3)
+print(b.get())
+b.n = 0
+print(b.get())
+print(first([]) < 2)
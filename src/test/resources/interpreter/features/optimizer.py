@@ -0,0 +1,39 @@
+width:int = 0
+debug:bool = False
+x:int = 0
+s:str = ""
+o:object = None
+
+def area(h:int) -> int:
+    if not True:
+        return 0
+    return h * (width - 2 * 3)
+    print("unreachable")
+
+def label() -> str:
+    if 1 > 2:
+        return "never"
+    elif 2 > 1:
+        return "a" + "b" + "c"
+    return "never"
+
+width = 4 * 8 + 2
+while False:
+    print("never")
+
+while x < (10 - 5) // 2:
+    x = x + (1 if True else 2)
+
+if debug or (3 == 1 + 2 and not False):
+    print(area(2))
+else:
+    print("else")
+
+s = label()
+print(s)
+print(len("hello") * -(-1))
+print(x)
+o = 1 if 2 < 3 else None
+print(o is None)
+print(10 // (2 - 2))
+print("not reached")
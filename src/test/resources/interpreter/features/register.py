@@ -0,0 +1,36 @@
+class Counter(object):
+    count:int = 0
+
+    def __init__(self:"Counter"):
+        self.count = 10
+
+    def add(self:"Counter", n:int) -> int:
+        self.count = self.count + n
+        return self.count
+
+def sum_even(xs:[int]) -> int:
+    found:int = 0
+    x:int = 0
+    for x in xs:
+        if x % 2 == 0 and x > 0:
+            found = found + x
+    return found
+
+def steps(n:int) -> int:
+    total:int = 0
+    def step(k:int) -> int:
+        nonlocal total
+        total = total + k
+        return k
+    while n > 0:
+        n = n - step(1) if n > 3 else n - 1
+    return total
+
+c:Counter = None
+c = Counter()
+c.add(5)
+print(c.add(c.add(1)))
+print(sum_even([1, 2, 3, 4, -6]))
+print(steps(6))
+print(not False or 1 // 0 == 0)
+print([1, 2][2])
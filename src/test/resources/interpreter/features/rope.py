@@ -0,0 +1,38 @@
+def build(n:int, c:str) -> str:
+    s:str = ""
+    i:int = 0
+    while i < n:
+        s = s + c
+        i = i + 1
+    return s
+
+def count(s:str, c:str) -> int:
+    n:int = 0
+    x:str = ""
+    for x in s:
+        if x == c:
+            n = n + 1
+    return n
+
+s:str = ""
+t:str = ""
+u:str = ""
+k:int = 0
+total:int = 0
+s = build(40, "ab")
+t = s + "x"
+u = s + "y"
+print(len(s))
+print(len(t))
+print(t[80])
+print(u[80])
+print(s[79])
+print(count(t, "a"))
+print(t == u)
+print(s + "x" == t)
+while k < 1200:
+    total = total + count(u, "b")
+    k = k + 1
+print(total)
+print(u)
+print(s[80])
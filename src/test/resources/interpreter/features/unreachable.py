@@ -0,0 +1,26 @@
+def countdown(n:int) -> int:
+    while n > 0:
+        return 1
+    print("after while")
+    return 0
+
+def first(xs:[int]) -> int:
+    x:int = 0
+    for x in xs:
+        return x
+    print("after for")
+    return 0
+
+def sign(n:int) -> int:
+    if n < 0:
+        return -1
+    else:
+        return 1
+    print("unreachable")
+
+print(countdown(0))
+print(countdown(3))
+print(first([]))
+print(first([7, 8]))
+print(sign(-5))
+print(sign(5))
@@ -0,0 +1,25 @@
+def lengths(xs:[int], ys:[int]) -> int:
+    p:[int] = None
+    q:[int] = None
+    p = xs + ys
+    q = xs + ys
+    return len(p) + len(q)
+
+def first(xs:[int], ys:[int]) -> int:
+    p:[int] = None
+    q:[int] = None
+    p = xs + ys
+    q = xs + ys
+    p[0] = 99
+    return q[0]
+
+def chars(s:str, t:str) -> int:
+    a:str = ""
+    b:str = ""
+    a = s + t
+    b = s + t
+    return len(a) + len(b) + len(a[1] + b[1])
+
+print(lengths([1, 2], [3]))
+print(first([1, 2], [3]))
+print(chars("ab", "c"))
@@ -0,0 +1,29 @@
+def nothing(found:bool) -> int:
+    while found:
+        return 0
+
+def count_up(v:int, limit:int) -> int:
+    while v < limit:
+        v = v + 1
+    return v
+
+def spell(s:str) -> str:
+    i:int = 0
+    out:str = ""
+    while i < len(s):
+        out = out + s[i] + "."
+        i = i + 1
+    return out
+
+def sum_items(xs:[int]) -> int:
+    i:int = 0
+    s:int = 0
+    while i < len(xs):
+        s = s + xs[i]
+        i = i + 1
+    return s
+
+print(count_up(0, 5))
+print(spell("abc"))
+print(sum_items([1, 2, 3]))
+print(count_up(nothing(False), 5))
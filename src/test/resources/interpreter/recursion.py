@@ -0,0 +1,16 @@
+# Recursion far deeper than the Java thread stack allows
+def count(n:int) -> int:
+    if n == 0:
+        return 0
+    return 1 + count(n - 1)
+
+class Node(object):
+    next:"Node" = None
+
+    def depth(self:"Node", d:int) -> int:
+        if d == 0:
+            return 0
+        return 1 + self.depth(d - 1)
+
+print(count(50000))
+print(Node().depth(50000))
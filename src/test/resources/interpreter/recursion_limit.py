@@ -0,0 +1,5 @@
+# Unbounded recursion stops at the VM's maximum call depth
+def forever(n:int) -> int:
+    return forever(n + 1)
+
+print(forever(0))
@@ -0,0 +1,26 @@
+class A(object):
+    x:int = 1
+    s:str = "a"
+
+class B(A):
+    y:int = 2
+
+a1:A = None
+a2:A = None
+b:B = None
+
+a1 = A()
+a2 = A()
+b = B()
+a1.x = 10
+a2.s = "b"
+b.x = 30
+b.y = 40
+print(a1.x)
+print(a1.s)
+print(a2.x)
+print(a2.s)
+print(b.x)
+print(b.y)
+print(B().x)
+print(B().y)
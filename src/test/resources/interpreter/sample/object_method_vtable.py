@@ -0,0 +1,26 @@
+class A(object):
+    def name(self:"A") -> str:
+        return "A"
+
+    def greet(self:"A") -> str:
+        return "hello from " + self.name()
+
+class B(A):
+    def extra(self:"B") -> int:
+        return 1
+
+class C(B):
+    def name(self:"C") -> str:
+        return "C"
+
+class D(C):
+    def extra(self:"D") -> int:
+        return 4
+
+a:A = None
+for a in [A(), B(), C(), D()]:
+    print(a.greet())
+
+b:B = None
+for b in [B(), C(), D()]:
+    print(b.extra())
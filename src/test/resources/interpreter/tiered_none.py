@@ -0,0 +1,14 @@
+def half(n:int) -> int:
+    while n % 2 == 0:
+        return n // 2
+
+def check(n:int) -> bool:
+    found:bool = False
+    found = half(n) == 3
+    return found
+
+i:int = 0
+while i < 12:
+    print(check(i))
+    print(half(i))
+    i = i + 1